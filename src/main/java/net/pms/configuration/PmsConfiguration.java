@@ -184,6 +184,17 @@ public class PmsConfiguration {
 	private static final String KEY_VLC_SAMPLE_RATE = "vlc_sample_rate";
 	private static final String KEY_VIDEO_HW_ACCELERATION = "video_hardware_acceleration";
 	private static final String KEY_WEB_CONF_PATH = "web_conf";
+	private static final String KEY_ZERO_COPY_STREAMING = "zero_copy_streaming";
+	private static final String KEY_MEDIAINFO_HANDLES = "mediainfo_handles";
+	private static final String KEY_WATCH_FOLDERS = "watch_folders";
+	private static final String KEY_LIBRARY_SCAN_THREADS = "library_scan_threads";
+	private static final String KEY_LIBRARY_SCAN_MAX_FILES_PER_SECOND = "library_scan_max_files_per_second";
+	private static final String KEY_THUMBNAIL_THREADS = "thumbnail_threads";
+	private static final String KEY_THUMBNAIL_TIMEOUT = "thumbnail_timeout";
+	private static final String KEY_THUMBNAIL_CACHE_SIZE = "thumbnail_cache_size";
+	private static final String KEY_MAX_TRANSCODES = "maximum_transcodes";
+	private static final String KEY_TRANSCODE_QUEUE_TIMEOUT = "transcode_queue_timeout";
+	private static final String KEY_DEGRADED_MAX_BITRATE = "degraded_maximum_bitrate";
 
 	// The name of the subdirectory under which PMS config files are stored for this build (default: UMS).
 	// See Build for more details
@@ -1984,6 +1995,168 @@ public class PmsConfiguration {
 		return getBoolean(KEY_HTTP_ENGINE_V2, true);
 	}
 
+	/**
+	 * Returns whether untranscoded local files should be sent to the renderer
+	 * straight from the file system cache using {@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+	 * instead of being copied through a buffer on the heap. Default value is true.
+	 *
+	 * @return True if zero-copy streaming is enabled, false otherwise.
+	 */
+	public boolean isZeroCopyStreaming() {
+		return getBoolean(KEY_ZERO_COPY_STREAMING, true);
+	}
+
+	public void setZeroCopyStreaming(boolean value) {
+		configuration.setProperty(KEY_ZERO_COPY_STREAMING, value);
+	}
+
+	/**
+	 * Returns the maximum number of files that can be parsed by the MediaInfo
+	 * library at the same time. Every parse needs its own MediaInfo handle,
+	 * so this is also the maximum number of handles kept open. Default value
+	 * is the number of available processors.
+	 *
+	 * @return The number of MediaInfo handles, at least 1.
+	 */
+	public int getMediaInfoHandles() {
+		return Math.max(getInt(KEY_MEDIAINFO_HANDLES, Runtime.getRuntime().availableProcessors()), 1);
+	}
+
+	public void setMediaInfoHandles(int value) {
+		configuration.setProperty(KEY_MEDIAINFO_HANDLES, value);
+	}
+
+	/**
+	 * Returns whether shared folders should be watched for changes, so that
+	 * new, changed and removed files are noticed without checking the file
+	 * system when a folder is browsed. Only supported on Linux. Default value
+	 * is true.
+	 *
+	 * @return True if shared folders are watched, false otherwise.
+	 */
+	public boolean isWatchFolders() {
+		return getBoolean(KEY_WATCH_FOLDERS, true);
+	}
+
+	public void setWatchFolders(boolean value) {
+		configuration.setProperty(KEY_WATCH_FOLDERS, value);
+	}
+
+	/**
+	 * Returns the number of folders that the library scan scans at the same
+	 * time. Default value is the number of available processors.
+	 *
+	 * @return The number of scanner threads, at least 1.
+	 */
+	public int getLibraryScanThreads() {
+		return Math.max(getInt(KEY_LIBRARY_SCAN_THREADS, Runtime.getRuntime().availableProcessors()), 1);
+	}
+
+	public void setLibraryScanThreads(int value) {
+		configuration.setProperty(KEY_LIBRARY_SCAN_THREADS, value);
+	}
+
+	/**
+	 * Returns the maximum number of files that the library scan scans per
+	 * second, which keeps it from saturating a network share or a slow disk.
+	 * Default value is 0, which means no limit.
+	 *
+	 * @return The maximum number of files per second, or 0 for no limit.
+	 */
+	public int getLibraryScanMaxFilesPerSecond() {
+		return Math.max(getInt(KEY_LIBRARY_SCAN_MAX_FILES_PER_SECOND, 0), 0);
+	}
+
+	public void setLibraryScanMaxFilesPerSecond(int value) {
+		configuration.setProperty(KEY_LIBRARY_SCAN_MAX_FILES_PER_SECOND, value);
+	}
+
+	/**
+	 * Returns the number of thumbnails that are generated at the same time.
+	 * Default value is 2.
+	 *
+	 * @return The number of thumbnail threads, at least 1.
+	 */
+	public int getThumbnailThreads() {
+		return Math.max(getInt(KEY_THUMBNAIL_THREADS, 2), 1);
+	}
+
+	public void setThumbnailThreads(int value) {
+		configuration.setProperty(KEY_THUMBNAIL_THREADS, value);
+	}
+
+	/**
+	 * Returns how long a renderer that requests a thumbnail waits for it to
+	 * be generated before it gets a generic one instead. Default value is
+	 * 3000 milliseconds.
+	 *
+	 * @return The timeout in milliseconds.
+	 */
+	public int getThumbnailTimeout() {
+		return Math.max(getInt(KEY_THUMBNAIL_TIMEOUT, 3000), 0);
+	}
+
+	public void setThumbnailTimeout(int value) {
+		configuration.setProperty(KEY_THUMBNAIL_TIMEOUT, value);
+	}
+
+	/**
+	 * Returns the maximum size of the thumbnails that are kept on disk.
+	 * Default value is 100 MB.
+	 *
+	 * @return The size in megabytes, or 0 if no thumbnails are kept.
+	 */
+	public int getThumbnailCacheSize() {
+		return Math.max(getInt(KEY_THUMBNAIL_CACHE_SIZE, 100), 0);
+	}
+
+	public void setThumbnailCacheSize(int value) {
+		configuration.setProperty(KEY_THUMBNAIL_CACHE_SIZE, value);
+	}
+
+	/**
+	 * Returns the maximum number of transcodes that run at the same time.
+	 * Default value is the number of CPU cores.
+	 *
+	 * @return The number of transcodes, or 0 for no limit.
+	 */
+	public int getMaximumTranscodes() {
+		return Math.max(getInt(KEY_MAX_TRANSCODES, getNumberOfCpuCores()), 0);
+	}
+
+	public void setMaximumTranscodes(int value) {
+		configuration.setProperty(KEY_MAX_TRANSCODES, value);
+	}
+
+	/**
+	 * Returns how long a new transcode waits for another one to end when
+	 * the maximum number of transcodes is running, before it is started with
+	 * the degraded maximum bitrate. Default value is 10 seconds.
+	 *
+	 * @return The timeout in seconds.
+	 */
+	public int getTranscodeQueueTimeout() {
+		return Math.max(getInt(KEY_TRANSCODE_QUEUE_TIMEOUT, 10), 0);
+	}
+
+	public void setTranscodeQueueTimeout(int value) {
+		configuration.setProperty(KEY_TRANSCODE_QUEUE_TIMEOUT, value);
+	}
+
+	/**
+	 * Returns the maximum video bitrate of transcodes that are started while
+	 * the maximum number of transcodes is running. Default value is 20 Mb/s.
+	 *
+	 * @return The bitrate in Mb/s.
+	 */
+	public int getDegradedMaximumBitrate() {
+		return Math.max(getInt(KEY_DEGRADED_MAX_BITRATE, 20), 1);
+	}
+
+	public void setDegradedMaximumBitrate(int value) {
+		configuration.setProperty(KEY_DEGRADED_MAX_BITRATE, value);
+	}
+
 	public boolean isShowIphotoLibrary() {
 		return getBoolean(KEY_SHOW_IPHOTO_LIBRARY, false);
 	}
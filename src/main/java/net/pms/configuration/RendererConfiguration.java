@@ -22,15 +22,42 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public class RendererConfiguration {
 	private static final Logger logger = LoggerFactory.getLogger(RendererConfiguration.class);
 	private static ArrayList<RendererConfiguration> rendererConfs;
 	private static PmsConfiguration pmsConfiguration;
 	private static RendererConfiguration defaultConf;
-	private static Map<InetAddress, RendererConfiguration> addressAssociation = new HashMap<InetAddress, RendererConfiguration>();
+
+	/**
+	 * How long a renderer is remembered for an address after its last
+	 * request, so that an address that is handed to another device is
+	 * recognized anew.
+	 */
+	private static final long ASSOCIATION_TTL = TimeUnit.HOURS.toMillis(1);
+
+	/**
+	 * Renderers recognized by address, either from an earlier request or
+	 * from the forced IP addresses.
+	 */
+	private static final Map<InetAddress, Association> addressAssociation = new ConcurrentHashMap<InetAddress, Association>();
+
+	/**
+	 * Renderers recognized by address and User-Agent header, see
+	 * {@link #getRendererConfiguration(InetAddress, String)}.
+	 */
+	private static final Map<String, Association> userAgentAssociation = new ConcurrentHashMap<String, Association>();
+
+	/**
+	 * The renderers forced for IP addresses, as parsed from the configuration.
+	 */
+	private static volatile ForcedRenderers forcedRenderers;
 
 	private RootFolder rootFolder;
 	private final PropertiesConfiguration configuration;
@@ -43,6 +70,9 @@ public class RendererConfiguration {
 
 	private final Map<String, String> DLNAPN;
 
+	private final Pattern userAgentPattern;
+	private final Pattern userAgentAdditionalPattern;
+
 	// property values
 	private static final String DEPRECATED_MPEGPSAC3 = "MPEGAC3"; // XXX deprecated: old name with missing container
 	private static final String LPCM = "LPCM";
@@ -164,6 +194,9 @@ public class RendererConfiguration {
 				}
 			}
 		}
+
+		// Addresses are associated with the renderers that were just replaced
+		resetAddressAssociation();
 	}
 
 	private int getInt(String key, int def) {
@@ -226,7 +259,18 @@ public class RendererConfiguration {
 		}
 	}
 
-	public RootFolder getRootFolder() {
+	/**
+	 * Returns the resource tree of this renderer, creating it on first use.
+	 * Renderers of the same model share one configuration and therefore one
+	 * tree, but every model gets a tree of its own: the players, transcode
+	 * folders and the files left out as incompatible are decided for the
+	 * renderer as the children of a folder are added. What the trees do
+	 * reuse is the parsing of their files, each with a copy of the media
+	 * information, see {@link net.pms.dlna.SharedMediaCache}.
+	 *
+	 * @return The root folder of the tree.
+	 */
+	public synchronized RootFolder getRootFolder() {
 		if (rootFolder == null) {
 			rootFolder = new RootFolder();
 			if (pmsConfiguration.getUseCache()) {
@@ -245,10 +289,70 @@ public class RendererConfiguration {
 	 * @see #getRendererConfigurationBySocketAddress(InetAddress)
 	 */
 	public void associateIP(InetAddress sa) {
-		addressAssociation.put(sa, this);
+		addressAssociation.put(sa, new Association(this));
 		SpeedStats.getInstance().getSpeedInMBits(sa, getRendererName());
 	}
 
+	/**
+	 * Associates an IP address and User-Agent header with this renderer, as
+	 * well as the address alone, see {@link #associateIP(InetAddress)}.
+	 *
+	 * @param sa The IP address to associate.
+	 * @param userAgent The User-Agent header, or null if there was none.
+	 * @see #getRendererConfiguration(InetAddress, String)
+	 */
+	public void associate(InetAddress sa, String userAgent) {
+		userAgentAssociation.put(getAssociationKey(sa, userAgent), new Association(this));
+
+		Association association = addressAssociation.get(sa);
+
+		if (association == null || association.renderer != this) {
+			associateIP(sa);
+		}
+	}
+
+	/**
+	 * Returns the renderer that was recognized earlier for requests with the
+	 * same IP address and User-Agent header. This is the lookup that
+	 * recognizes a renderer on every request, after its first one.
+	 *
+	 * @param inetAddress The IP address.
+	 * @param userAgent The User-Agent header, or null if there was none.
+	 * @return The renderer configuration, or null if none was recognized.
+	 * @see #associate(InetAddress, String)
+	 */
+	public static RendererConfiguration getRendererConfiguration(InetAddress inetAddress, String userAgent) {
+		// Forgets the associations if the forced IP addresses have changed
+		getForcedRenderers();
+		return getAssociated(userAgentAssociation, getAssociationKey(inetAddress, userAgent));
+	}
+
+	private static String getAssociationKey(InetAddress inetAddress, String userAgent) {
+		return inetAddress.getHostAddress() + '\n' + (userAgent != null ? userAgent : "");
+	}
+
+	/**
+	 * Returns the renderer associated with a key, unless the association has
+	 * not been used for {@link #ASSOCIATION_TTL}.
+	 */
+	private static <K> RendererConfiguration getAssociated(Map<K, Association> associations, K key) {
+		Association association = associations.get(key);
+
+		if (association == null) {
+			return null;
+		}
+
+		long now = System.currentTimeMillis();
+
+		if (now - association.lastUsed > ASSOCIATION_TTL) {
+			associations.remove(key);
+			return null;
+		}
+
+		association.lastUsed = now;
+		return association.renderer;
+	}
+
 	/**
 	 * Tries to find a matching renderer based on the configuration setting
 	 * for forced IP address and renderer combinations. If there is no
@@ -261,8 +365,32 @@ public class RendererConfiguration {
 	 */
 	public static RendererConfiguration getRendererConfigurationBySocketAddress(InetAddress inetAddress) {
 		// First see if a renderer is forced for this address.
+		for (ForcedRenderer forced : getForcedRenderers().renderers) {
+			if (forced.filter.isMatch(inetAddress)) {
+				logger.trace("Forcing renderer match to \"" + forced.renderer.getRendererName() + "\" based on forced IP address configuration");
+				addressAssociation.put(inetAddress, new Association(forced.renderer));
+				return forced.renderer;
+			}
+		}
+
+		return getAssociated(addressAssociation, inetAddress);
+	}
+
+	/**
+	 * Returns the renderers that are forced for IP addresses. The
+	 * configuration is only parsed again when it has changed, in which case
+	 * the renderers recognized so far are forgotten.
+	 */
+	private static ForcedRenderers getForcedRenderers() {
 		String forced = pmsConfiguration.getRendererForceIp();
-		
+		ForcedRenderers current = forcedRenderers;
+
+		if (current != null && StringUtils.equals(forced, current.configuration)) {
+			return current;
+		}
+
+		List<ForcedRenderer> renderers = new ArrayList<ForcedRenderer>();
+
 		if (forced != null && !"".equals(forced)) {
 			for (String tuple : forced.split(",")) {
 				if (tuple.indexOf("@") > -1) {
@@ -271,23 +399,21 @@ public class RendererConfiguration {
 
 					// Sanity checks on the strings
 					if (!"".equals(name) && !"".equals(ip)) {
-						IpFilter filter = new IpFilter(ip);
-	
-						if (filter.isMatch(inetAddress)) {
-							RendererConfiguration renderer = getRendererConfigurationByName(name);
-							
-							if (renderer != null) {
-								logger.trace("Forcing renderer match to \"" + renderer.getRendererName() + "\" based on forced IP address configuration");
-								addressAssociation.put(inetAddress, renderer);
-								return renderer;
-							}
+						RendererConfiguration renderer = getRendererConfigurationByName(name);
+
+						if (renderer != null) {
+							renderers.add(new ForcedRenderer(new IpFilter(ip), renderer));
 						}
 					}
 				}
 			}
 		}
 
-		return addressAssociation.get(inetAddress);
+		addressAssociation.clear();
+		userAgentAssociation.clear();
+		current = new ForcedRenderers(forced, renderers);
+		forcedRenderers = current;
+		return current;
 	}
 
 	/**
@@ -318,7 +444,7 @@ public class RendererConfiguration {
 	}
 
 	private static RendererConfiguration manageRendererMatch(RendererConfiguration r) {
-		if (addressAssociation.values().contains(r)) {
+		if (isAssociated(r)) {
 			// FIXME: This cannot ever ever happen because of how renderer matching
 			// is implemented in RequestHandler and RequestHandlerV2. The first header
 			// match will associate the IP address with the renderer and from then on
@@ -331,6 +457,16 @@ public class RendererConfiguration {
 		return r;
 	}
 
+	private static boolean isAssociated(RendererConfiguration r) {
+		for (Association association : addressAssociation.values()) {
+			if (association.renderer == r) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
 	/**
 	 * Tries to find a matching renderer configuration based on a request
 	 * header line with an additional, non-User-Agent header. These matches
@@ -495,6 +631,23 @@ public class RendererConfiguration {
 		if (isMediaParserV2()) {
 			formatConfiguration = new FormatConfiguration(configuration.getList(SUPPORTED));
 		}
+
+		// Compiled once, since they are matched against every unrecognized request
+		userAgentPattern = compile(getUserAgent());
+		userAgentAdditionalPattern = compile(getUserAgentAdditionalHttpHeaderSearch());
+	}
+
+	private Pattern compile(String regex) {
+		if (StringUtils.isBlank(regex)) {
+			return null;
+		}
+
+		try {
+			return Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+		} catch (PatternSyntaxException e) {
+			logger.info("Invalid pattern \"" + regex + "\" in the configuration of " + getRendererName() + ": " + e.getMessage());
+			return null;
+		}
 	}
 
 	public String getDLNAPN(String old) {
@@ -689,16 +842,7 @@ public class RendererConfiguration {
 	 * @return True if the pattern matches.
 	 */
 	public boolean matchUserAgent(String header) {
-		String userAgent = getUserAgent();
-		Pattern userAgentPattern;
-
-		if (StringUtils.isNotBlank(userAgent)) {
-			userAgentPattern = Pattern.compile(userAgent, Pattern.CASE_INSENSITIVE);
-
-			return userAgentPattern.matcher(header).find();
-		} else {
-			return false;
-		}
+		return userAgentPattern != null && userAgentPattern.matcher(header).find();
 	}
 
 	/**
@@ -710,16 +854,7 @@ public class RendererConfiguration {
 	 * @return True if the pattern matches.
 	 */
 	public boolean matchAdditionalUserAgent(String header) {
-		String userAgentAdditionalHeader = getUserAgentAdditionalHttpHeaderSearch();
-		Pattern userAgentAddtionalPattern;
-
-		if (StringUtils.isNotBlank(userAgentAdditionalHeader)) {
-			userAgentAddtionalPattern = Pattern.compile(userAgentAdditionalHeader, Pattern.CASE_INSENSITIVE);
-
-			return userAgentAddtionalPattern.matcher(header).find();
-		} else {
-			return false;
-		}
+		return userAgentAdditionalPattern != null && userAgentAdditionalPattern.matcher(header).find();
 	}
 
 	/**
@@ -1183,6 +1318,37 @@ public class RendererConfiguration {
 	 * Reset gathered information on IP address associations with renderers.
 	 */
 	protected static void resetAddressAssociation() {
-		addressAssociation = new HashMap<InetAddress, RendererConfiguration>();
+		forcedRenderers = null;
+		addressAssociation.clear();
+		userAgentAssociation.clear();
+	}
+
+	private static class Association {
+		private final RendererConfiguration renderer;
+		private volatile long lastUsed = System.currentTimeMillis();
+
+		Association(RendererConfiguration renderer) {
+			this.renderer = renderer;
+		}
+	}
+
+	private static class ForcedRenderers {
+		private final String configuration;
+		private final List<ForcedRenderer> renderers;
+
+		ForcedRenderers(String configuration, List<ForcedRenderer> renderers) {
+			this.configuration = configuration;
+			this.renderers = renderers;
+		}
+	}
+
+	private static class ForcedRenderer {
+		private final IpFilter filter;
+		private final RendererConfiguration renderer;
+
+		ForcedRenderer(IpFilter filter, RendererConfiguration renderer) {
+			this.filter = filter;
+			this.renderer = renderer;
+		}
 	}
 }
@@ -25,7 +25,9 @@ import net.pms.configuration.FormatConfiguration;
 import net.pms.configuration.PmsConfiguration;
 import net.pms.formats.Format;
 import net.pms.formats.v2.SubtitleType;
+import net.pms.util.RateLimiter;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
 import org.h2.engine.Constants;
 import org.h2.jdbc.JdbcSQLException;
 import org.h2.jdbcx.JdbcConnectionPool;
@@ -41,6 +43,24 @@ import java.awt.*;
 import java.io.File;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
 import static org.apache.commons.lang3.StringUtils.*;
 
@@ -60,9 +80,21 @@ public class DLNAMediaDatabase implements Runnable {
 	private String dbName;
 	public static final String NONAME = "###";
 	private Thread scanner;
+
+	/**
+	 * The tree that the library scanner walks, which is a tree of its own
+	 * since the scanner drops the children of the folders it is done with.
+	 */
+	private RootFolder scanRoot;
 	private JdbcConnectionPool cp;
 	private int dbCount;
 
+	/**
+	 * Incremented whenever files are added to or removed from the database,
+	 * so that views on the database know when to query it again.
+	 */
+	private final AtomicLong changeCount = new AtomicLong();
+
 	// Database column sizes
 	private final int SIZE_CODECV = 32;
 	private final int SIZE_FRAMERATE = 32;
@@ -82,6 +114,42 @@ public class DLNAMediaDatabase implements Runnable {
 	private final int SIZE_ARTIST = 255;
 	private final int SIZE_SONGNAME = 255;
 	private final int SIZE_GENRE = 64;
+	private static final int SIZE_WORD = 64;
+
+	/**
+	 * Splits titles into the words they are searched by.
+	 */
+	private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+	/**
+	 * Maximum number of files looked up by a single query.
+	 */
+	private static final int BATCH_SIZE = 500;
+
+	/**
+	 * Number of parsed statements each connection keeps, enough for all
+	 * queries of the media library.
+	 */
+	private static final int QUERY_CACHE_SIZE = 64;
+
+	/**
+	 * Number of threads that check the stored files in {@link #cleanup()}.
+	 */
+	private static final int VERIFIER_THREADS = 4;
+
+	/**
+	 * Maximum number of stored files checked per second in {@link #cleanup()}.
+	 */
+	private static final int VERIFIER_RATE = 500;
+
+	/**
+	 * Selects the media information of files, without the thumbnail itself.
+	 */
+	private static final String SELECT_MEDIA =
+		"SELECT F.ID, F.FILENAME, F.MODIFIED, F.DURATION, F.BITRATE, F.WIDTH, F.HEIGHT, F.SIZE, F.CODECV, F.FRAMERATE, F.ASPECT, " +
+		"F.ASPECTRATIOCONTAINER, F.ASPECTRATIOVIDEOTRACK, F.REFRAMES, F.AVCLEVEL, F.BITSPERPIXEL, F.CONTAINER, F.MODEL, " +
+		"F.EXPOSURE, F.ORIENTATION, F.ISO, F.MUXINGMODE, F.FRAMERATEMODE, T.FILEID AS THUMBID " +
+		"FROM FILES F LEFT JOIN THUMBNAILS T ON T.FILEID = F.ID ";
 
 	public DLNAMediaDatabase(String name) {
 		String dir = "database";
@@ -106,7 +174,8 @@ public class DLNAMediaDatabase implements Runnable {
 		}
 
 		JdbcDataSource ds = new JdbcDataSource();
-		ds.setURL(url);
+		// Keep the parsed statements of all media library queries
+		ds.setURL(url + ";QUERY_CACHE_SIZE=" + QUERY_CACHE_SIZE);
 		ds.setUser("sa");
 		ds.setPassword("");
 		cp = JdbcConnectionPool.create(ds);
@@ -162,6 +231,22 @@ public class DLNAMediaDatabase implements Runnable {
 			rs.close();
 			stmt.close();
 
+			// Databases created before thumbnails had their own table, before
+			// library scans could be resumed, or before titles were indexed
+			// for searching, are reinitialized
+			stmt = conn.createStatement();
+			rs = stmt.executeQuery("SELECT count(*) FROM THUMBNAILS");
+			rs.close();
+			stmt.close();
+			stmt = conn.createStatement();
+			rs = stmt.executeQuery("SELECT count(*) FROM SCANNED_FOLDERS");
+			rs.close();
+			stmt.close();
+			stmt = conn.createStatement();
+			rs = stmt.executeQuery("SELECT count(*) FROM SEARCH_WORDS");
+			rs.close();
+			stmt.close();
+
 			stmt = conn.createStatement();
 			rs = stmt.executeQuery("SELECT VALUE FROM METADATA WHERE KEY = 'VERSION'");
 			if (rs.next()) {
@@ -186,6 +271,9 @@ public class DLNAMediaDatabase implements Runnable {
 				executeUpdate(conn, "DROP TABLE REGEXP_RULES");
 				executeUpdate(conn, "DROP TABLE AUDIOTRACKS");
 				executeUpdate(conn, "DROP TABLE SUBTRACKS");
+				executeUpdate(conn, "DROP TABLE THUMBNAILS");
+				executeUpdate(conn, "DROP TABLE SCANNED_FOLDERS");
+				executeUpdate(conn, "DROP TABLE SEARCH_WORDS");
 			} catch (SQLException se) {
 				if (se.getErrorCode() != 42102) { // Don't log exception "Table "FILES" not found" which will be corrected in following step
 					logger.error(null, se);
@@ -211,7 +299,6 @@ public class DLNAMediaDatabase implements Runnable {
 				sb.append(", REFRAMES          TINYINT");
 				sb.append(", AVCLEVEL          VARCHAR2(").append(SIZE_AVC_LEVEL).append(")");
 				sb.append(", BITSPERPIXEL      INT");
-				sb.append(", THUMB             BINARY");
 				sb.append(", CONTAINER         VARCHAR2(").append(SIZE_CONTAINER).append(")");
 				sb.append(", MODEL             VARCHAR2(").append(SIZE_MODEL).append(")");
 				sb.append(", EXPOSURE          INT");
@@ -252,6 +339,14 @@ public class DLNAMediaDatabase implements Runnable {
 				sb.append(", constraint PKSUB primary key (FILEID, ID))");
 
 				executeUpdate(conn, sb.toString());
+				sb = new StringBuilder();
+				sb.append("CREATE TABLE THUMBNAILS (");
+				sb.append("  FILEID            INT              NOT NULL");
+				sb.append(", THUMB             BINARY");
+				sb.append(", constraint PKTHUMB primary key (FILEID))");
+				executeUpdate(conn, sb.toString());
+				executeUpdate(conn, "CREATE TABLE SCANNED_FOLDERS (FOLDER VARCHAR2(1024) NOT NULL, constraint PKSCANNED primary key (FOLDER))");
+				executeUpdate(conn, "CREATE TABLE SEARCH_WORDS (FILEID INT NOT NULL, WORD VARCHAR2(" + SIZE_WORD + ") NOT NULL, constraint PKWORDS primary key (WORD, FILEID))");
 				executeUpdate(conn, "CREATE TABLE METADATA (KEY VARCHAR2(255) NOT NULL, VALUE VARCHAR2(255) NOT NULL)");
 				executeUpdate(conn, "INSERT INTO METADATA VALUES ('VERSION', '" + PMS.getVersion() + "')");
 				executeUpdate(conn, "CREATE INDEX IDXARTIST on AUDIOTRACKS (ARTIST asc);");
@@ -270,6 +365,7 @@ public class DLNAMediaDatabase implements Runnable {
 					executeUpdate(conn, "INSERT INTO REGEXP_RULES VALUES ( '" + chars[i] + "', '(?i)^" + chars[i] + ".+', " + (i + 2) + " );");
 				}
 
+				changeCount.incrementAndGet();
 				logger.debug("Database initialized");
 			} catch (SQLException se) {
 				logger.info("Error in table creation: " + se.getMessage());
@@ -280,6 +376,28 @@ public class DLNAMediaDatabase implements Runnable {
 			logger.debug("Database file count: " + dbCount);
 			logger.debug("Database version: " + version);
 		}
+
+		createIndexes();
+	}
+
+	/**
+	 * Creates the indexes used by the media library queries, also in
+	 * databases that were created before they existed.
+	 */
+	private void createIndexes() {
+		Connection conn = null;
+		try {
+			conn = getConnection();
+			// Files are joined with their tracks by ID, which is only the last column of the primary key
+			executeUpdate(conn, "CREATE INDEX IF NOT EXISTS IDXFILEID on FILES (ID asc)");
+			executeUpdate(conn, "CREATE INDEX IF NOT EXISTS IDXTYPEFILENAME on FILES (TYPE asc, FILENAME asc)");
+			executeUpdate(conn, "CREATE INDEX IF NOT EXISTS IDXARTISTALBUM on AUDIOTRACKS (ARTIST asc, ALBUM asc)");
+			executeUpdate(conn, "CREATE INDEX IF NOT EXISTS IDXWORDFILEID on SEARCH_WORDS (FILEID asc)");
+		} catch (SQLException se) {
+			logger.info("Error in index creation: " + se.getMessage());
+		} finally {
+			close(conn);
+		}
 	}
 
 	private void executeUpdate(Connection conn, String sql) throws SQLException {
@@ -297,7 +415,7 @@ public class DLNAMediaDatabase implements Runnable {
 		PreparedStatement stmt = null;
 		try {
 			conn = getConnection();
-			stmt = conn.prepareStatement("SELECT * FROM FILES WHERE FILENAME = ? AND MODIFIED = ?");
+			stmt = conn.prepareStatement("SELECT ID FROM FILES WHERE FILENAME = ? AND MODIFIED = ?");
 			stmt.setString(1, name);
 			stmt.setTimestamp(2, new Timestamp(modified));
 			rs = stmt.executeQuery();
@@ -315,6 +433,15 @@ public class DLNAMediaDatabase implements Runnable {
 		return found;
 	}
 
+	/**
+	 * Returns the media information stored for a file. Thumbnails are not
+	 * read here, they are only loaded from {@link #getThumbnail(int)} when
+	 * they are actually served.
+	 *
+	 * @param name The absolute path of the file.
+	 * @param modified The last modification time of the file.
+	 * @return The media information, or null if the database could not be read.
+	 */
 	public ArrayList<DLNAMediaInfo> getData(String name, long modified) {
 		ArrayList<DLNAMediaInfo> list = new ArrayList<DLNAMediaInfo>();
 		Connection conn = null;
@@ -322,80 +449,16 @@ public class DLNAMediaDatabase implements Runnable {
 		PreparedStatement stmt = null;
 		try {
 			conn = getConnection();
-			stmt = conn.prepareStatement("SELECT * FROM FILES WHERE FILENAME = ? AND MODIFIED = ?");
+			stmt = conn.prepareStatement(SELECT_MEDIA + "WHERE F.FILENAME = ? AND F.MODIFIED = ?");
 			stmt.setString(1, name);
 			stmt.setTimestamp(2, new Timestamp(modified));
 			rs = stmt.executeQuery();
+			Map<Integer, DLNAMediaInfo> medias = new LinkedHashMap<Integer, DLNAMediaInfo>();
 			while (rs.next()) {
-				DLNAMediaInfo media = new DLNAMediaInfo();
-				int id = rs.getInt("ID");
-				media.setDuration(toDouble(rs, "DURATION"));
-				media.setBitrate(rs.getInt("BITRATE"));
-				media.setWidth(rs.getInt("WIDTH"));
-				media.setHeight(rs.getInt("HEIGHT"));
-				media.setSize(rs.getLong("SIZE"));
-				media.setCodecV(rs.getString("CODECV"));
-				media.setFrameRate(rs.getString("FRAMERATE"));
-				media.setAspect(rs.getString("ASPECT"));
-				media.setAspectRatioContainer(rs.getString("ASPECTRATIOCONTAINER"));
-				media.setAspectRatioVideoTrack(rs.getString("ASPECTRATIOVIDEOTRACK"));
-				media.setReferenceFrameCount(rs.getByte("REFRAMES"));
-				media.setAvcLevel(rs.getString("AVCLEVEL"));
-				media.setBitsPerPixel(rs.getInt("BITSPERPIXEL"));
-				media.setThumb(rs.getBytes("THUMB"));
-				media.setContainer(rs.getString("CONTAINER"));
-				media.setModel(rs.getString("MODEL"));
-				if (media.getModel() != null && !FormatConfiguration.JPG.equals(media.getContainer())) {
-					media.setExtrasAsString(media.getModel());
-				}
-				media.setExposure(rs.getInt("EXPOSURE"));
-				media.setOrientation(rs.getInt("ORIENTATION"));
-				media.setIso(rs.getInt("ISO"));
-				media.setMuxingMode(rs.getString("MUXINGMODE"));
-				media.setFrameRateMode(rs.getString("FRAMERATEMODE"));
-				media.setMediaparsed(true);
-				PreparedStatement audios = conn.prepareStatement("SELECT * FROM AUDIOTRACKS WHERE FILEID = ?");
-				audios.setInt(1, id);
-				ResultSet subrs = audios.executeQuery();
-				while (subrs.next()) {
-					DLNAMediaAudio audio = new DLNAMediaAudio();
-					audio.setId(subrs.getInt("ID"));
-					audio.setLang(subrs.getString("LANG"));
-					audio.setFlavor(subrs.getString("FLAVOR"));
-					audio.getAudioProperties().setNumberOfChannels(subrs.getInt("NRAUDIOCHANNELS"));
-					audio.setSampleFrequency(subrs.getString("SAMPLEFREQ"));
-					audio.setCodecA(subrs.getString("CODECA"));
-					audio.setBitsperSample(subrs.getInt("BITSPERSAMPLE"));
-					audio.setAlbum(subrs.getString("ALBUM"));
-					audio.setArtist(subrs.getString("ARTIST"));
-					audio.setSongname(subrs.getString("SONGNAME"));
-					audio.setGenre(subrs.getString("GENRE"));
-					audio.setYear(subrs.getInt("YEAR"));
-					audio.setTrack(subrs.getInt("TRACK"));
-					audio.getAudioProperties().setAudioDelay(subrs.getInt("DELAY"));
-					audio.setMuxingModeAudio(subrs.getString("MUXINGMODE"));
-                    audio.setBitRate(subrs.getInt("BITRATE"));
-					media.getAudioTracksList().add(audio);
-				}
-				subrs.close();
-				audios.close();
-
-				PreparedStatement subs = conn.prepareStatement("SELECT * FROM SUBTRACKS WHERE FILEID = ?");
-				subs.setInt(1, id);
-				subrs = subs.executeQuery();
-				while (subrs.next()) {
-					DLNAMediaSubtitle sub = new DLNAMediaSubtitle();
-					sub.setId(subrs.getInt("ID"));
-					sub.setLang(subrs.getString("LANG"));
-					sub.setFlavor(subrs.getString("FLAVOR"));
-					sub.setType(SubtitleType.valueOfStableIndex(subrs.getInt("TYPE")));
-					media.getSubtitleTracksList().add(sub);
-				}
-				subrs.close();
-				subs.close();
-
-				list.add(media);
+				medias.put(rs.getInt("ID"), readMedia(rs));
 			}
+			readTracks(conn, medias);
+			list.addAll(medias.values());
 		} catch (SQLException se) {
 			logger.error(null, se);
 			return null;
@@ -406,7 +469,178 @@ public class DLNAMediaDatabase implements Runnable {
 		}
 		return list;
 	}
-	
+
+	/**
+	 * Returns the media information stored for several files at once, e.g.
+	 * for all files of a folder that is being browsed. The files are looked
+	 * up in batches of {@link #BATCH_SIZE}, with a query each for the files,
+	 * their audio tracks and their subtitle tracks, instead of separate
+	 * queries for every file.
+	 *
+	 * @param files The files to look up.
+	 * @return The media information by absolute path, for the files that
+	 * 			have been stored with their current modification time, or
+	 * 			null if the database could not be read.
+	 */
+	public Map<String, DLNAMediaInfo> getData(List<File> files) {
+		Map<String, DLNAMediaInfo> result = new HashMap<String, DLNAMediaInfo>();
+		Connection conn = null;
+		try {
+			conn = getConnection();
+			for (int start = 0; start < files.size(); start += BATCH_SIZE) {
+				List<File> batch = files.subList(start, Math.min(start + BATCH_SIZE, files.size()));
+				Map<String, Long> modified = new HashMap<String, Long>();
+				for (File file : batch) {
+					modified.put(file.getAbsolutePath(), file.lastModified());
+				}
+
+				PreparedStatement stmt = conn.prepareStatement(SELECT_MEDIA + "WHERE F.FILENAME IN (" + getPlaceholders(modified.size()) + ")");
+				ResultSet rs = null;
+				Map<Integer, DLNAMediaInfo> medias = new HashMap<Integer, DLNAMediaInfo>();
+				try {
+					int index = 1;
+					for (String name : modified.keySet()) {
+						stmt.setString(index++, name);
+					}
+					rs = stmt.executeQuery();
+					while (rs.next()) {
+						String name = rs.getString("FILENAME");
+						Long lastModified = modified.get(name);
+
+						// Like getData(String, long), only files that have not changed since they were stored
+						if (lastModified != null && lastModified == rs.getTimestamp("MODIFIED").getTime() && !result.containsKey(name)) {
+							DLNAMediaInfo media = readMedia(rs);
+							medias.put(rs.getInt("ID"), media);
+							result.put(name, media);
+						}
+					}
+				} finally {
+					close(rs);
+					close(stmt);
+				}
+				readTracks(conn, medias);
+			}
+		} catch (SQLException se) {
+			logger.error(null, se);
+			return null;
+		} finally {
+			close(conn);
+		}
+		return result;
+	}
+
+	private static String getPlaceholders(int count) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			sb.append(i == 0 ? "?" : ", ?");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Creates the media information for the current row of a query built
+	 * on {@link #SELECT_MEDIA}.
+	 */
+	private DLNAMediaInfo readMedia(ResultSet rs) throws SQLException {
+		DLNAMediaInfo media = new DLNAMediaInfo();
+		media.setDuration(toDouble(rs, "DURATION"));
+		media.setBitrate(rs.getInt("BITRATE"));
+		media.setWidth(rs.getInt("WIDTH"));
+		media.setHeight(rs.getInt("HEIGHT"));
+		media.setSize(rs.getLong("SIZE"));
+		media.setCodecV(rs.getString("CODECV"));
+		media.setFrameRate(rs.getString("FRAMERATE"));
+		media.setAspect(rs.getString("ASPECT"));
+		media.setAspectRatioContainer(rs.getString("ASPECTRATIOCONTAINER"));
+		media.setAspectRatioVideoTrack(rs.getString("ASPECTRATIOVIDEOTRACK"));
+		media.setReferenceFrameCount(rs.getByte("REFRAMES"));
+		media.setAvcLevel(rs.getString("AVCLEVEL"));
+		media.setBitsPerPixel(rs.getInt("BITSPERPIXEL"));
+		if (rs.getObject("THUMBID") != null) {
+			media.setThumbId(rs.getInt("ID"));
+		}
+		media.setContainer(rs.getString("CONTAINER"));
+		media.setModel(rs.getString("MODEL"));
+		if (media.getModel() != null && !FormatConfiguration.JPG.equals(media.getContainer())) {
+			media.setExtrasAsString(media.getModel());
+		}
+		media.setExposure(rs.getInt("EXPOSURE"));
+		media.setOrientation(rs.getInt("ORIENTATION"));
+		media.setIso(rs.getInt("ISO"));
+		media.setMuxingMode(rs.getString("MUXINGMODE"));
+		media.setFrameRateMode(rs.getString("FRAMERATEMODE"));
+		media.setMediaparsed(true);
+		return media;
+	}
+
+	/**
+	 * Adds the audio and subtitle tracks to media information, with a single
+	 * query for each kind of track.
+	 *
+	 * @param medias The media information by file ID.
+	 */
+	private void readTracks(Connection conn, Map<Integer, DLNAMediaInfo> medias) throws SQLException {
+		if (medias.isEmpty()) {
+			return;
+		}
+
+		String placeholders = getPlaceholders(medias.size());
+		PreparedStatement audios = conn.prepareStatement("SELECT * FROM AUDIOTRACKS WHERE FILEID IN (" + placeholders + ") ORDER BY FILEID, ID");
+		ResultSet subrs = null;
+		try {
+			setIds(audios, medias.keySet());
+			subrs = audios.executeQuery();
+			while (subrs.next()) {
+				DLNAMediaAudio audio = new DLNAMediaAudio();
+				audio.setId(subrs.getInt("ID"));
+				audio.setLang(subrs.getString("LANG"));
+				audio.setFlavor(subrs.getString("FLAVOR"));
+				audio.getAudioProperties().setNumberOfChannels(subrs.getInt("NRAUDIOCHANNELS"));
+				audio.setSampleFrequency(subrs.getString("SAMPLEFREQ"));
+				audio.setCodecA(subrs.getString("CODECA"));
+				audio.setBitsperSample(subrs.getInt("BITSPERSAMPLE"));
+				audio.setAlbum(subrs.getString("ALBUM"));
+				audio.setArtist(subrs.getString("ARTIST"));
+				audio.setSongname(subrs.getString("SONGNAME"));
+				audio.setGenre(subrs.getString("GENRE"));
+				audio.setYear(subrs.getInt("YEAR"));
+				audio.setTrack(subrs.getInt("TRACK"));
+				audio.getAudioProperties().setAudioDelay(subrs.getInt("DELAY"));
+				audio.setMuxingModeAudio(subrs.getString("MUXINGMODE"));
+				audio.setBitRate(subrs.getInt("BITRATE"));
+				medias.get(subrs.getInt("FILEID")).getAudioTracksList().add(audio);
+			}
+		} finally {
+			close(subrs);
+			close(audios);
+		}
+
+		PreparedStatement subs = conn.prepareStatement("SELECT * FROM SUBTRACKS WHERE FILEID IN (" + placeholders + ") ORDER BY FILEID, ID");
+		subrs = null;
+		try {
+			setIds(subs, medias.keySet());
+			subrs = subs.executeQuery();
+			while (subrs.next()) {
+				DLNAMediaSubtitle sub = new DLNAMediaSubtitle();
+				sub.setId(subrs.getInt("ID"));
+				sub.setLang(subrs.getString("LANG"));
+				sub.setFlavor(subrs.getString("FLAVOR"));
+				sub.setType(SubtitleType.valueOfStableIndex(subrs.getInt("TYPE")));
+				medias.get(subrs.getInt("FILEID")).getSubtitleTracksList().add(sub);
+			}
+		} finally {
+			close(subrs);
+			close(subs);
+		}
+	}
+
+	private static void setIds(PreparedStatement ps, Collection<Integer> ids) throws SQLException {
+		int index = 1;
+		for (Integer id : ids) {
+			ps.setInt(index++, id);
+		}
+	}
+
 	private Double toDouble(ResultSet rs, String column) throws SQLException {
 		Object obj = rs.getObject(column);
 		if (obj instanceof Double) {
@@ -418,9 +652,10 @@ public class DLNAMediaDatabase implements Runnable {
 	public synchronized void insertData(String name, long modified, int type, DLNAMediaInfo media) {
 		Connection conn = null;
 		PreparedStatement ps = null;
+		boolean inserted = false;
 		try {
 			conn = getConnection();
-			ps = conn.prepareStatement("INSERT INTO FILES(FILENAME, MODIFIED, TYPE, DURATION, BITRATE, WIDTH, HEIGHT, SIZE, CODECV, FRAMERATE, ASPECT, ASPECTRATIOCONTAINER, ASPECTRATIOVIDEOTRACK, REFRAMES, AVCLEVEL, BITSPERPIXEL, THUMB, CONTAINER, MODEL, EXPOSURE, ORIENTATION, ISO, MUXINGMODE, FRAMERATEMODE) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+			ps = conn.prepareStatement("INSERT INTO FILES(FILENAME, MODIFIED, TYPE, DURATION, BITRATE, WIDTH, HEIGHT, SIZE, CODECV, FRAMERATE, ASPECT, ASPECTRATIOCONTAINER, ASPECTRATIOVIDEOTRACK, REFRAMES, AVCLEVEL, BITSPERPIXEL, CONTAINER, MODEL, EXPOSURE, ORIENTATION, ISO, MUXINGMODE, FRAMERATEMODE) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
 			ps.setString(1, name);
 			ps.setTimestamp(2, new Timestamp(modified));
 			ps.setInt(3, type);
@@ -451,18 +686,17 @@ public class DLNAMediaDatabase implements Runnable {
 				ps.setByte(14, media.getReferenceFrameCount());
 				ps.setString(15, left(media.getAvcLevel(), SIZE_AVC_LEVEL));
 				ps.setInt(16, media.getBitsPerPixel());
-				ps.setBytes(17, media.getThumb());
-				ps.setString(18, left(media.getContainer(), SIZE_CONTAINER));
+				ps.setString(17, left(media.getContainer(), SIZE_CONTAINER));
 				if (media.getExtras() != null) {
-					ps.setString(19, left(media.getExtrasAsString(), SIZE_MODEL));
+					ps.setString(18, left(media.getExtrasAsString(), SIZE_MODEL));
 				} else {
-					ps.setString(19, left(media.getModel(), SIZE_MODEL));
+					ps.setString(18, left(media.getModel(), SIZE_MODEL));
 				}
-				ps.setInt(20, media.getExposure());
-				ps.setInt(21, media.getOrientation());
-				ps.setInt(22, media.getIso());
-				ps.setString(23, left(media.getMuxingModeAudio(), SIZE_MUXINGMODE));
-				ps.setString(24, left(media.getFrameRateMode(), SIZE_FRAMERATE_MODE));
+				ps.setInt(19, media.getExposure());
+				ps.setInt(20, media.getOrientation());
+				ps.setInt(21, media.getIso());
+				ps.setString(22, left(media.getMuxingModeAudio(), SIZE_MUXINGMODE));
+				ps.setString(23, left(media.getFrameRateMode(), SIZE_FRAMERATE_MODE));
 			} else {
 				ps.setString(4, null);
 				ps.setInt(5, 0);
@@ -477,16 +711,16 @@ public class DLNAMediaDatabase implements Runnable {
 				ps.setByte(14, (byte) -1);
 				ps.setString(15, null);
 				ps.setInt(16, 0);
-				ps.setBytes(17, null);
+				ps.setString(17, null);
 				ps.setString(18, null);
-				ps.setString(19, null);
+				ps.setInt(19, 0);
 				ps.setInt(20, 0);
 				ps.setInt(21, 0);
-				ps.setInt(22, 0);
+				ps.setString(22, null);
 				ps.setString(23, null);
-				ps.setString(24, null);
 			}
 			ps.executeUpdate();
+			inserted = true;
 			ResultSet rs = ps.getGeneratedKeys();
 			int id = -1;
 			while (rs.next()) {
@@ -555,6 +789,14 @@ public class DLNAMediaDatabase implements Runnable {
 					}
 				}
 				close(insert);
+
+				if (media.getThumb() != null) {
+					storeThumbnail(conn, id, media);
+				}
+			}
+
+			if (id > -1) {
+				storeWords(conn, id, name, media);
 			}
 		} catch (SQLException se) {
 			if (se.getErrorCode() == 23001) {
@@ -565,53 +807,169 @@ public class DLNAMediaDatabase implements Runnable {
 		} finally {
 			close(ps);
 			close(conn);
+
+			// Only once the tracks are stored, so that views that query
+			// again because of the change find the artist and album
+			if (inserted) {
+				changeCount.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Indexes the words of the title of a file, which is either its name or
+	 * the name of one of its songs, for {@link SearchCriteria}.
+	 */
+	private void storeWords(Connection conn, int id, String name, DLNAMediaInfo media) throws SQLException {
+		Set<String> words = getWords(FilenameUtils.getBaseName(name));
+
+		if (media != null) {
+			for (DLNAMediaAudio audio : media.getAudioTracksList()) {
+				words.addAll(getWords(audio.getSongname()));
+			}
+		}
+
+		if (words.isEmpty()) {
+			return;
+		}
+
+		PreparedStatement insert = conn.prepareStatement("INSERT INTO SEARCH_WORDS VALUES (?, ?)");
+
+		try {
+			for (String word : words) {
+				insert.setInt(1, id);
+				insert.setString(2, word);
+				insert.addBatch();
+			}
+
+			insert.executeBatch();
+		} finally {
+			close(insert);
 		}
 	}
 
+	/**
+	 * Returns the words that a title is searched by: its runs of letters and
+	 * digits, in lower case and cut to the size of the index column.
+	 *
+	 * @param text The title.
+	 * @return The words.
+	 */
+	public static Set<String> getWords(String text) {
+		Set<String> words = new LinkedHashSet<String>();
+
+		if (text != null) {
+			for (String word : WORD_SEPARATOR.split(text.toLowerCase())) {
+				if (word.length() > 0) {
+					words.add(left(word, SIZE_WORD));
+				}
+			}
+		}
+
+		return words;
+	}
+
 	public synchronized void updateThumbnail(String name, long modified, int type, DLNAMediaInfo media) {
 		Connection conn = null;
 		PreparedStatement ps = null;
+		ResultSet rs = null;
 		try {
 			conn = getConnection();
-			ps = conn.prepareStatement("UPDATE FILES SET THUMB = ? WHERE FILENAME = ? AND MODIFIED = ?");
-			ps.setString(2, name);
-			ps.setTimestamp(3, new Timestamp(modified));
-			if (media != null) {
-				ps.setBytes(1, media.getThumb());
-			} else {
-				ps.setNull(1, Types.BINARY);
+			ps = conn.prepareStatement("SELECT ID FROM FILES WHERE FILENAME = ? AND MODIFIED = ?");
+			ps.setString(1, name);
+			ps.setTimestamp(2, new Timestamp(modified));
+			rs = ps.executeQuery();
+			while (rs.next()) {
+				int id = rs.getInt(1);
+				if (media != null && media.getThumb() != null) {
+					storeThumbnail(conn, id, media);
+				} else {
+					PreparedStatement delete = conn.prepareStatement("DELETE FROM THUMBNAILS WHERE FILEID = ?");
+					delete.setInt(1, id);
+					delete.executeUpdate();
+					delete.close();
+				}
 			}
-			ps.executeUpdate();
 		} catch (SQLException se) {
-			if (se.getErrorCode() == 23001) {
-				logger.debug("Duplicate key while inserting this entry: " + name + " into the database: " + se.getMessage());
-			} else {
-				logger.error(null, se);
+			logger.error(null, se);
+		} finally {
+			close(rs);
+			close(ps);
+			close(conn);
+		}
+	}
+
+	/**
+	 * Stores the thumbnail of a file in the THUMBNAILS table and lets the
+	 * media information drop its copy, so that it is read back from the
+	 * database only when it is served.
+	 */
+	private void storeThumbnail(Connection conn, int id, DLNAMediaInfo media) throws SQLException {
+		PreparedStatement ps = conn.prepareStatement("MERGE INTO THUMBNAILS (FILEID, THUMB) KEY (FILEID) VALUES (?, ?)");
+		try {
+			ps.setInt(1, id);
+			ps.setBytes(2, media.getThumb());
+			ps.executeUpdate();
+		} finally {
+			close(ps);
+		}
+		media.setThumbId(id);
+	}
+
+	/**
+	 * Returns a thumbnail stored by {@link #insertData(String, long, int, DLNAMediaInfo)}
+	 * or {@link #updateThumbnail(String, long, int, DLNAMediaInfo)}.
+	 *
+	 * @param id The ID of the file the thumbnail belongs to.
+	 * @return The thumbnail, or null if there is none.
+	 */
+	public byte[] getThumbnail(int id) {
+		Connection conn = null;
+		ResultSet rs = null;
+		PreparedStatement ps = null;
+		try {
+			conn = getConnection();
+			ps = conn.prepareStatement("SELECT THUMB FROM THUMBNAILS WHERE FILEID = ?");
+			ps.setInt(1, id);
+			rs = ps.executeQuery();
+			if (rs.next()) {
+				return rs.getBytes(1);
 			}
+		} catch (SQLException se) {
+			logger.error(null, se);
 		} finally {
+			close(rs);
 			close(ps);
 			close(conn);
 		}
+		return null;
 	}
 
 	public ArrayList<String> getStrings(String sql) {
-		ArrayList<String> list = new ArrayList<String>();
+		return getStrings(sql, Collections.<String>emptyList());
+	}
+
+	/**
+	 * Returns the distinct values of the first column of a query, with blank
+	 * values replaced by {@link #NONAME}.
+	 *
+	 * @param sql The query, with a "?" for every parameter.
+	 * @param parameters The values of the parameters.
+	 * @return The values, or null if the query failed.
+	 */
+	public ArrayList<String> getStrings(String sql, List<String> parameters) {
+		Set<String> values = new LinkedHashSet<String>();
 		Connection conn = null;
 		ResultSet rs = null;
 		PreparedStatement ps = null;
 		try {
 			conn = getConnection();
 			ps = conn.prepareStatement(sql);
+			setParameters(ps, parameters);
 			rs = ps.executeQuery();
 			while (rs.next()) {
 				String str = rs.getString(1);
-				if (isBlank(str)) {
-					if (!list.contains(NONAME)) {
-						list.add(NONAME);
-					}
-				} else if (!list.contains(str)) {
-					list.add(str);
-				}
+				values.add(isBlank(str) ? NONAME : str);
 			}
 		} catch (SQLException se) {
 			logger.error(null, se);
@@ -621,72 +979,348 @@ public class DLNAMediaDatabase implements Runnable {
 			close(ps);
 			close(conn);
 		}
-		return list;
+		return new ArrayList<String>(values);
+	}
+
+	/**
+	 * Returns the number in the first column of the first row of a query.
+	 *
+	 * @param sql The query, with a "?" for every parameter.
+	 * @param parameters The values of the parameters.
+	 * @return The number, or -1 if the query failed.
+	 */
+	public int getCount(String sql, List<String> parameters) {
+		Connection conn = null;
+		ResultSet rs = null;
+		PreparedStatement ps = null;
+		try {
+			conn = getConnection();
+			ps = conn.prepareStatement(sql);
+			setParameters(ps, parameters);
+			rs = ps.executeQuery();
+			return rs.next() ? rs.getInt(1) : 0;
+		} catch (SQLException se) {
+			logger.error(null, se);
+			return -1;
+		} finally {
+			close(rs);
+			close(ps);
+			close(conn);
+		}
+	}
+
+	private static void setParameters(PreparedStatement ps, List<String> parameters) throws SQLException {
+		for (int i = 0; i < parameters.size(); i++) {
+			ps.setString(i + 1, parameters.get(i));
+		}
 	}
 
+	/**
+	 * Removes the files that no longer exist or have been modified since they
+	 * were stored. Since {@link #getFiles(String, List)} does not check the
+	 * files it returns, this is what keeps the media library up to date.
+	 * <p>
+	 * The files are checked by {@link #VERIFIER_THREADS} threads at once, but
+	 * no more than {@link #VERIFIER_RATE} per second, so that a library on a
+	 * network share is checked quickly without flooding the share. The stale
+	 * files are deleted in batches once all files have been checked.
+	 */
 	public void cleanup() {
+		final List<Integer> ids = new ArrayList<Integer>();
+		final List<File> files = new ArrayList<File>();
 		Connection conn = null;
 		PreparedStatement ps = null;
 		ResultSet rs = null;
-		
+
 		try {
 			conn = getConnection();
-			ps = conn.prepareStatement("SELECT COUNT(*) FROM FILES");
+			ps = conn.prepareStatement("SELECT ID, FILENAME, MODIFIED FROM FILES");
 			rs = ps.executeQuery();
-			dbCount = 0;
-			
-			if (rs.next()) {
-				dbCount = rs.getInt(1);
+
+			while (rs.next()) {
+				ids.add(rs.getInt("ID"));
+				files.add(new StoredFile(rs.getString("FILENAME"), rs.getTimestamp("MODIFIED").getTime(), -1));
+			}
+		} catch (SQLException se) {
+			logger.error(null, se);
+			return;
+		} finally {
+			close(rs);
+			close(ps);
+			close(conn);
+		}
+
+		dbCount = files.size();
+		PMS.get().getFrame().setStatusLine(Messages.getString("DLNAMediaDatabase.2") + " 0%");
+
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicInteger checked = new AtomicInteger();
+		final RateLimiter limiter = new RateLimiter(VERIFIER_RATE);
+		final Queue<Integer> stale = new ConcurrentLinkedQueue<Integer>();
+		ExecutorService executor = Executors.newFixedThreadPool(VERIFIER_THREADS, new ThreadFactory() {
+			private final AtomicInteger counter = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "cleanup-" + counter.getAndIncrement());
+				t.setDaemon(true);
+				return t;
 			}
+		});
 
-			rs.close();
-			ps.close();
-			PMS.get().getFrame().setStatusLine(Messages.getString("DLNAMediaDatabase.2") + " 0%");
-			int i = 0;
-			int oldpercent = 0;
-
-			if (dbCount > 0) {
-				ps = conn.prepareStatement("SELECT FILENAME, MODIFIED, ID FROM FILES", ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_UPDATABLE);
-				rs = ps.executeQuery();
-				while (rs.next()) {
-					String filename = rs.getString("FILENAME");
-					long modified = rs.getTimestamp("MODIFIED").getTime();
-					File file = new File(filename);
-					if (!file.exists() || file.lastModified() != modified) {
-						rs.deleteRow();
-					}
-					i++;
-					int newpercent = i * 100 / dbCount;
-					if (newpercent > oldpercent) {
-						PMS.get().getFrame().setStatusLine(Messages.getString("DLNAMediaDatabase.2") + newpercent + "%");
-						oldpercent = newpercent;
+		for (int t = 0; t < VERIFIER_THREADS; t++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					int i;
+
+					while ((i = next.getAndIncrement()) < files.size()) {
+						if (!limiter.acquire()) {
+							return;
+						}
+
+						File stored = files.get(i);
+						File file = new File(stored.getPath());
+
+						if (!file.exists() || file.lastModified() != stored.lastModified()) {
+							stale.add(ids.get(i));
+						}
+
+						checked.incrementAndGet();
 					}
 				}
+			});
+		}
+
+		executor.shutdown();
+
+		try {
+			// Reports the progress once a second rather than once per file
+			while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+				int percent = dbCount > 0 ? (int) (checked.get() * 100L / dbCount) : 100;
+				PMS.get().getFrame().setStatusLine(Messages.getString("DLNAMediaDatabase.2") + " " + percent + "%");
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			return;
+		}
+
+		deleteFiles(new ArrayList<Integer>(stale));
+	}
+
+	/**
+	 * Deletes stored files along with their tracks and thumbnails, as well as
+	 * thumbnails that are left over from files deleted before.
+	 *
+	 * @param ids The IDs of the files.
+	 */
+	private void deleteFiles(List<Integer> ids) {
+		Connection conn = null;
+		PreparedStatement ps = null;
+
+		try {
+			conn = getConnection();
+
+			for (int start = 0; start < ids.size(); start += BATCH_SIZE) {
+				List<Integer> batch = ids.subList(start, Math.min(start + BATCH_SIZE, ids.size()));
+				String placeholders = getPlaceholders(batch.size());
+
+				for (String delete : new String[] {
+					"DELETE FROM FILES WHERE ID IN (",
+					"DELETE FROM AUDIOTRACKS WHERE FILEID IN (",
+					"DELETE FROM SUBTRACKS WHERE FILEID IN (",
+					"DELETE FROM THUMBNAILS WHERE FILEID IN (",
+					"DELETE FROM SEARCH_WORDS WHERE FILEID IN ("
+				}) {
+					ps = conn.prepareStatement(delete + placeholders + ")");
+					setIds(ps, batch);
+					ps.executeUpdate();
+					ps.close();
+				}
+			}
+
+			if (!ids.isEmpty()) {
+				logger.debug("Removed " + ids.size() + " files that no longer exist or have been modified from the database");
+				changeCount.incrementAndGet();
+			}
+
+			ps = conn.prepareStatement("DELETE FROM THUMBNAILS WHERE FILEID NOT IN (SELECT ID FROM FILES)");
+			ps.executeUpdate();
+		} catch (SQLException se) {
+			logger.error(null, se);
+		} finally {
+			close(ps);
+			close(conn);
+		}
+	}
+
+	/**
+	 * Removes a file from the database if it no longer exists or has been
+	 * modified since it was stored. Called when serving a file fails, which
+	 * is when a file returned by {@link #getFiles(String, List)} turns out
+	 * to be gone before {@link #cleanup()} noticed.
+	 *
+	 * @param file The file.
+	 */
+	public void verify(File file) {
+		List<Integer> ids = new ArrayList<Integer>();
+		// The file may be one returned by getFiles, which answers from the database
+		File actual = new File(file.getPath());
+		boolean exists = actual.exists();
+		long modified = actual.lastModified();
+		Connection conn = null;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+
+		try {
+			conn = getConnection();
+			ps = conn.prepareStatement("SELECT ID, MODIFIED FROM FILES WHERE FILENAME = ?");
+			ps.setString(1, file.getAbsolutePath());
+			rs = ps.executeQuery();
+
+			while (rs.next()) {
+				if (!exists || rs.getTimestamp("MODIFIED").getTime() != modified) {
+					ids.add(rs.getInt("ID"));
+				}
 			}
 		} catch (SQLException se) {
 			logger.error(null, se);
+			return;
 		} finally {
 			close(rs);
 			close(ps);
 			close(conn);
 		}
+
+		if (!ids.isEmpty()) {
+			deleteFiles(ids);
+		}
+	}
+
+	/**
+	 * Returns the folders that an unfinished library scan has scanned
+	 * completely, see {@link LibraryScanner}.
+	 *
+	 * @return The paths of the folders in the resource tree.
+	 */
+	public Set<String> getScannedFolders() {
+		Set<String> folders = new HashSet<String>();
+		Connection conn = null;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+
+		try {
+			conn = getConnection();
+			ps = conn.prepareStatement("SELECT FOLDER FROM SCANNED_FOLDERS");
+			rs = ps.executeQuery();
+
+			while (rs.next()) {
+				folders.add(rs.getString(1));
+			}
+		} catch (SQLException se) {
+			logger.error(null, se);
+		} finally {
+			close(rs);
+			close(ps);
+			close(conn);
+		}
+
+		return folders;
+	}
+
+	/**
+	 * Records that the library scan has scanned a folder completely, so that
+	 * the folder is skipped when the scan is interrupted and started again.
+	 *
+	 * @param folder The path of the folder in the resource tree.
+	 */
+	public void setFolderScanned(String folder) {
+		Connection conn = null;
+		PreparedStatement ps = null;
+
+		try {
+			conn = getConnection();
+			ps = conn.prepareStatement("MERGE INTO SCANNED_FOLDERS (FOLDER) KEY (FOLDER) VALUES (?)");
+			ps.setString(1, left(folder, 1024));
+			ps.executeUpdate();
+		} catch (SQLException se) {
+			logger.error(null, se);
+		} finally {
+			close(ps);
+			close(conn);
+		}
+	}
+
+	/**
+	 * Forgets the folders scanned so far, once the library scan is complete.
+	 */
+	public void clearScannedFolders() {
+		Connection conn = null;
+
+		try {
+			conn = getConnection();
+			executeUpdate(conn, "DELETE FROM SCANNED_FOLDERS");
+		} catch (SQLException se) {
+			logger.error(null, se);
+		} finally {
+			close(conn);
+		}
+	}
+
+	/**
+	 * Returns a counter that changes whenever files are added to or removed
+	 * from the database. Views on the database only need to query it again
+	 * when the counter has changed since their last query.
+	 *
+	 * @return The change counter.
+	 */
+	public long getChangeCount() {
+		return changeCount.get();
 	}
 
 	public ArrayList<File> getFiles(String sql) {
-		ArrayList<File> list = new ArrayList<File>();
+		return getFiles(sql, Collections.<String>emptyList());
+	}
+
+	/**
+	 * Returns the files selected by a query as they were stored. The files
+	 * are not looked up on disk, which would take a long time for a large
+	 * library on a network share: they are assumed to exist and to have the
+	 * stored modification time. Files that turn out to be gone are removed
+	 * by {@link #verify(File)} when serving them fails, and by
+	 * {@link #cleanup()} after scanning the library. If a file is stored with
+	 * more than one modification time, only the latest one is returned.
+	 *
+	 * @param sql The query, or only its condition on the FILES table, with a
+	 * 			"?" for every parameter.
+	 * @param parameters The values of the parameters.
+	 * @return The files, or null if the query failed.
+	 */
+	public ArrayList<File> getFiles(String sql, List<String> parameters) {
+		Map<String, File> files = new LinkedHashMap<String, File>();
 		Connection conn = null;
 		ResultSet rs = null;
 		PreparedStatement ps = null;
 		try {
 			conn = getConnection();
-			ps = conn.prepareStatement(sql.toLowerCase().startsWith("select") ? sql : ("SELECT FILENAME, MODIFIED FROM FILES WHERE " + sql));
+			ps = conn.prepareStatement(sql.toLowerCase().startsWith("select") ? sql : ("SELECT FILENAME, MODIFIED, SIZE FROM FILES WHERE " + sql));
+			setParameters(ps, parameters);
 			rs = ps.executeQuery();
+			int sizeColumn = findColumn(rs, "SIZE");
 			while (rs.next()) {
 				String filename = rs.getString("FILENAME");
 				long modified = rs.getTimestamp("MODIFIED").getTime();
-				File file = new File(filename);
-				if (file.exists() && file.lastModified() == modified) {
-					list.add(file);
+				long size = -1;
+				if (sizeColumn > 0) {
+					size = rs.getLong(sizeColumn);
+					if (rs.wasNull()) {
+						size = -1;
+					}
+				}
+				File previous = files.get(filename);
+				if (previous == null || previous.lastModified() < modified) {
+					files.put(filename, new StoredFile(filename, modified, size));
 				}
 			}
 		} catch (SQLException se) {
@@ -697,7 +1331,23 @@ public class DLNAMediaDatabase implements Runnable {
 			close(ps);
 			close(conn);
 		}
-		return list;
+		return new ArrayList<File>(files.values());
+	}
+
+	/**
+	 * Returns the index of a column of a result, or 0 if the query did not
+	 * select it.
+	 */
+	private static int findColumn(ResultSet rs, String label) throws SQLException {
+		ResultSetMetaData metaData = rs.getMetaData();
+
+		for (int i = 1; i <= metaData.getColumnCount(); i++) {
+			if (label.equalsIgnoreCase(metaData.getColumnLabel(i))) {
+				return i;
+			}
+		}
+
+		return 0;
 	}
 
 	private void close(ResultSet rs) {
@@ -747,14 +1397,26 @@ public class DLNAMediaDatabase implements Runnable {
 	}
 
 	public synchronized void stopScanLibrary() {
-		if (scanner != null && scanner.isAlive()) {
-			PMS.get().getRootFolder(null).stopScan();
+		if (scanner != null && scanner.isAlive() && scanRoot != null) {
+			scanRoot.stopScan();
 		}
 	}
 
 	@Override
 	public void run() {
-		PMS.get().getRootFolder(null).scan();
+		RootFolder root = new RootFolder();
+
+		synchronized (this) {
+			scanRoot = root;
+		}
+
+		try {
+			root.scan();
+		} finally {
+			synchronized (this) {
+				scanRoot = null;
+			}
+		}
 	}
 
 	public void compact() {
@@ -775,4 +1437,46 @@ public class DLNAMediaDatabase implements Runnable {
 		}
 		PMS.get().getFrame().setStatusLine(null);
 	}
+
+	/**
+	 * A file as it was stored, which answers whether it exists, what it is,
+	 * how long it is and when it was modified from the database instead of
+	 * from the file system. Only files are stored, never folders.
+	 */
+	static class StoredFile extends File {
+		private static final long serialVersionUID = 1L;
+		private final long modified;
+		private final long size;
+
+		StoredFile(String name, long modified, long size) {
+			super(name);
+			this.modified = modified;
+			this.size = size;
+		}
+
+		@Override
+		public boolean exists() {
+			return true;
+		}
+
+		@Override
+		public boolean isFile() {
+			return true;
+		}
+
+		@Override
+		public boolean isDirectory() {
+			return false;
+		}
+
+		@Override
+		public long length() {
+			return size >= 0 ? size : super.length();
+		}
+
+		@Override
+		public long lastModified() {
+			return modified;
+		}
+	}
 }
@@ -183,6 +183,12 @@ public class DLNAMediaInfo implements Cloneable {
 	@Deprecated
 	public byte thumb[];
 
+	/**
+	 * The ID of the file whose thumbnail is stored in the database, or -1 if
+	 * the thumbnail, if any, is held in memory.
+	 */
+	private int thumbId = -1;
+
 	/**
 	 * @deprecated Use standard getter and setter to access this variable.
 	 */
@@ -1267,9 +1273,11 @@ public class DLNAMediaInfo implements Cloneable {
 		result.append(", frame rate: ");
 		result.append(getFrameRate());
 
-		if (getThumb() != null) {
+		if (thumb != null) {
 			result.append(", thumb size : ");
-			result.append(getThumb().length);
+			result.append(thumb.length);
+		} else if (thumbId != -1) {
+			result.append(", thumb stored");
 		}
 
 		result.append(", muxing mode: ");
@@ -1291,7 +1299,8 @@ public class DLNAMediaInfo implements Cloneable {
 	}
 
 	public InputStream getThumbnailInputStream() {
-		return new ByteArrayInputStream(getThumb());
+		byte[] data = getThumb();
+		return data != null ? new ByteArrayInputStream(data) : null;
 	}
 
 	public String getValidFps(boolean ratios) {
@@ -1673,10 +1682,19 @@ public class DLNAMediaInfo implements Cloneable {
 	}
 
 	/**
+	 * Returns the thumbnail. A thumbnail that is stored in the database is
+	 * read from it on every call rather than kept in memory, so use
+	 * {@link #hasThumb()} to find out whether there is a thumbnail at all.
+	 *
 	 * @return the thumb
 	 * @since 1.50.0
 	 */
 	public byte[] getThumb() {
+		if (thumb == null && thumbId != -1) {
+			DLNAMediaDatabase database = PMS.get().getDatabase();
+			return database != null ? database.getThumbnail(thumbId) : null;
+		}
+
 		return thumb;
 	}
 
@@ -1686,6 +1704,25 @@ public class DLNAMediaInfo implements Cloneable {
 	 */
 	public void setThumb(byte[] thumb) {
 		this.thumb = thumb;
+		thumbId = -1;
+	}
+
+	/**
+	 * @return whether there is a thumbnail, either in memory or in the database
+	 */
+	public boolean hasThumb() {
+		return thumb != null || thumbId != -1;
+	}
+
+	/**
+	 * Marks the thumbnail as stored in the database, releasing the copy held
+	 * in memory.
+	 *
+	 * @param thumbId the ID of the file the thumbnail is stored for
+	 */
+	void setThumbId(int thumbId) {
+		this.thumb = null;
+		this.thumbId = thumbId;
 	}
 
 	/**
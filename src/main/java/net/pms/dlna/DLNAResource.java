@@ -36,12 +36,15 @@ import net.pms.formats.Format;
 import net.pms.formats.FormatFactory;
 import net.pms.io.OutputParams;
 import net.pms.io.ProcessWrapper;
+import net.pms.io.ProcessWrapperImpl;
 import net.pms.io.SizeLimitInputStream;
 import net.pms.network.HTTPResource;
 import net.pms.util.ImagesUtil;
 import net.pms.util.Iso639;
 import net.pms.util.MpegUtil;
 
+import org.apache.commons.configuration.event.ConfigurationEvent;
+import org.apache.commons.configuration.event.ConfigurationListener;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 
@@ -54,9 +57,8 @@ import java.net.URLEncoder;
 import java.net.UnknownHostException;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 
 import static net.pms.util.StringUtil.*;
@@ -76,14 +78,37 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 	private boolean resolved;
 
 	private static final int STOP_PLAYING_DELAY = 4000;
+
+	/**
+	 * Maximum time in milliseconds that a transcode process is given to write
+	 * its first output before its output is read anyway.
+	 */
+	private static final int OUTPUT_TIMEOUT = 5000;
 	private static final Logger logger = LoggerFactory.getLogger(DLNAResource.class);
 	private static final SimpleDateFormat sdfDate = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US);
 	private static final PmsConfiguration configuration = PMS.getConfiguration();
 	private static final Engine displayNameTemplateEngine = Engine.createCompilingEngine();
 
+	/**
+	 * Number of times the configuration has changed, which is what the DIDL
+	 * fragments rendered from it are checked against.
+	 */
+	private static final AtomicInteger configurationChanges = new AtomicInteger();
+
 	static {
 		displayNameTemplateEngine.setExprStartToken("<");
 		displayNameTemplateEngine.setExprEndToken(">");
+
+		if (configuration != null) {
+			configuration.addConfigurationListener(new ConfigurationListener() {
+				@Override
+				public void configurationChanged(ConfigurationEvent event) {
+					if (!event.isBeforeUpdate()) {
+						configurationChanges.incrementAndGet();
+					}
+				}
+			});
+		}
 	}
 
 	protected static final int MAX_ARCHIVE_ENTRY_SIZE = 10000000;
@@ -94,6 +119,12 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 	 */
 	private String displayName;
 
+	/**
+	 * Maximum number of renderers for which the DIDL of a resource is kept.
+	 */
+	private static final int MAX_DIDL_FRAGMENTS = 4;
+	private static final DidlFragment[] NO_DIDL_FRAGMENTS = new DidlFragment[0];
+
 	/**
 	 * @deprecated This field will be removed. Use {@link net.pms.configuration.PmsConfiguration#getTranscodeFolderName()} instead.
 	 */
@@ -198,6 +229,19 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 	private DLNAResource first;
 	private DLNAResource second;
 
+	/**
+	 * The mime type preferred by the renderer of this tree. It is kept here
+	 * rather than in the media information, which is shared between the
+	 * trees of all renderers.
+	 */
+	private String rendererMimeType;
+
+	/**
+	 * The DIDL fragments rendered for this resource, one per renderer, most
+	 * recently rendered first.
+	 */
+	private volatile DidlFragment[] didlFragments = NO_DIDL_FRAGMENTS;
+
 	/**
 	 * @deprecated Use standard getter and setter to access this field.
 	 *
@@ -516,10 +560,10 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 							// Override with the preferred mime type of the renderer
 							logger.trace("Overriding detected mime type \"{}\" for file \"{}\" with renderer preferred mime type \"{}\"",
 									child.getMedia().getMimeType(), child.getName(), mimeType);
-							child.getMedia().setMimeType(mimeType);
+							child.rendererMimeType = mimeType;
 						}
 
-						logger.trace("File \"{}\" can be streamed with mime type \"{}\"", child.getName(), child.getMedia().getMimeType());
+						logger.trace("File \"{}\" can be streamed with mime type \"{}\"", child.getName(), child.mimeType());
 					} else {
 						// Media is transcodable
 						logger.trace("File \"{}\" can be transcoded", child.getName());
@@ -780,62 +824,72 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 	 * @return List of DLNAResource items.
 	 * @throws IOException
 	 */
-	public synchronized List<DLNAResource> getDLNAResources(String objectId, boolean returnChildren, int start, int count, RendererConfiguration renderer) throws IOException {
+	public List<DLNAResource> getDLNAResources(String objectId, boolean returnChildren, int start, int count, RendererConfiguration renderer) throws IOException {
 		ArrayList<DLNAResource> resources = new ArrayList<DLNAResource>();
 		DLNAResource dlna = search(objectId, count, renderer);
 
 		if (dlna != null) {
 			String systemName = dlna.getSystemName();
-			dlna.setDefaultRenderer(renderer);
+			List<DLNAResource> others = new ArrayList<DLNAResource>();
 
-			if (!returnChildren) {
-				resources.add(dlna);
-				dlna.refreshChildrenIfNeeded();
-			} else {
-				dlna.discoverWithRenderer(renderer, count, true);
-
-				if (count == 0) {
-					count = dlna.getChildren().size();
-				}
+			// Only the browsed folder is locked, so that other folders can be
+			// browsed at the same time
+			synchronized (dlna) {
+				dlna.setDefaultRenderer(renderer);
 
-				if (count > 0) {
-					ArrayBlockingQueue<Runnable> queue = new ArrayBlockingQueue<Runnable>(count);
+				if (!returnChildren) {
+					resources.add(dlna);
+					dlna.refreshChildrenIfNeeded();
+				} else {
+					dlna.discoverWithRenderer(renderer, count, true);
+					List<DLNAResource> children = dlna.getChildren();
 
-					int nParallelThreads = 3;
-					if (dlna instanceof DVDISOFile) {
-						nParallelThreads = 1; // Some DVD drives die wih 3 parallel threads
+					if (count == 0) {
+						count = children.size();
 					}
 
-					ThreadPoolExecutor tpe = new ThreadPoolExecutor(
-						Math.min(count, nParallelThreads),
-						count,
-						20,
-						TimeUnit.SECONDS,
-						queue
-					);
-
-					for (int i = start; i < start + count; i++) {
-						if (i < dlna.getChildren().size()) {
-							final DLNAResource child = dlna.getChildren().get(i);
-
-							if (child != null) {
-								tpe.execute(child);
-								resources.add(child);
-							} else {
-								logger.warn("null child at index {} in {}", i, systemName);
-							}
+					List<DLNAResource> before = new ArrayList<DLNAResource>();
+
+					for (int i = 0; i < children.size(); i++) {
+						DLNAResource child = children.get(i);
+
+						if (child == null) {
+							logger.warn("null child at index {} in {}", i, systemName);
+						} else if (i < start) {
+							before.add(child);
+						} else if (i < start + count) {
+							resources.add(child);
+						} else {
+							others.add(child);
 						}
 					}
 
-					try {
-						tpe.shutdown();
-						tpe.awaitTermination(20, TimeUnit.SECONDS);
-					} catch (InterruptedException e) {
-						logger.error("error while shutting down thread pool executor for " + systemName, e);
-					}
+					others.addAll(before);
+				}
+			}
+
+			if (returnChildren && resources.size() > 0) {
+				// Some DVD drives die with several parallel threads, so the
+				// titles of a DVD are resolved one at a time by all threads
+				Object serial = dlna instanceof DVDISOFile ? dlna : null;
+				ResolutionScheduler scheduler = ResolutionScheduler.getInstance();
+
+				if (!scheduler.resolve(resources, serial, 20, TimeUnit.SECONDS)) {
+					logger.debug("Not all children of {} could be resolved in time", systemName);
+				}
 
-					logger.trace("End of analysis for {}", systemName);
+				// Have the rest of the folder ready for the next request
+				scheduler.resolveInBackground(others, serial);
+
+				// And the thumbnails of this page and the next, which renderers
+				// request as soon as they show a page
+				if (renderer.isMediaParserV2() && configuration.isThumbnailGenerationEnabled()) {
+					List<DLNAResource> thumbnails = new ArrayList<DLNAResource>(resources);
+					thumbnails.addAll(others.subList(0, Math.min(count, others.size())));
+					ThumbnailService.getInstance().generateInBackground(thumbnails);
 				}
+
+				logger.trace("End of analysis for {}", systemName);
 			}
 		}
 
@@ -918,9 +972,14 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 				if (indexPath.length == 1 || indexPath[1].length() == 0) {
 					return this;
 				} else {
-					discoverWithRenderer(renderer, count, false);
+					List<DLNAResource> children;
+
+					synchronized (this) {
+						discoverWithRenderer(renderer, count, false);
+						children = new ArrayList<DLNAResource>(getChildren());
+					}
 
-					for (DLNAResource file : getChildren()) {
+					for (DLNAResource file : children) {
 						DLNAResource found = file.search(indexPath[1], count, renderer);
 						if (found != null) {
 							return found;
@@ -1037,6 +1096,16 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 		}
 	}
 
+	/**
+	 * Returns whether this resource has been resolved, so that browsing does
+	 * not have to wait for {@link #resolve()}.
+	 *
+	 * @return True if this resource has been resolved.
+	 */
+	public boolean isResolved() {
+		return resolved;
+	}
+
 	// Ditlew
 	/**
 	 * Returns the display name for the default renderer.
@@ -1342,6 +1411,7 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 			o.setId(null);
 			// clear the cached display name
 			o.displayName = null;
+			o.didlFragments = NO_DIDL_FRAGMENTS;
 			// make sure clones (typically #--TRANSCODE--# folder files)
 			// have the option to respond to resolve events
 			o.resolved = false;
@@ -1387,7 +1457,72 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 	 */
 	public final String getDidlString(RendererConfiguration mediaRenderer) {
 		StringBuilder sb = new StringBuilder();
+		appendDidlString(sb, mediaRenderer);
+		return sb.toString();
+	}
+
+	/**
+	 * Appends the XML (DIDL) representation of the DLNA node, as returned by
+	 * {@link #getDidlString(RendererConfiguration)}, to a builder. A response
+	 * with many items can reuse one builder for all of them.
+	 *
+	 * @param sb The builder.
+	 * @param mediaRenderer Media Renderer for which to represent this information.
+	 */
+	public final void appendDidlString(StringBuilder sb, RendererConfiguration mediaRenderer) {
+		DidlFragment fragment = getDidlFragment(mediaRenderer);
+
+		if (fragment != null) {
+			// Streaming the resource reads these back for the content features
+			dlnaspec = fragment.dlnaspec;
+			dlnaOrgOpFlags = fragment.dlnaOrgOpFlags;
+			sb.append(fragment.didl);
+			return;
+		}
+
+		int start = sb.length();
+		fragment = new DidlFragment(this, mediaRenderer);
+		renderDidlString(sb, mediaRenderer);
+		fragment.didl = sb.substring(start);
+		fragment.dlnaspec = dlnaspec;
+		fragment.dlnaOrgOpFlags = dlnaOrgOpFlags;
+		putDidlFragment(fragment);
+	}
+
+	/**
+	 * Returns the DIDL fragment rendered for a renderer, unless this resource
+	 * has changed since.
+	 */
+	private DidlFragment getDidlFragment(RendererConfiguration mediaRenderer) {
+		for (DidlFragment fragment : didlFragments) {
+			if (fragment.renderer == mediaRenderer) {
+				return fragment.isValid(this) ? fragment : null;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Keeps a DIDL fragment in place of the one rendered for the same renderer
+	 * before. When several threads render at once, a fragment may be lost,
+	 * which only means that it is rendered again.
+	 */
+	private void putDidlFragment(DidlFragment fragment) {
+		DidlFragment[] old = didlFragments;
+		List<DidlFragment> fragments = new ArrayList<DidlFragment>(old.length + 1);
+		fragments.add(fragment);
+
+		for (DidlFragment o : old) {
+			if (o.renderer != fragment.renderer && fragments.size() < MAX_DIDL_FRAGMENTS) {
+				fragments.add(o);
+			}
+		}
+
+		didlFragments = fragments.toArray(new DidlFragment[fragments.size()]);
+	}
 
+	private void renderDidlString(StringBuilder sb, RendererConfiguration mediaRenderer) {
 		if (isFolder()) {
 			openTag(sb, "container");
 		} else {
@@ -1719,7 +1854,6 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 		} else {
 			closeTag(sb, "item");
 		}
-		return sb.toString();
 	}
 
 	/**
@@ -1997,13 +2131,40 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 				params.stdin = (IPushOutput) this;
 			}
 
+			final TranscodeSessions sessions = TranscodeSessions.getInstance();
+			boolean shareable = !configuration.getTrancodeBlocksMultipleConnections() && params.stdin == null;
+
 			// (re)start transcoding process if necessary
 			if (externalProcess == null || externalProcess.isDestroyed()) {
+				if (shareable) {
+					// Another renderer may be playing this already
+					InputStream joined = sessions.join(this, params, low);
+
+					if (joined != null) {
+						logger.info("Joining the running transcode/remux of " + getName());
+						return joined;
+					}
+				}
+
 				// first playback attempt => start new transcoding process
 				logger.info("Starting transcode/remux of " + getName());
 				logger.debug("Launching transcode with media info: " + getMedia().toString());
 
-				externalProcess = getPlayer().launchTranscode(this, getMedia(), params);
+				TranscodeScheduler scheduler = TranscodeScheduler.getInstance();
+				scheduler.admit(params, null);
+				ProcessWrapper newExternalProcess = null;
+
+				try {
+					newExternalProcess = getPlayer().launchTranscode(this, getMedia(), params);
+				} finally {
+					scheduler.started(params, newExternalProcess);
+				}
+
+				externalProcess = newExternalProcess;
+
+				if (shareable && externalProcess != null) {
+					sessions.register(this, params, externalProcess);
+				}
 
 				if (params.waitbeforestart > 0) {
 					logger.trace("Sleeping for {} milliseconds", params.waitbeforestart);
@@ -2016,22 +2177,33 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 				}
 			} else if (params.timeseek > 0 && getMedia() != null && getMedia().isMediaparsed()
 					&& getMedia().getDurationInSeconds() > 0) {
-				// time seek request => stop running transcode process and start new one
+				// time seek request => start new transcode process and stop running one
 				logger.debug("Requesting time seek: " + params.timeseek + " seconds");
 				params.minBufferSize = 1;
+				final ProcessWrapper oldExternalProcess = externalProcess;
+				TranscodeScheduler scheduler = TranscodeScheduler.getInstance();
+				scheduler.admit(params, oldExternalProcess);
+				ProcessWrapper newExternalProcess = null;
+
+				try {
+					newExternalProcess = getPlayer().launchTranscode(this, getMedia(), params);
+				} finally {
+					scheduler.started(params, newExternalProcess);
+				}
+
+				// The running process is only stopped once the new one is
+				// ready, so that the seek takes as long as the encoder needs
+				// to start and no longer
+				waitForOutput(newExternalProcess);
 				Runnable r = new Runnable() {
 					@Override
 					public void run() {
-						externalProcess.stopProcess();
+						// Unless other renderers still play it
+						sessions.stop(oldExternalProcess);
 					}
 				};
 				new Thread(r, "External Process Stopper").start();
-				ProcessWrapper newExternalProcess = getPlayer().launchTranscode(this, getMedia(), params);
-				try {
-					Thread.sleep(1000);
-				} catch (InterruptedException e) {
-					logger.error(null, e);
-				}
+
 				if (newExternalProcess == null) {
 					logger.trace("External process instance is null... sounds not good");
 				}
@@ -2040,18 +2212,11 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 			if (externalProcess == null) {
 				return null;
 			}
-			InputStream is = null;
-			int timer = 0;
-			while (is == null && timer < 10) {
-				is = externalProcess.getInputStream(low);
-				timer++;
-				if (is == null) {
-					logger.warn("External input stream instance is null... sounds not good, waiting 500ms");
-					try {
-						Thread.sleep(500);
-					} catch (InterruptedException e) {
-					}
-				}
+			waitForOutput(externalProcess);
+			InputStream is = externalProcess.getInputStream(low);
+
+			if (is == null) {
+				logger.warn("External input stream instance is null... sounds not good");
 			}
 
 			// fail fast: don't leave a process running indefinitely if it's
@@ -2072,6 +2237,16 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 		}
 	}
 
+	/**
+	 * Waits for a transcode process to write its first output, for at most
+	 * {@link #OUTPUT_TIMEOUT} milliseconds.
+	 */
+	private static void waitForOutput(ProcessWrapper process) {
+		if (process instanceof ProcessWrapperImpl && !((ProcessWrapperImpl) process).waitForOutput(OUTPUT_TIMEOUT)) {
+			logger.debug("No output from " + process + " after " + OUTPUT_TIMEOUT + " milliseconds");
+		}
+	}
+
 	/**
 	 * Wrap an {@link InputStream} in a {@link SizeLimitInputStream} that sets a
 	 * limit to the maximum number of bytes to be read from the original input
@@ -2104,7 +2279,7 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 			// type to return.
 			return getPlayer().mimeType();
 		} else if (getMedia() != null && getMedia().isMediaparsed()) {
-			return getMedia().getMimeType();
+			return rendererMimeType != null ? rendererMimeType : getMedia().getMimeType();
 		} else if (getFormat() != null) {
 			return getFormat().mimeType();
 		} else {
@@ -2130,7 +2305,7 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 		if (getMedia() != null && !getMedia().isThumbready() && configuration.isThumbnailGenerationEnabled()) {
 			getMedia().setThumbready(true);
 			getMedia().generateThumbnail(inputFile, getFormat(), getType());
-			if (getMedia().getThumb() != null && configuration.getUseCache() && inputFile.getFile() != null) {
+			if (getMedia().hasThumb() && configuration.getUseCache() && inputFile.getFile() != null) {
 				PMS.get().getDatabase().updateThumbnail(inputFile.getFile().getAbsolutePath(), inputFile.getFile().lastModified(), getType(), getMedia());
 			}
 		}
@@ -2691,4 +2866,69 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 	protected void setLastRefreshTime(long lastRefreshTime) {
 		this.lastRefreshTime = lastRefreshTime;
 	}
+
+	/**
+	 * The DIDL of a resource as rendered for a renderer, along with what it
+	 * was rendered from: a fragment is valid as long as the resource has not
+	 * been refreshed, moved, given other media information or had it parsed,
+	 * and the configuration has not changed.
+	 */
+	private static class DidlFragment {
+		private final RendererConfiguration renderer;
+		private final int configurationChange;
+		private final int updateId;
+		private final String resourceId;
+		private final String parentId;
+		private final int childCount;
+		private final long lastModified;
+		private final Player player;
+		private final DLNAMediaInfo media;
+		private final boolean mediaParsed;
+		private final boolean thumbReady;
+		private String didl;
+		private String dlnaspec;
+		private String dlnaOrgOpFlags;
+
+		DidlFragment(DLNAResource resource, RendererConfiguration renderer) {
+			this.renderer = renderer;
+			configurationChange = configurationChanges.get();
+			updateId = resource.getUpdateId();
+			resourceId = resource.getResourceId();
+			parentId = resource.getParentId();
+			childCount = getChildCount(resource);
+			lastModified = resource.getLastModified();
+			player = resource.getPlayer();
+			media = resource.getMedia();
+			mediaParsed = media != null && media.isMediaparsed();
+			thumbReady = media != null && media.isThumbready();
+		}
+
+		boolean isValid(DLNAResource resource) {
+			DLNAMediaInfo current = resource.getMedia();
+
+			return
+				configurationChange == configurationChanges.get() &&
+				updateId == resource.getUpdateId() &&
+				lastModified == resource.getLastModified() &&
+				player == resource.getPlayer() &&
+				media == current &&
+				mediaParsed == (current != null && current.isMediaparsed()) &&
+				thumbReady == (current != null && current.isThumbready()) &&
+				childCount == getChildCount(resource) &&
+				StringUtils.equals(resourceId, resource.getResourceId()) &&
+				StringUtils.equals(parentId, resource.getParentId());
+		}
+
+		/**
+		 * Returns the child count shown for a folder.
+		 */
+		private static int getChildCount(DLNAResource resource) {
+			if (!resource.isFolder()) {
+				return 0;
+			}
+
+			int count = resource.childrenNumber();
+			return !resource.isDiscovered() && count == 0 ? 1 : count;
+		}
+	}
 }
@@ -353,7 +353,7 @@ public class DVDISOTitle extends DLNAResource {
 
 		if (cachedThumbnail != null) {
 			return new FileInputStream(cachedThumbnail);
-		} else if (getMedia() != null && getMedia().getThumb() != null) {
+		} else if (getMedia() != null && getMedia().hasThumb()) {
 			return getMedia().getThumbnailInputStream();
 		} else {
 			return getGenericThumbnailInputStream("images/cdrwblank-256.png");
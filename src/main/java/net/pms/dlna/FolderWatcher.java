@@ -0,0 +1,275 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Platform;
+import net.pms.PMS;
+import net.pms.configuration.PmsConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tracks changes to shared folders as the operating system reports them,
+ * so that browsing a folder does not have to compare it with the file system
+ * to find out whether it changed. Folders are watched when they are
+ * listed, and every change to a watched folder or to a file in it records
+ * the time of the change, drops the shared media information of the file
+ * and increments {@link DLNAResource#getSystemUpdateId()}, so that renderers
+ * know to browse again.
+ * <p>
+ * Change events are read from inotify, which makes this Linux only. On other
+ * platforms, or when the folder cannot be watched, {@link #getLastChange(File)}
+ * returns -1 and the caller has to check the file system itself.
+ */
+public class FolderWatcher implements Runnable {
+	private static final Logger logger = LoggerFactory.getLogger(FolderWatcher.class);
+
+	// See inotify(7)
+	private static final int IN_CLOSE_WRITE = 0x00000008;
+	private static final int IN_MOVED_FROM = 0x00000040;
+	private static final int IN_MOVED_TO = 0x00000080;
+	private static final int IN_CREATE = 0x00000100;
+	private static final int IN_DELETE = 0x00000200;
+	private static final int IN_DELETE_SELF = 0x00000400;
+	private static final int IN_MOVE_SELF = 0x00000800;
+	private static final int IN_Q_OVERFLOW = 0x00004000;
+	private static final int IN_IGNORED = 0x00008000;
+	private static final int IN_ONLYDIR = 0x01000000;
+	private static final int EVENT_HEADER_SIZE = 16;
+
+	// See errno(3)
+	private static final int EINTR = 4;
+
+	private static final int WATCH_MASK = IN_CLOSE_WRITE | IN_MOVED_FROM | IN_MOVED_TO | IN_CREATE | IN_DELETE
+		| IN_DELETE_SELF | IN_MOVE_SELF | IN_ONLYDIR;
+
+	interface CLibrary extends Library {
+		int inotify_init();
+
+		int inotify_add_watch(int fd, String pathname, int mask);
+
+		NativeLong read(int fd, byte[] buf, NativeLong count);
+	}
+
+	private static FolderWatcher instance;
+
+	private final CLibrary libc;
+	private final int fd;
+
+	/**
+	 * Watched folders by watch descriptor.
+	 */
+	private final Map<Integer, String> folders = new HashMap<Integer, String>();
+
+	/**
+	 * Time of the last change by watched folder.
+	 */
+	private final Map<String, Long> lastChanges = new HashMap<String, Long>();
+
+	/**
+	 * Returns the watcher that is shared by all renderers.
+	 *
+	 * @return The watcher instance.
+	 */
+	public static synchronized FolderWatcher getInstance() {
+		if (instance == null) {
+			PmsConfiguration configuration = PMS.getConfiguration();
+			instance = new FolderWatcher(Platform.isLinux() && (configuration == null || configuration.isWatchFolders()));
+		}
+
+		return instance;
+	}
+
+	FolderWatcher(boolean enabled) {
+		CLibrary lib = null;
+		int descriptor = -1;
+
+		if (enabled) {
+			try {
+				lib = (CLibrary) Native.loadLibrary("c", CLibrary.class);
+				descriptor = lib.inotify_init();
+			} catch (UnsatisfiedLinkError e) {
+				logger.debug("Folders cannot be watched: " + e.getMessage());
+			}
+
+			if (descriptor < 0) {
+				logger.debug("Folders cannot be watched, inotify is not available");
+			}
+		}
+
+		libc = lib;
+		fd = descriptor;
+
+		if (fd >= 0) {
+			Thread thread = new Thread(this, "Folder Watcher");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Starts watching a folder, if it is not watched already.
+	 *
+	 * @param folder The folder.
+	 */
+	public void watch(File folder) {
+		if (fd < 0 || folder == null || !folder.isDirectory()) {
+			return;
+		}
+
+		String path = folder.getAbsolutePath();
+
+		synchronized (this) {
+			if (lastChanges.containsKey(path)) {
+				return;
+			}
+
+			int wd = libc.inotify_add_watch(fd, path, WATCH_MASK);
+
+			if (wd < 0) {
+				// Most likely the limit of fs.inotify.max_user_watches has been reached
+				logger.debug("Cannot watch folder " + path + ", changes will be checked when browsing");
+				return;
+			}
+
+			folders.put(wd, path);
+
+			// Folders are watched before they are listed, so the listing
+			// is up to date until the first change
+			lastChanges.put(path, 0L);
+		}
+	}
+
+	/**
+	 * Returns when a folder or the files in it last changed.
+	 *
+	 * @param folder The folder.
+	 * @return The time of the last change, 0 if the folder did not change
+	 * 			since it was watched, or -1 if the folder is not watched.
+	 */
+	public synchronized long getLastChange(File folder) {
+		Long lastChange = lastChanges.get(folder.getAbsolutePath());
+		return lastChange != null ? lastChange : -1;
+	}
+
+	@Override
+	public void run() {
+		byte[] buffer = new byte[64 * 1024];
+
+		while (true) {
+			int length = libc.read(fd, buffer, new NativeLong(buffer.length)).intValue();
+
+			if (length <= 0) {
+				int errno = length < 0 ? Native.getLastError() : 0;
+
+				if (errno == EINTR) {
+					// Interrupted by a signal before any event was read
+					continue;
+				}
+
+				logger.warn("Folders are no longer watched, reading inotify events failed with error " + errno);
+				return;
+			}
+
+			if (handleEvents(ByteBuffer.wrap(buffer, 0, length).order(ByteOrder.nativeOrder()))) {
+				DLNAResource.setSystemUpdateId(DLNAResource.getSystemUpdateId() + 1);
+			}
+		}
+	}
+
+	/**
+	 * Records the changes of a batch of inotify events.
+	 *
+	 * @return Whether anything changed.
+	 */
+	synchronized boolean handleEvents(ByteBuffer events) {
+		long now = System.currentTimeMillis();
+		boolean changed = false;
+
+		while (events.remaining() >= EVENT_HEADER_SIZE) {
+			int wd = events.getInt();
+			int mask = events.getInt();
+			events.getInt(); // cookie
+			int nameLength = events.getInt();
+			String name = readName(events, nameLength);
+
+			if ((mask & IN_Q_OVERFLOW) != 0) {
+				// Events were lost, so every folder has to be checked again
+				for (String path : lastChanges.keySet()) {
+					lastChanges.put(path, now);
+				}
+
+				changed = true;
+				continue;
+			}
+
+			String path = folders.get(wd);
+
+			if (path == null) {
+				continue;
+			}
+
+			if ((mask & IN_IGNORED) != 0) {
+				// The folder is gone or has been unmounted
+				folders.remove(wd);
+				lastChanges.remove(path);
+				changed = true;
+				continue;
+			}
+
+			lastChanges.put(path, now);
+			changed = true;
+
+			if (name != null) {
+				SharedMediaCache.getInstance().invalidate(new File(path, name).getAbsolutePath());
+			}
+
+			logger.trace("Change in watched folder " + path + (name != null ? ": " + name : ""));
+		}
+
+		return changed;
+	}
+
+	private static String readName(ByteBuffer events, int length) {
+		if (length == 0) {
+			return null;
+		}
+
+		byte[] bytes = new byte[length];
+		events.get(bytes);
+
+		// The name is padded with null bytes
+		int end = 0;
+
+		while (end < length && bytes[end] != 0) {
+			end++;
+		}
+
+		return new String(bytes, 0, end);
+	}
+}
@@ -10,7 +10,9 @@ import java.util.StringTokenizer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import net.pms.PMS;
 import net.pms.configuration.FormatConfiguration;
+import net.pms.configuration.PmsConfiguration;
 import net.pms.formats.v2.SubtitleType;
 
 import org.apache.commons.codec.binary.Base64;
@@ -27,36 +29,61 @@ public class LibMediaInfoParser {
 	/** Pattern to parse the year from a string */
 	private static final Pattern yearPattern = Pattern.compile(YEAR_REGEX);
 	
-	private static MediaInfo MI;
+	private static boolean valid;
+	private static MediaInfoPool pool;
 	private static Base64 base64;
 
 	static {
-		MI = new MediaInfo();
-		if (MI.isValid()) {
-			MI.Option("Complete", "1");
-			MI.Option("Language", "raw");
-		}
+		MediaInfo first = MediaInfoPool.createHandle();
+		valid = first.isValid();
+
+		// Every handle can parse one file at a time
+		PmsConfiguration configuration = PMS.getConfiguration();
+		int maxHandles = configuration != null ? configuration.getMediaInfoHandles() : Runtime.getRuntime().availableProcessors();
+		pool = new MediaInfoPool(first, valid ? maxHandles : 1);
 		base64 = new Base64();
 	}
 
 	public static boolean isValid() {
-		return MI.isValid();
+		return valid;
 	}
 
 	public static void close() {
-		try {
-			MI.finalize();
-		} catch (Throwable e) {
-			logger.debug("Caught exception", e);
-		}
+		pool.close();
 	}
 
-	public synchronized static void parse(DLNAMediaInfo media, InputFile inputFile, int type) {
+	public static void parse(DLNAMediaInfo media, InputFile inputFile, int type) {
 		File file = inputFile.getFile();
 
-		if (!media.isMediaparsed() && file != null && MI.isValid() && MI.Open(file.getAbsolutePath()) > 0) {
+		if (media.isMediaparsed() || file == null || !valid) {
+			return;
+		}
+
+		MediaInfo mi;
+
+		try {
+			mi = pool.acquire();
+		} catch (InterruptedException e) {
+			logger.debug("Interrupted while waiting for a MediaInfo handle to parse " + file.getAbsolutePath());
+			Thread.currentThread().interrupt();
+			return;
+		}
+
+		try {
+			// Parse every media object only once, even when it is requested by
+			// several threads at the same time
+			synchronized (media) {
+				parse(mi, media, inputFile, file, type);
+			}
+		} finally {
+			pool.release(mi);
+		}
+	}
+
+	private static void parse(MediaInfo mi, DLNAMediaInfo media, InputFile inputFile, File file, int type) {
+		if (!media.isMediaparsed() && mi.isValid() && mi.Open(file.getAbsolutePath()) > 0) {
 			try {
-				String info = MI.Inform();
+				String info = mi.Inform();
 				MediaInfo.StreamType streamType = MediaInfo.StreamType.General;
 				DLNAMediaAudio currentAudioTrack = new DLNAMediaAudio();
 				boolean audioPrepped = false;
@@ -262,7 +289,7 @@ public class LibMediaInfoParser {
 			} catch (Exception e) {
 				logger.error("Error in MediaInfo parsing:", e);
 			} finally {
-				MI.Close();
+				mi.Close();
 				if (media.getContainer() == null) {
 					media.setContainer(DLNAMediaLang.UND);
 				}
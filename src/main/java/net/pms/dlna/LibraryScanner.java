@@ -0,0 +1,310 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.pms.Messages;
+import net.pms.newgui.IFrame;
+import net.pms.util.RateLimiter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scans a resource tree, so that the media information of all files ends up
+ * in the database. Folders are scanned by several threads at once, which
+ * take their work from a shared deque: a thread puts the subfolders it finds
+ * at the front, and whichever thread is idle takes the next one. Taking from
+ * the front makes the scan go depth first, so that the children of a folder
+ * can be dropped as soon as all of its subfolders are done.
+ * <p>
+ * Every completely scanned folder is recorded in the database, so that a scan
+ * that is stopped, or cut short by a restart, skips these folders the next
+ * time. The records are removed once a scan completes.
+ */
+public class LibraryScanner {
+	private static final Logger logger = LoggerFactory.getLogger(LibraryScanner.class);
+
+	private final int threads;
+	private final RateLimiter limiter;
+	private final DLNAMediaDatabase database;
+	private final IFrame frame;
+
+	private final LinkedBlockingDeque<Folder> queue = new LinkedBlockingDeque<Folder>();
+	private final CountDownLatch finished = new CountDownLatch(1);
+	private final AtomicLong fileCount = new AtomicLong();
+	private volatile boolean running = true;
+	private volatile String current;
+	private Set<String> scanned = Collections.emptySet();
+
+	/**
+	 * Creates a new scanner.
+	 *
+	 * @param threads The number of folders scanned at the same time.
+	 * @param filesPerSecond The maximum number of files scanned per second,
+	 * 			or 0 for no limit.
+	 * @param database The database in which the progress is recorded, or
+	 * 			null if the scan cannot be resumed.
+	 * @param frame The frame that shows the progress.
+	 */
+	public LibraryScanner(int threads, int filesPerSecond, DLNAMediaDatabase database, IFrame frame) {
+		this.threads = Math.max(threads, 1);
+		this.limiter = new RateLimiter(filesPerSecond);
+		this.database = database;
+		this.frame = frame;
+	}
+
+	/**
+	 * Scans the children of a resource and all of their descendants, and
+	 * waits until the scan is complete or has been stopped.
+	 *
+	 * @param root The resource.
+	 * @return True if the scan is complete, false if it has been stopped.
+	 */
+	public boolean scan(DLNAResource root) {
+		if (database != null) {
+			scanned = database.getScannedFolders();
+
+			if (!scanned.isEmpty()) {
+				logger.info("Resuming the library scan, " + scanned.size() + " folders have been scanned already");
+			}
+		}
+
+		long start = System.currentTimeMillis();
+		fork(new Folder(root, null, ""));
+		List<Thread> workers = new ArrayList<Thread>();
+
+		for (int i = 0; i < threads; i++) {
+			Thread worker = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					work();
+				}
+			}, "Library Scanner-" + i);
+			worker.setDaemon(true);
+			worker.start();
+			workers.add(worker);
+		}
+
+		long lastCount = 0;
+
+		try {
+			// Reports the throughput once a second
+			while (!finished.await(1, TimeUnit.SECONDS) && running) {
+				long count = fileCount.get();
+				String name = current;
+
+				if (name != null) {
+					frame.setStatusLine(Messages.getString("DLNAMediaDatabase.4") + " " + name + " " + String.format(Messages.getString("DLNAMediaDatabase.6"), count - lastCount));
+				}
+
+				lastCount = count;
+			}
+
+			for (Thread worker : workers) {
+				worker.join();
+			}
+		} catch (InterruptedException e) {
+			running = false;
+			Thread.currentThread().interrupt();
+		}
+
+		long seconds = Math.max((System.currentTimeMillis() - start) / 1000, 1);
+		boolean complete = finished.getCount() == 0;
+		logger.info("Library scan " + (complete ? "complete" : "stopped") + ", scanned " + fileCount.get() + " files in " + seconds + " seconds (" + (fileCount.get() / seconds) + " files/s)");
+
+		if (complete && database != null) {
+			database.clearScannedFolders();
+		}
+
+		return complete;
+	}
+
+	/**
+	 * Stops the scan. Folders that are being scanned are left unfinished.
+	 */
+	public void stop() {
+		running = false;
+	}
+
+	/**
+	 * Returns the number of files scanned so far.
+	 *
+	 * @return The number of files.
+	 */
+	public long getFileCount() {
+		return fileCount.get();
+	}
+
+	private void work() {
+		while (running && finished.getCount() > 0) {
+			Folder folder;
+
+			try {
+				folder = queue.pollFirst(100, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			if (folder != null) {
+				try {
+					scan(folder);
+				} catch (RuntimeException e) {
+					logger.debug("Error while scanning " + folder.path, e);
+				} finally {
+					release(folder);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Scans the children of a folder and queues the ones that have children
+	 * themselves.
+	 */
+	private void scan(Folder folder) {
+		DLNAResource resource = folder.resource;
+		List<DLNAResource> children;
+
+		synchronized (resource) {
+			children = new ArrayList<DLNAResource>(resource.getChildren());
+		}
+
+		for (DLNAResource child : children) {
+			if (!running) {
+				return;
+			}
+
+			if (!child.allowScan()) {
+				continue;
+			}
+
+			String path = folder.path + "/" + child.getName();
+
+			if (scanned.contains(path)) {
+				continue;
+			}
+
+			if (child instanceof RealFile) {
+				current = child.getName();
+				logger.debug(Messages.getString("DLNAMediaDatabase.4") + " " + child.getName());
+			}
+
+			// The files of a folder are scanned along with it
+			int files = 0;
+			boolean empty;
+
+			// Renderers may browse the folder meanwhile
+			synchronized (child) {
+				child.setDefaultRenderer(resource.getDefaultRenderer());
+
+				if (child.isDiscovered()) {
+					child.refreshChildren();
+				} else {
+					if (child instanceof DVDISOFile || child instanceof DVDISOTitle) { // FIXME ugly hack
+						child.resolve();
+					}
+					child.discoverChildren();
+					child.analyzeChildren(-1);
+					child.setDiscovered(true);
+				}
+
+				for (DLNAResource grandchild : child.getChildren()) {
+					if (!grandchild.isFolder()) {
+						files++;
+					}
+				}
+
+				empty = child.getChildren().isEmpty();
+			}
+
+			fileCount.addAndGet(files);
+
+			if (!limiter.acquire(files)) {
+				running = false;
+				return;
+			}
+
+			if (!empty) {
+				fork(new Folder(child, folder, path));
+			}
+		}
+	}
+
+	private void fork(Folder folder) {
+		if (folder.parent != null) {
+			folder.parent.pending.incrementAndGet();
+		}
+
+		queue.addFirst(folder);
+	}
+
+	/**
+	 * Finishes a part of the scan of a folder. The folder is done once it
+	 * and all of its subfolders have been scanned.
+	 */
+	private void release(Folder folder) {
+		if (folder.pending.decrementAndGet() > 0 || !running) {
+			return;
+		}
+
+		if (folder.parent == null) {
+			finished.countDown();
+			return;
+		}
+
+		// The children are discovered again when the folder is browsed
+		synchronized (folder.resource) {
+			folder.resource.getChildren().clear();
+		}
+
+		if (database != null) {
+			database.setFolderScanned(folder.path);
+		}
+
+		release(folder.parent);
+	}
+
+	private static class Folder {
+		private final DLNAResource resource;
+		private final Folder parent;
+		private final String path;
+
+		/**
+		 * The number of parts of the scan of this folder that are not done
+		 * yet: the folder itself plus every subfolder that has been queued.
+		 */
+		private final AtomicInteger pending = new AtomicInteger(1);
+
+		Folder(DLNAResource resource, Folder parent, String path) {
+			this.resource = resource;
+			this.parent = parent;
+			this.path = path;
+		}
+	}
+}
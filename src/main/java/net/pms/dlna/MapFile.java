@@ -47,6 +47,13 @@ public class MapFile extends DLNAResource {
 	private static final PmsConfiguration configuration = PMS.getConfiguration();
 	private List<File> discoverable;
 
+	/**
+	 * The media information of the files of this folder, read from the
+	 * database in one go before the files are added. Files that were looked
+	 * up but are not in the database map to null.
+	 */
+	private final Map<String, DLNAMediaInfo> storedMedia = new HashMap<String, DLNAMediaInfo>();
+
 	/**
 	 * @deprecated Use standard getter and setter to access this variable.
 	 */
@@ -178,6 +185,7 @@ public class MapFile extends DLNAResource {
 
 	@Override
 	public boolean analyzeChildren(int count) {
+		loadStoredMedia();
 		int currentChildrenCount = getChildren().size();
 		int vfolder = 0;
 		while (((getChildren().size() - currentChildrenCount) < count) || (count == -1)) {
@@ -195,6 +203,68 @@ public class MapFile extends DLNAResource {
 		return discoverable.isEmpty();
 	}
 
+	/**
+	 * Reads the media information of all files that are still to be added
+	 * from the database, so that resolving them does not cost a set of
+	 * queries per file.
+	 */
+	private void loadStoredMedia() {
+		if (!configuration.getUseCache() || discoverable == null) {
+			return;
+		}
+
+		DLNAMediaDatabase database = PMS.get().getDatabase();
+
+		if (database == null) {
+			return;
+		}
+
+		List<File> files = new ArrayList<File>();
+
+		synchronized (storedMedia) {
+			for (File f : discoverable) {
+				if (!storedMedia.containsKey(f.getAbsolutePath()) && FormatFactory.getAssociatedFormat(f.getName()) != null && f.isFile()) {
+					files.add(f);
+				}
+			}
+		}
+
+		if (files.isEmpty()) {
+			return;
+		}
+
+		Map<String, DLNAMediaInfo> medias = database.getData(files);
+
+		if (medias != null) {
+			synchronized (storedMedia) {
+				for (File f : files) {
+					storedMedia.put(f.getAbsolutePath(), medias.get(f.getAbsolutePath()));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Hands out the media information that was read from the database for a
+	 * file of this folder, see {@link #loadStoredMedia()}.
+	 *
+	 * @param file The file.
+	 * @return The media information, an empty list if the file is not in the
+	 * 			database, or null if the file has not been looked up.
+	 */
+	List<DLNAMediaInfo> removeStoredMedia(File file) {
+		synchronized (storedMedia) {
+			String name = file.getAbsolutePath();
+
+			if (!storedMedia.containsKey(name)) {
+				return null;
+			}
+
+			DLNAMediaInfo media = storedMedia.remove(name);
+			return media != null ? Collections.singletonList(media) : Collections.<DLNAMediaInfo>emptyList();
+		}
+	}
+
 	@Override
 	public void discoverChildren() {
 		super.discoverChildren();
@@ -205,6 +275,11 @@ public class MapFile extends DLNAResource {
 			return;
 		}
 
+		// Watch the folders before listing them, so that no change is missed
+		for (File folder : getConf().getFiles()) {
+			FolderWatcher.getInstance().watch(folder);
+		}
+
 		List<File> files = getFileList();
 
 		switch (configuration.getSortMethod()) {
@@ -274,7 +349,9 @@ public class MapFile extends DLNAResource {
 
 		for (File f : this.getConf().getFiles()) {
 			if (f != null) {
-				modified = Math.max(modified, f.lastModified());
+				// Watched folders also report changes to the files in them
+				long lastChange = FolderWatcher.getInstance().getLastChange(f);
+				modified = Math.max(modified, lastChange != -1 ? lastChange : f.lastModified());
 			}
 		}
 
@@ -417,6 +494,26 @@ public class MapFile extends DLNAResource {
 		return "MapFile [name=" + getName() + ", id=" + getResourceId() + ", format=" + getFormat() + ", children=" + getChildren() + "]";
 	}
 
+	/**
+	 * Returns the files and folders that this folder shares, including those
+	 * of the virtual folders in it.
+	 *
+	 * @return The files and folders.
+	 */
+	public List<File> getSharedFiles() {
+		List<File> files = new ArrayList<File>();
+		addSharedFiles(getConf(), files);
+		return files;
+	}
+
+	private static void addSharedFiles(MapFileConfiguration conf, List<File> files) {
+		files.addAll(conf.getFiles());
+
+		for (MapFileConfiguration child : conf.getChildren()) {
+			addSharedFiles(child, files);
+		}
+	}
+
 	/**
 	 * @return the conf
 	 * @since 1.50.0
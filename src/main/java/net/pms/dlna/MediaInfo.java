@@ -38,6 +38,7 @@ import static java.util.Collections.singletonMap;
 public class MediaInfo {
 	private static final Logger logger = LoggerFactory.getLogger(MediaInfo.class);
 	static String libraryName;
+	private static volatile boolean loaded;
 
 	static {
 		if (Platform.isWindows() && Platform.is64Bit()) {
@@ -199,9 +200,16 @@ public class MediaInfo {
 	// Constructor/Destructor
 	public MediaInfo() {
 		try {
+			if (loaded) {
+				// Additional handles for parsing several files at once
+				Handle = MediaInfoDLL_Internal.INSTANCE.New();
+				return;
+			}
+
 			logger.info("Loading MediaInfo library");
 			Handle = MediaInfoDLL_Internal.INSTANCE.New();
 			logger.info("Loaded " + Option_Static("Info_Version"));
+			loaded = true;
 		} catch (Throwable e) {
 			if (e != null) {
 				logger.info("Error loading MediaInfo library: " + e.getMessage());
@@ -0,0 +1,181 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded pool of {@link MediaInfo} handles. A handle can only parse one file
+ * at a time, so the pool lets up to a fixed number of files be parsed in
+ * parallel. Handles are created when they are first needed, and threads that
+ * need a handle while all of them are in use wait for one to be released.
+ * The time spent waiting is recorded, so that it can be seen whether the
+ * pool is too small.
+ */
+class MediaInfoPool {
+	private static final Logger logger = LoggerFactory.getLogger(MediaInfoPool.class);
+
+	private final LinkedList<MediaInfo> idleHandles = new LinkedList<MediaInfo>();
+	private final int maxHandles;
+	private int handles;
+	private long acquireCount;
+	private long waitCount;
+	private long totalWaitNanos;
+	private long maxWaitNanos;
+
+	/**
+	 * Creates a new pool.
+	 *
+	 * @param first A handle to start out with, which determines whether the
+	 * 			MediaInfo library is available at all.
+	 * @param maxHandles The maximum number of handles.
+	 */
+	MediaInfoPool(MediaInfo first, int maxHandles) {
+		this.maxHandles = maxHandles;
+		idleHandles.add(first);
+		handles = 1;
+	}
+
+	/**
+	 * Returns an idle handle, creating a new one if the maximum has not been
+	 * reached yet, or waiting for one to be released otherwise.
+	 *
+	 * @return The handle.
+	 * @throws InterruptedException When interrupted while waiting.
+	 */
+	MediaInfo acquire() throws InterruptedException {
+		long start = System.nanoTime();
+
+		synchronized (this) {
+			acquireCount++;
+
+			if (idleHandles.isEmpty() && handles < maxHandles) {
+				// Reserve the handle, but create it outside of the lock
+				handles++;
+			} else {
+				if (idleHandles.isEmpty()) {
+					waitCount++;
+				}
+
+				while (idleHandles.isEmpty()) {
+					wait();
+				}
+
+				long waited = System.nanoTime() - start;
+				totalWaitNanos += waited;
+				maxWaitNanos = Math.max(maxWaitNanos, waited);
+
+				if (waited > TimeUnit.MILLISECONDS.toNanos(100)) {
+					logger.trace("Waited " + TimeUnit.NANOSECONDS.toMillis(waited) + " ms for a MediaInfo handle");
+				}
+
+				return idleHandles.poll();
+			}
+		}
+
+		try {
+			return createHandle();
+		} catch (RuntimeException e) {
+			synchronized (this) {
+				handles--;
+			}
+
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a handle to the pool.
+	 *
+	 * @param handle The handle obtained by {@link #acquire()}.
+	 */
+	synchronized void release(MediaInfo handle) {
+		idleHandles.add(handle);
+		notify();
+	}
+
+	/**
+	 * Disposes of all idle handles.
+	 */
+	synchronized void close() {
+		logger.debug("Closing MediaInfo handles, " + this);
+
+		for (MediaInfo handle : idleHandles) {
+			if (handle.isValid()) {
+				handle.dispose();
+			}
+		}
+
+		handles -= idleHandles.size();
+		idleHandles.clear();
+	}
+
+	/**
+	 * Returns the total time threads have spent waiting for a handle.
+	 *
+	 * @return The time in milliseconds.
+	 */
+	synchronized long getTotalWaitTime() {
+		return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos);
+	}
+
+	/**
+	 * Returns the longest time a thread has spent waiting for a handle.
+	 *
+	 * @return The time in milliseconds.
+	 */
+	synchronized long getMaxWaitTime() {
+		return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+	}
+
+	/**
+	 * Returns the number of times a thread had to wait for a handle.
+	 *
+	 * @return The number of waits.
+	 */
+	synchronized long getWaitCount() {
+		return waitCount;
+	}
+
+	/**
+	 * Creates and configures a new handle.
+	 *
+	 * @return The handle.
+	 */
+	static MediaInfo createHandle() {
+		MediaInfo handle = new MediaInfo();
+
+		if (handle.isValid()) {
+			handle.Option("Complete", "1");
+			handle.Option("Language", "raw");
+		}
+
+		return handle;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "MediaInfoPool [handles=" + handles + "/" + maxHandles + ", acquired=" + acquireCount + ", waits=" + waitCount
+			+ ", totalWaitTime=" + getTotalWaitTime() + " ms, maxWaitTime=" + getMaxWaitTime() + " ms]";
+	}
+}
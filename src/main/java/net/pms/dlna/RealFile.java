@@ -21,6 +21,7 @@ package net.pms.dlna;
 import com.sun.jna.Platform;
 import net.pms.PMS;
 import net.pms.configuration.PmsConfiguration;
+import net.pms.configuration.RendererConfiguration;
 import net.pms.formats.Format;
 import net.pms.formats.FormatFactory;
 import net.pms.util.FileUtil;
@@ -30,7 +31,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.util.ArrayList;
+import java.util.List;
 
 public class RealFile extends MapFile {
 	private static final Logger logger = LoggerFactory.getLogger(RealFile.class);
@@ -52,8 +53,10 @@ public class RealFile extends MapFile {
 	public boolean isValid() {
 		File file = this.getFile();
 		resolveFormat();
-		if (getType() == Format.VIDEO && file.exists() && configuration.isAutoloadExternalSubtitles() && file.getName().length() > 4) {
-			setSrtFile(FileUtil.isSubtitlesExists(file, null));
+		// The media library lists stored files without listing their folders,
+		// so their subtitles are looked for when they are resolved
+		if (!isStored(file)) {
+			checkSubtitles(file);
 		}
 
 		boolean valid = file.exists() && (getFormat() != null || file.isDirectory());
@@ -62,7 +65,7 @@ public class RealFile extends MapFile {
 			// we need to resolve the DLNA resource now
 			run();
 
-			if (getMedia() != null && getMedia().getThumb() == null && getType() != Format.AUDIO) { // MediaInfo retrieves cover art now
+			if (getMedia() != null && !getMedia().hasThumb() && getType() != Format.AUDIO) { // MediaInfo retrieves cover art now
 				getMedia().setThumbready(false);
 			}
 
@@ -87,12 +90,33 @@ public class RealFile extends MapFile {
 		return valid;
 	}
 
+	private void checkSubtitles(File file) {
+		if (getType() == Format.VIDEO && file.exists() && configuration.isAutoloadExternalSubtitles() && file.getName().length() > 4) {
+			setSrtFile(FileUtil.isSubtitlesExists(file, null));
+		}
+	}
+
+	/**
+	 * Returns whether a file was listed from the database, in which case it
+	 * answers from the database instead of from the file system.
+	 */
+	private static boolean isStored(File file) {
+		return file instanceof DLNAMediaDatabase.StoredFile;
+	}
+
 	@Override
 	public InputStream getInputStream() {
 		try {
 			return new FileInputStream(getFile());
 		} catch (FileNotFoundException e) {
 			logger.debug("File not found: {}", getFile().getAbsolutePath());
+
+			// The media library lists files without checking them first
+			DLNAMediaDatabase database = PMS.get().getDatabase();
+
+			if (database != null) {
+				database.verify(getFile());
+			}
 		}
 
 		return null;
@@ -154,10 +178,19 @@ public class RealFile extends MapFile {
 	}
 
 	@Override
-	public void resolve() {
+	public boolean isResolved() {
+		return (getMedia() != null && getMedia().isMediaparsed()) || isFolder();
+	}
+
+	@Override
+	public synchronized void resolve() {
 		File file = getFile();
 
 		if (file.isFile() && (getMedia() == null || !getMedia().isMediaparsed())) {
+			if (isStored(file)) {
+				checkSubtitles(file);
+			}
+
 			boolean found = false;
 			InputFile input = new InputFile();
 			input.setFile(file);
@@ -165,17 +198,37 @@ public class RealFile extends MapFile {
 			if (getSplitTrack() > 0) {
 				fileName += "#SplitTrack" + getSplitTrack();
 			}
-			
+
+			// The tree of another renderer may have parsed the file already
+			RendererConfiguration renderer = getParent().getDefaultRenderer();
+			String sharedKey = SharedMediaCache.getKey(fileName, renderer != null && renderer.isMediaParserV2());
+			DLNAMediaInfo shared = SharedMediaCache.getInstance().get(sharedKey, file.lastModified());
+
+			if (shared != null) {
+				setMedia(shared);
+				return;
+			}
+
 			if (configuration.getUseCache()) {
 				DLNAMediaDatabase database = PMS.get().getDatabase();
 
 				if (database != null) {
-					ArrayList<DLNAMediaInfo> medias = database.getData(fileName, file.lastModified());
+					// The folder may have read the media of all its files already
+					List<DLNAMediaInfo> medias = null;
+
+					if (getSplitTrack() == 0 && getParent() instanceof MapFile) {
+						medias = ((MapFile) getParent()).removeStoredMedia(file);
+					}
+
+					if (medias == null) {
+						medias = database.getData(fileName, file.lastModified());
+					}
 
 					if (medias != null && medias.size() == 1) {
 						setMedia(medias.get(0));
 						getMedia().finalize(getType(), input);
 						found = true;
+						SharedMediaCache.getInstance().put(sharedKey, file.lastModified(), getMedia());
 					}
 				}
 			}
@@ -188,12 +241,16 @@ public class RealFile extends MapFile {
 				found = !getMedia().isMediaparsed() && !getMedia().isParsing();
 
 				if (getFormat() != null) {
-					getFormat().parse(getMedia(), input, getType(), getParent().getDefaultRenderer());
+					getFormat().parse(getMedia(), input, getType(), renderer);
 				} else {
 					// Don't think that will ever happen
 					getMedia().parse(input, getFormat(), getType(), false);
 				}
 
+				if (getMedia().isMediaparsed()) {
+					SharedMediaCache.getInstance().put(sharedKey, file.lastModified(), getMedia());
+				}
+
 				if (found && configuration.getUseCache()) {
 					DLNAMediaDatabase database = PMS.get().getDatabase();
 
@@ -264,11 +321,11 @@ public class RealFile extends MapFile {
 			}
 		}
 
-		boolean hasAlreadyEmbeddedCoverArt = getType() == Format.AUDIO && getMedia() != null && getMedia().getThumb() != null;
+		boolean hasAlreadyEmbeddedCoverArt = getType() == Format.AUDIO && getMedia() != null && getMedia().hasThumb();
 
 		if (cachedThumbnail != null && (!hasAlreadyEmbeddedCoverArt || file.isDirectory())) {
 			return new FileInputStream(cachedThumbnail);
-		} else if (getMedia() != null && getMedia().getThumb() != null) {
+		} else if (getMedia() != null && getMedia().hasThumb()) {
 			return getMedia().getThumbnailInputStream();
 		} else {
 			return super.getThumbnailInputStream();
@@ -290,7 +347,7 @@ public class RealFile extends MapFile {
 		StringBuilder sb = new StringBuilder();
 		sb.append(PMS.get().getServer().getURL());
 		sb.append("/");
-		if (getMedia() != null && getMedia().getThumb() != null) {
+		if (getMedia() != null && getMedia().hasThumb()) {
 			return super.getThumbnailURL();
 		} else if (getType() == Format.AUDIO) {
 			if (getParent() != null && getParent() instanceof RealFile && ((RealFile) getParent()).getPotentialCover() != null) {
@@ -0,0 +1,275 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.pms.PMS;
+import net.pms.configuration.PmsConfiguration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves the children of browsed folders on a shared, bounded pool of
+ * daemon threads. The children a renderer asked for are resolved first and
+ * waited for, while the rest of the folder is resolved in the background in
+ * batches, so that the next page is likely to be ready when it is requested.
+ * Browse requests from several renderers share the same threads, with the
+ * children that are being waited for always going ahead of background work.
+ *
+ * @see DLNAResource#getDLNAResources(String, boolean, int, int, net.pms.configuration.RendererConfiguration)
+ */
+public class ResolutionScheduler {
+	private static final Logger logger = LoggerFactory.getLogger(ResolutionScheduler.class);
+
+	/**
+	 * Number of children resolved by a single background task.
+	 */
+	private static final int BATCH_SIZE = 20;
+
+	private static final int PRIORITY_REQUESTED = 0;
+	private static final int PRIORITY_BACKGROUND = 1;
+
+	private static ResolutionScheduler instance;
+
+	private final ThreadPoolExecutor executor;
+	private final AtomicLong sequence = new AtomicLong();
+
+	/**
+	 * Resources that are queued for background resolution, to avoid queueing
+	 * them again when their folder is browsed repeatedly.
+	 */
+	private final Set<DLNAResource> queued = Collections.newSetFromMap(new IdentityHashMap<DLNAResource, Boolean>());
+
+	/**
+	 * Returns the scheduler that is shared by all renderers. The number of
+	 * threads follows the number of MediaInfo handles, since parsing media is
+	 * what resolving mostly consists of.
+	 *
+	 * @return The scheduler instance.
+	 */
+	public static synchronized ResolutionScheduler getInstance() {
+		if (instance == null) {
+			PmsConfiguration configuration = PMS.getConfiguration();
+			int threads = configuration != null ? configuration.getMediaInfoHandles() : Runtime.getRuntime().availableProcessors();
+			instance = new ResolutionScheduler(threads);
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Creates a new scheduler.
+	 *
+	 * @param threads The maximum number of resources resolved at the same time.
+	 */
+	ResolutionScheduler(int threads) {
+		executor = new ThreadPoolExecutor(
+			threads,
+			threads,
+			60,
+			TimeUnit.SECONDS,
+			new PriorityBlockingQueue<Runnable>(),
+			new ThreadFactory() {
+				private final AtomicInteger counter = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "resolver-" + counter.getAndIncrement());
+					t.setDaemon(true);
+					return t;
+				}
+			}
+		);
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Resolves resources ahead of any background work and waits for them.
+	 * Resources that have been resolved already are not waited for. When the
+	 * timeout expires, the remaining resources continue to be resolved in the
+	 * background.
+	 *
+	 * @param resources The resources to resolve.
+	 * @param serial The object that the resources are resolved one at a time
+	 * 			by, across all requested and background work, e.g. because
+	 * 			they are read from the same optical drive. Null to resolve
+	 * 			them in parallel.
+	 * @param timeout The maximum time to wait.
+	 * @param unit The unit of the timeout.
+	 * @return True if all resources were resolved in time, false otherwise.
+	 */
+	public boolean resolve(List<DLNAResource> resources, Object serial, long timeout, TimeUnit unit) {
+		List<DLNAResource> unresolved = getUnresolved(resources);
+
+		if (unresolved.isEmpty()) {
+			return true;
+		}
+
+		List<ResolveTask> tasks = new ArrayList<ResolveTask>();
+
+		if (serial != null) {
+			tasks.add(new ResolveTask(unresolved, serial, PRIORITY_REQUESTED));
+		} else {
+			for (DLNAResource resource : unresolved) {
+				tasks.add(new ResolveTask(Collections.singletonList(resource), null, PRIORITY_REQUESTED));
+			}
+		}
+
+		for (ResolveTask task : tasks) {
+			executor.execute(task);
+		}
+
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+		try {
+			for (ResolveTask task : tasks) {
+				task.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException e) {
+			logger.debug("Error while resolving", e.getCause());
+		} catch (TimeoutException e) {
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Queues resources to be resolved when no requested resources are
+	 * waiting, in batches of {@link #BATCH_SIZE}. Resources that have been
+	 * resolved or are queued already are skipped.
+	 *
+	 * @param resources The resources to resolve.
+	 * @param serial The object that the resources are resolved one at a time
+	 * 			by, see {@link #resolve(List, Object, long, TimeUnit)}, or null.
+	 */
+	public void resolveInBackground(List<DLNAResource> resources, Object serial) {
+		List<DLNAResource> batch = new ArrayList<DLNAResource>();
+
+		synchronized (queued) {
+			for (DLNAResource resource : getUnresolved(resources)) {
+				if (queued.add(resource)) {
+					batch.add(resource);
+
+					if (serial == null && batch.size() == BATCH_SIZE) {
+						executor.execute(new ResolveTask(batch, null, PRIORITY_BACKGROUND));
+						batch = new ArrayList<DLNAResource>();
+					}
+				}
+			}
+		}
+
+		if (!batch.isEmpty()) {
+			executor.execute(new ResolveTask(batch, serial, PRIORITY_BACKGROUND));
+		}
+	}
+
+	private static List<DLNAResource> getUnresolved(List<DLNAResource> resources) {
+		List<DLNAResource> unresolved = new ArrayList<DLNAResource>();
+
+		for (DLNAResource resource : resources) {
+			if (!isResolved(resource)) {
+				unresolved.add(resource);
+			}
+		}
+
+		return unresolved;
+	}
+
+	/**
+	 * Returns whether {@link DLNAResource#run()} has nothing left to do for a
+	 * resource.
+	 */
+	private static boolean isResolved(DLNAResource resource) {
+		if (resource.getPrimaryResource() != null) {
+			return true;
+		}
+
+		DLNAResource second = resource.getSecondaryResource();
+		return resource.isResolved() && (second == null || second.isResolved());
+	}
+
+	/**
+	 * Resolves a list of resources one after the other. Tasks are ordered by
+	 * priority first and by the order in which they were queued second.
+	 * Tasks with the same serial object resolve one resource at a time
+	 * between them, so a requested task only waits for the resource that a
+	 * background task is resolving, not for its whole batch.
+	 */
+	private class ResolveTask extends FutureTask<Void> implements Comparable<ResolveTask> {
+		private final int priority;
+		private final long number = sequence.getAndIncrement();
+
+		ResolveTask(final List<DLNAResource> resources, final Object serial, final int priority) {
+			super(new Runnable() {
+				@Override
+				public void run() {
+					for (DLNAResource resource : resources) {
+						try {
+							if (serial != null) {
+								synchronized (serial) {
+									resource.run();
+								}
+							} else {
+								resource.run();
+							}
+						} catch (RuntimeException e) {
+							logger.debug("Error while resolving " + resource.getSystemName(), e);
+						} finally {
+							if (priority == PRIORITY_BACKGROUND) {
+								synchronized (queued) {
+									queued.remove(resource);
+								}
+							}
+						}
+					}
+				}
+			}, null);
+
+			this.priority = priority;
+		}
+
+		@Override
+		public int compareTo(ResolveTask other) {
+			if (priority != other.priority) {
+				return priority < other.priority ? -1 : 1;
+			}
+
+			return number < other.number ? -1 : (number == other.number ? 0 : 1);
+		}
+	}
+}
@@ -56,11 +56,19 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class RootFolder extends DLNAResource {
 	private static final Logger logger = LoggerFactory.getLogger(RootFolder.class);
 	private static final PmsConfiguration configuration = PMS.getConfiguration();
 	private boolean running;
+	private LibraryScanner scanner;
+
+	/**
+	 * Lets any number of browse requests run at the same time, but not while
+	 * the library scan rearranges the tree.
+	 */
+	private final ReentrantReadWriteLock treeLock = new ReentrantReadWriteLock();
 
 	public RootFolder() {
 		setIndexId(0);
@@ -178,15 +186,60 @@ public class RootFolder extends DLNAResource {
 		this.running = running;
 	}
 
+	@Override
+	public List<DLNAResource> getDLNAResources(String objectId, boolean returnChildren, int start, int count, RendererConfiguration renderer) throws IOException {
+		treeLock.readLock().lock();
+
+		try {
+			return super.getDLNAResources(objectId, returnChildren, start, count, renderer);
+		} finally {
+			treeLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Scans the shared folders into the database. The scanner drops the
+	 * children of the folders it is done with, so this is meant for a tree
+	 * that no renderer browses, see {@link DLNAMediaDatabase#run()}. Only the
+	 * shared folders are added to such a tree, since the scanner skips the
+	 * other folders at the root, and the media library and plugin folders
+	 * belong to the trees of the renderers.
+	 */
 	public void scan() {
 		setRunning(true);
+		treeLock.writeLock().lock();
+
+		try {
+			if (!isDiscovered()) {
+				for (DLNAResource r : getConfiguredFolders()) {
+					addChild(r);
+				}
+
+				for (DLNAResource r : getVirtualFolders()) {
+					addChild(r);
+				}
+
+				setDiscovered(true);
+			}
+
+			setDefaultRenderer(RendererConfiguration.getDefaultConf());
 
-		if (!isDiscovered()) {
-			discoverChildren();
+			synchronized (this) {
+				scanner = new LibraryScanner(
+					configuration.getLibraryScanThreads(),
+					configuration.getLibraryScanMaxFilesPerSecond(),
+					PMS.get().getDatabase(),
+					PMS.get().getFrame()
+				);
+			}
+
+			if (isRunning()) {
+				scanner.scan(this);
+			}
+		} finally {
+			treeLock.writeLock().unlock();
 		}
 
-		setDefaultRenderer(RendererConfiguration.getDefaultConf());
-		scan(this);
 		IFrame frame = PMS.get().getFrame();
 		frame.setScanLibraryEnabled(true);
 		PMS.get().getDatabase().cleanup();
@@ -203,44 +256,10 @@ public class RootFolder extends DLNAResource {
 
 	public void stopScan() {
 		setRunning(false);
-	}
-
-	private synchronized void scan(DLNAResource resource) {
-		if (isRunning()) {
-			for (DLNAResource child : resource.getChildren()) {
-				if (isRunning() && child.allowScan()) {
-					child.setDefaultRenderer(resource.getDefaultRenderer());
-					String trace = null;
-
-					if (child instanceof RealFile) {
-						trace = Messages.getString("DLNAMediaDatabase.4") + " " + child.getName();
-					}
-
-					if (trace != null) {
-						logger.debug(trace);
-						PMS.get().getFrame().setStatusLine(trace);
-					}
 
-					if (child.isDiscovered()) {
-						child.refreshChildren();
-					} else {
-						if (child instanceof DVDISOFile || child instanceof DVDISOTitle) { // FIXME ugly hack
-							child.resolve();
-						}
-						child.discoverChildren();
-						child.analyzeChildren(-1);
-						child.setDiscovered(true);
-					}
-
-					int count = child.getChildren().size();
-
-					if (count == 0) {
-						continue;
-					}
-
-					scan(child);
-					child.getChildren().clear();
-				}
+		synchronized (this) {
+			if (scanner != null) {
+				scanner.stop();
 			}
 		}
 	}
@@ -0,0 +1,463 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import net.pms.configuration.RendererConfiguration;
+import net.pms.formats.Format;
+
+/**
+ * The SearchCriteria of a UPnP ContentDirectory Search, turned into a
+ * condition on the FILES table of {@link DLNAMediaDatabase}, so that the
+ * media library answers searches with a query instead of walking the tree.
+ * <p>
+ * These properties are supported:
+ * <ul>
+ * <li><code>dc:title</code>, which is looked up by word in the SEARCH_WORDS
+ * index: <code>contains "abbey road"</code> matches titles with words that
+ * start with "abbey" and "road", <code>= "abbey road"</code> only matches
+ * songs and files, without their extension, with that exact name</li>
+ * <li><code>upnp:class</code>, e.g. <code>derivedfrom "object.item.audioItem"</code></li>
+ * <li><code>upnp:artist</code>, <code>dc:creator</code>, <code>upnp:album</code>
+ * and <code>upnp:genre</code>, which are compared with the audio tracks</li>
+ * </ul>
+ * Comparisons with any other property are false, as they are for objects
+ * that do not have the property.
+ */
+public class SearchCriteria {
+	/**
+	 * The items of the library and their UPnP classes.
+	 */
+	private static final int[] TYPES = {Format.AUDIO, Format.IMAGE, Format.VIDEO};
+	private static final String[] CLASSES = {"object.item.audioItem.musicTrack", "object.item.imageItem.photo", "object.item.videoItem"};
+
+	private static final String TRUE = "1 = 1";
+	private static final String FALSE = "1 = 0";
+
+	private final String criteria;
+	private final String condition;
+	private final List<String> parameters;
+
+	/**
+	 * Parses search criteria.
+	 *
+	 * @param criteria The criteria, e.g. <code>upnp:class derivedfrom
+	 * 			"object.item.audioItem" and dc:title contains "love"</code>,
+	 * 			or "*" for all items.
+	 * @return The parsed criteria.
+	 * @throws IllegalArgumentException If the criteria are invalid.
+	 */
+	public static SearchCriteria parse(String criteria) {
+		return new SearchCriteria(criteria);
+	}
+
+	private SearchCriteria(SearchCriteria criteria, String condition, List<String> values) {
+		this.criteria = criteria.criteria;
+		this.condition = "(" + criteria.condition + ") AND (" + condition + ")";
+		List<String> parameters = new ArrayList<String>(criteria.parameters);
+		parameters.addAll(values);
+		this.parameters = Collections.unmodifiableList(parameters);
+	}
+
+	private SearchCriteria(String criteria) {
+		this.criteria = criteria.trim();
+		List<String> values = new ArrayList<String>();
+
+		if (this.criteria.equals("*")) {
+			condition = TRUE;
+		} else {
+			Parser parser = new Parser(tokenize(this.criteria), values);
+			condition = parser.parseOr();
+
+			if (parser.hasNext()) {
+				throw new IllegalArgumentException("Unexpected " + parser.next() + " in search criteria: " + criteria);
+			}
+		}
+
+		parameters = Collections.unmodifiableList(values);
+	}
+
+	/**
+	 * Returns the criteria limited to the items that a renderer supports,
+	 * which are the only ones it is sent, so that paging through the results
+	 * is not thrown off by items that are left out.
+	 *
+	 * @param renderer The renderer.
+	 * @return The limited criteria.
+	 * @see DLNAResource#isCompatible(RendererConfiguration)
+	 */
+	public SearchCriteria forRenderer(RendererConfiguration renderer) {
+		StringBuilder types = new StringBuilder();
+
+		if (renderer.isAudioSupported()) {
+			types.append(Format.AUDIO);
+		}
+
+		if (renderer.isImageSupported()) {
+			types.append(types.length() > 0 ? ", " : "").append(Format.IMAGE);
+		}
+
+		if (renderer.isVideoSupported()) {
+			types.append(types.length() > 0 ? ", " : "").append(Format.VIDEO);
+		}
+
+		return new SearchCriteria(this, types.length() > 0 ? "F.TYPE IN (" + types + ")" : FALSE, Collections.<String>emptyList());
+	}
+
+	/**
+	 * Returns the criteria limited to the items in folders, or below them.
+	 *
+	 * @param files The folders, and files that are searched themselves.
+	 * @return The limited criteria.
+	 */
+	public SearchCriteria within(List<File> files) {
+		StringBuilder condition = new StringBuilder();
+		List<String> values = new ArrayList<String>();
+
+		for (File file : files) {
+			if (condition.length() > 0) {
+				condition.append(" OR ");
+			}
+
+			if (file.isDirectory()) {
+				condition.append("F.FILENAME LIKE ?");
+				values.add(escapeLike(file.getAbsolutePath() + File.separator) + "%");
+			} else {
+				condition.append("F.FILENAME = ?");
+				values.add(file.getAbsolutePath());
+			}
+		}
+
+		return new SearchCriteria(this, condition.length() > 0 ? condition.toString() : FALSE, values);
+	}
+
+	/**
+	 * Returns the condition on the FILES table, aliased F, that selects the
+	 * matching items.
+	 *
+	 * @return The condition, with a "?" for every parameter.
+	 */
+	public String getCondition() {
+		return "F.TYPE IN (" + Format.AUDIO + ", " + Format.IMAGE + ", " + Format.VIDEO + ") AND (" + condition + ")";
+	}
+
+	/**
+	 * Returns the values of the parameters of {@link #getCondition()}.
+	 *
+	 * @return The values.
+	 */
+	public List<String> getParameters() {
+		return parameters;
+	}
+
+	@Override
+	public String toString() {
+		return criteria;
+	}
+
+	/**
+	 * Splits criteria into parentheses, quoted values, operators and words.
+	 * Quoted values are returned unescaped, with their opening quote.
+	 */
+	private static List<String> tokenize(String criteria) {
+		List<String> tokens = new ArrayList<String>();
+		int i = 0;
+
+		while (i < criteria.length()) {
+			char c = criteria.charAt(i);
+
+			if (Character.isWhitespace(c)) {
+				i++;
+			} else if (c == '(' || c == ')') {
+				tokens.add(String.valueOf(c));
+				i++;
+			} else if (c == '"') {
+				StringBuilder value = new StringBuilder("\"");
+				i++;
+
+				while (i < criteria.length() && criteria.charAt(i) != '"') {
+					if (criteria.charAt(i) == '\\' && i + 1 < criteria.length()) {
+						i++;
+					}
+
+					value.append(criteria.charAt(i));
+					i++;
+				}
+
+				if (i == criteria.length()) {
+					throw new IllegalArgumentException("Unterminated value in search criteria: " + criteria);
+				}
+
+				tokens.add(value.toString());
+				i++;
+			} else {
+				// Not all renderers put spaces around operators
+				boolean operator = isOperator(c);
+				int start = i;
+
+				while (
+					i < criteria.length() &&
+					!Character.isWhitespace(criteria.charAt(i)) &&
+					"()\"".indexOf(criteria.charAt(i)) < 0 &&
+					isOperator(criteria.charAt(i)) == operator
+				) {
+					i++;
+				}
+
+				tokens.add(criteria.substring(start, i));
+			}
+		}
+
+		return tokens;
+	}
+
+	private static boolean isOperator(char c) {
+		return c == '=' || c == '!' || c == '<' || c == '>';
+	}
+
+	/**
+	 * Escapes the wildcards of a LIKE pattern.
+	 */
+	private static String escapeLike(String value) {
+		return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+	}
+
+	/**
+	 * Parses the tokens of the criteria into a condition. "and" takes
+	 * precedence over "or".
+	 */
+	private static class Parser {
+		private final List<String> tokens;
+		private final List<String> values;
+		private int position;
+
+		Parser(List<String> tokens, List<String> values) {
+			this.tokens = tokens;
+			this.values = values;
+		}
+
+		boolean hasNext() {
+			return position < tokens.size();
+		}
+
+		String next() {
+			if (!hasNext()) {
+				throw new IllegalArgumentException("Incomplete search criteria");
+			}
+
+			return tokens.get(position++);
+		}
+
+		private boolean accept(String token) {
+			if (hasNext() && tokens.get(position).equalsIgnoreCase(token)) {
+				position++;
+				return true;
+			}
+
+			return false;
+		}
+
+		String parseOr() {
+			String condition = parseAnd();
+
+			while (accept("or")) {
+				condition = "(" + condition + ") OR (" + parseAnd() + ")";
+			}
+
+			return condition;
+		}
+
+		private String parseAnd() {
+			String condition = parseTerm();
+
+			while (accept("and")) {
+				condition = "(" + condition + ") AND (" + parseTerm() + ")";
+			}
+
+			return condition;
+		}
+
+		private String parseTerm() {
+			if (accept("(")) {
+				String condition = parseOr();
+
+				if (!accept(")")) {
+					throw new IllegalArgumentException("Missing closing parenthesis in search criteria");
+				}
+
+				return condition;
+			}
+
+			String property = next();
+			String operator = next();
+			String value = next();
+
+			if (operator.equalsIgnoreCase("exists")) {
+				if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false")) {
+					throw new IllegalArgumentException("Invalid value for exists: " + value);
+				}
+
+				return exists(property, Boolean.parseBoolean(value.toLowerCase()));
+			}
+
+			if (!value.startsWith("\"")) {
+				throw new IllegalArgumentException("Unquoted value in search criteria: " + value);
+			}
+
+			value = value.substring(1);
+
+			if (property.equals("dc:title")) {
+				return compareTitle(operator, value);
+			} else if (property.equals("upnp:class")) {
+				return compareClass(operator, value);
+			}
+
+			String column = getAudioColumn(property);
+			return column != null ? compareAudio(column, operator, value) : FALSE;
+		}
+
+		private String exists(String property, boolean exists) {
+			String condition;
+
+			if (property.equals("dc:title") || property.equals("upnp:class")) {
+				condition = TRUE;
+			} else if (getAudioColumn(property) != null) {
+				condition = "F.ID IN (SELECT FILEID FROM AUDIOTRACKS WHERE " + getAudioColumn(property) + " <> '')";
+			} else {
+				// Such as @refID, there are no references to other items
+				condition = FALSE;
+			}
+
+			return exists ? condition : "NOT (" + condition + ")";
+		}
+
+		/**
+		 * Titles are looked up by word. Whether a title equals a value is
+		 * then checked against the names of the songs and the file.
+		 */
+		private String compareTitle(String operator, String value) {
+			boolean negate;
+			boolean exact = operator.equals("=") || operator.equals("!=");
+
+			if (operator.equals("contains") || operator.equals("=")) {
+				negate = false;
+			} else if (operator.equals("doesNotContain") || operator.equals("!=")) {
+				negate = true;
+			} else {
+				return FALSE;
+			}
+
+			Set<String> words = DLNAMediaDatabase.getWords(value);
+			StringBuilder condition = new StringBuilder();
+
+			for (String word : words) {
+				if (condition.length() > 0) {
+					condition.append(" AND ");
+				}
+
+				condition.append("F.ID IN (SELECT FILEID FROM SEARCH_WORDS WHERE WORD LIKE ?)");
+				values.add(escapeLike(word) + "%");
+			}
+
+			if (exact) {
+				if (condition.length() > 0) {
+					condition.append(" AND ");
+				}
+
+				// The title of a file is its name without the extension
+				condition.append("(F.ID IN (SELECT FILEID FROM AUDIOTRACKS WHERE SONGNAME = ?) OR F.FILENAME REGEXP ?)");
+				values.add(value);
+				values.add("[/\\\\]" + Pattern.quote(value) + "\\.[^./\\\\]*$");
+			} else if (condition.length() == 0) {
+				return negate ? FALSE : TRUE;
+			}
+
+			return negate ? "NOT (" + condition + ")" : condition.toString();
+		}
+
+		private String compareClass(String operator, String value) {
+			StringBuilder types = new StringBuilder();
+
+			for (int i = 0; i < TYPES.length; i++) {
+				if (matchClass(CLASSES[i], operator, value)) {
+					types.append(types.length() > 0 ? ", " : "").append(TYPES[i]);
+				}
+			}
+
+			return types.length() > 0 ? "F.TYPE IN (" + types + ")" : FALSE;
+		}
+
+		private static boolean matchClass(String upnpClass, String operator, String value) {
+			upnpClass = upnpClass.toLowerCase();
+			String lower = value.toLowerCase();
+
+			if (operator.equals("derivedfrom")) {
+				return upnpClass.equals(lower) || upnpClass.startsWith(lower + ".");
+			} else if (operator.equals("=")) {
+				return upnpClass.equals(lower);
+			} else if (operator.equals("!=")) {
+				return !upnpClass.equals(lower);
+			} else if (operator.equals("contains")) {
+				return upnpClass.contains(lower);
+			} else if (operator.equals("doesNotContain")) {
+				return !upnpClass.contains(lower);
+			}
+
+			return false;
+		}
+
+		private String compareAudio(String column, String operator, String value) {
+			String tracks = "F.ID IN (SELECT FILEID FROM AUDIOTRACKS WHERE ";
+
+			if (operator.equals("=")) {
+				values.add(value);
+				return tracks + column + " = ?)";
+			} else if (operator.equals("!=")) {
+				values.add(value);
+				return "NOT " + tracks + column + " = ?)";
+			} else if (operator.equals("contains")) {
+				values.add("%" + escapeLike(value.toLowerCase()) + "%");
+				return tracks + "LOWER(" + column + ") LIKE ?)";
+			} else if (operator.equals("doesNotContain")) {
+				values.add("%" + escapeLike(value.toLowerCase()) + "%");
+				return "NOT " + tracks + "LOWER(" + column + ") LIKE ?)";
+			}
+
+			return FALSE;
+		}
+
+		private static String getAudioColumn(String property) {
+			if (property.equals("upnp:artist") || property.equals("dc:creator")) {
+				return "ARTIST";
+			} else if (property.equals("upnp:album")) {
+				return "ALBUM";
+			} else if (property.equals("upnp:genre")) {
+				return "GENRE";
+			}
+
+			return null;
+		}
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Lets the resource trees of all renderers reuse the parsed media information
+ * of a file, so that a file is parsed only once no matter how many renderers
+ * browse it. Every tree gets a copy of its own, since a tree changes the
+ * media information of its resources, e.g. when it generates a thumbnail.
+ * <p>
+ * Entries are only referenced weakly: the media information stays available
+ * for as long as the tree that parsed the file holds on to it. An entry is
+ * ignored when the file has been modified since it was parsed.
+ */
+public class SharedMediaCache {
+	private static final SharedMediaCache instance = new SharedMediaCache();
+
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	private final ReferenceQueue<DLNAMediaInfo> queue = new ReferenceQueue<DLNAMediaInfo>();
+
+	/**
+	 * Returns the cache that is shared by all renderers.
+	 *
+	 * @return The cache instance.
+	 */
+	public static SharedMediaCache getInstance() {
+		return instance;
+	}
+
+	SharedMediaCache() {
+	}
+
+	/**
+	 * Returns a copy of the parsed media information for a file.
+	 *
+	 * @param key The key of the file, see {@link #getKey(String, boolean)}.
+	 * @param modified The last modification time of the file.
+	 * @return The media information, or null if the file has not been parsed
+	 * 			or has been modified since.
+	 */
+	public synchronized DLNAMediaInfo get(String key, long modified) {
+		purge();
+		Entry entry = entries.get(key);
+
+		if (entry == null || entry.modified != modified) {
+			return null;
+		}
+
+		DLNAMediaInfo media = entry.get();
+
+		if (media == null) {
+			return null;
+		}
+
+		try {
+			return (DLNAMediaInfo) media.clone();
+		} catch (CloneNotSupportedException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the parsed media information for a file.
+	 *
+	 * @param key The key of the file, see {@link #getKey(String, boolean)}.
+	 * @param modified The last modification time of the file.
+	 * @param media The parsed media information.
+	 */
+	public synchronized void put(String key, long modified, DLNAMediaInfo media) {
+		purge();
+		entries.put(key, new Entry(key, modified, media, queue));
+	}
+
+	/**
+	 * Forgets the media information for a file that has changed, no matter
+	 * which parser it was parsed with or which of its tracks it describes.
+	 *
+	 * @param name The name of the file.
+	 */
+	public synchronized void invalidate(String name) {
+		purge();
+		Iterator<String> keys = entries.keySet().iterator();
+
+		while (keys.hasNext()) {
+			String key = keys.next();
+
+			if (key.equals(name) || key.startsWith(name + "#")) {
+				keys.remove();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of files for which media information is available.
+	 *
+	 * @return The number of entries.
+	 */
+	public synchronized int size() {
+		purge();
+		return entries.size();
+	}
+
+	/**
+	 * Returns the key under which the media information for a file is
+	 * stored. Files parsed by MediaInfo and by FFmpeg are kept apart, since
+	 * the two parsers do not yield the same details.
+	 *
+	 * @param name The name of the file, including the split track if any.
+	 * @param mediaParserV2 Whether the file is parsed with MediaInfo.
+	 * @return The key.
+	 */
+	public static String getKey(String name, boolean mediaParserV2) {
+		return mediaParserV2 ? name : name + "#FFmpeg";
+	}
+
+	/**
+	 * Removes the entries of media information that is not used anymore.
+	 */
+	private void purge() {
+		Reference<? extends DLNAMediaInfo> reference;
+
+		while ((reference = queue.poll()) != null) {
+			Entry entry = (Entry) reference;
+
+			// The file may have been parsed again since
+			if (entries.get(entry.key) == entry) {
+				entries.remove(entry.key);
+			}
+		}
+	}
+
+	private static class Entry extends WeakReference<DLNAMediaInfo> {
+		private final String key;
+		private final long modified;
+
+		Entry(String key, long modified, DLNAMediaInfo media, ReferenceQueue<DLNAMediaInfo> queue) {
+			super(media, queue);
+			this.key = key;
+			this.modified = modified;
+		}
+	}
+}
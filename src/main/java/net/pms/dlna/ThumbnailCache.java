@@ -0,0 +1,212 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Thumbnails kept in files in a directory, so that they survive a restart
+ * and do not have to be generated again for files outside of the media
+ * library. Once the files take up more than the maximum size, the least
+ * recently used ones are deleted. Reading a thumbnail touches its file, so
+ * that the order of use is kept across restarts too.
+ */
+class ThumbnailCache {
+	private static final Logger logger = LoggerFactory.getLogger(ThumbnailCache.class);
+	private static final String EXTENSION = ".thumb";
+
+	private final File directory;
+	private final long maxSize;
+
+	/**
+	 * The sizes of the files, least recently used first.
+	 */
+	private final Map<String, Long> files = new LinkedHashMap<String, Long>(16, 0.75f, true);
+	private long size;
+
+	/**
+	 * Creates a cache in a directory, which keeps the thumbnails that are in
+	 * it already.
+	 *
+	 * @param directory The directory, which is created if needed.
+	 * @param maxSize The maximum size of all thumbnails together in bytes.
+	 */
+	ThumbnailCache(File directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			logger.warn("Cannot create the thumbnail cache directory {}", directory.getAbsolutePath());
+		}
+
+		File[] existing = directory.listFiles();
+
+		if (existing != null) {
+			Arrays.sort(existing, new Comparator<File>() {
+				@Override
+				public int compare(File a, File b) {
+					long difference = a.lastModified() - b.lastModified();
+					return difference < 0 ? -1 : (difference == 0 ? 0 : 1);
+				}
+			});
+
+			for (File file : existing) {
+				if (file.isFile() && file.getName().endsWith(EXTENSION)) {
+					files.put(file.getName(), file.length());
+					size += file.length();
+				}
+			}
+		}
+
+		evict();
+	}
+
+	/**
+	 * Returns a thumbnail.
+	 *
+	 * @param key The key, which identifies the file and its version.
+	 * @return The thumbnail, or null if it is not in the cache.
+	 */
+	byte[] get(String key) {
+		String name = getName(key);
+
+		synchronized (this) {
+			// Looking the file up makes it the most recently used
+			if (files.get(name) == null) {
+				return null;
+			}
+		}
+
+		File file = new File(directory, name);
+
+		try {
+			byte[] data = FileUtils.readFileToByteArray(file);
+
+			if (!file.setLastModified(System.currentTimeMillis())) {
+				logger.trace("Cannot touch {}", file.getAbsolutePath());
+			}
+
+			return data;
+		} catch (IOException e) {
+			logger.debug("Cannot read cached thumbnail {}: {}", file.getAbsolutePath(), e.getMessage());
+			remove(name);
+			return null;
+		}
+	}
+
+	/**
+	 * Stores a thumbnail, and deletes the least recently used ones if the
+	 * cache has become too large.
+	 *
+	 * @param key The key, which identifies the file and its version.
+	 * @param data The thumbnail.
+	 */
+	void put(String key, byte[] data) {
+		if (data.length > maxSize) {
+			return;
+		}
+
+		String name = getName(key);
+		File file = new File(directory, name);
+		File temp = new File(directory, name + ".tmp");
+
+		try {
+			// A thumbnail that is read while it is written would be incomplete
+			FileUtils.writeByteArrayToFile(temp, data);
+
+			if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+				throw new IOException("Cannot rename " + temp.getAbsolutePath());
+			}
+		} catch (IOException e) {
+			logger.debug("Cannot cache thumbnail {}: {}", file.getAbsolutePath(), e.getMessage());
+
+			if (!temp.delete()) {
+				logger.trace("Cannot delete {}", temp.getAbsolutePath());
+			}
+
+			return;
+		}
+
+		synchronized (this) {
+			Long old = files.put(name, (long) data.length);
+			size += data.length - (old != null ? old : 0);
+		}
+
+		evict();
+	}
+
+	/**
+	 * Returns the total size of the thumbnails.
+	 *
+	 * @return The size in bytes.
+	 */
+	synchronized long getSize() {
+		return size;
+	}
+
+	private synchronized void remove(String name) {
+		Long old = files.remove(name);
+
+		if (old != null) {
+			size -= old;
+		}
+	}
+
+	private void evict() {
+		List<File> evicted = new ArrayList<File>();
+
+		synchronized (this) {
+			Iterator<Map.Entry<String, Long>> eldest = files.entrySet().iterator();
+
+			while (size > maxSize && eldest.hasNext()) {
+				Map.Entry<String, Long> entry = eldest.next();
+				eldest.remove();
+				size -= entry.getValue();
+				evicted.add(new File(directory, entry.getKey()));
+			}
+		}
+
+		for (File file : evicted) {
+			if (!file.delete()) {
+				logger.debug("Cannot delete cached thumbnail {}", file.getAbsolutePath());
+			}
+		}
+	}
+
+	/**
+	 * Returns the name of the file of a thumbnail. Keys are hashed, since
+	 * they contain paths.
+	 */
+	private static String getName(String key) {
+		return DigestUtils.md5Hex(key) + EXTENSION;
+	}
+}
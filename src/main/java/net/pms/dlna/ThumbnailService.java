@@ -0,0 +1,316 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import java.io.File;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.pms.PMS;
+import net.pms.configuration.PmsConfiguration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates thumbnails on a shared, bounded pool of daemon threads, so that
+ * renderers that request many thumbnails at once do not start an FFmpeg or
+ * MPlayer process for each of them. Requests for the thumbnail of the same
+ * media information are coalesced: a thumbnail is generated once, however
+ * many renderers are waiting for it. Thumbnails that renderers wait for go
+ * ahead of the ones generated in the background for the pages they browse.
+ * <p>
+ * Thumbnails of files are also kept in a {@link ThumbnailCache} on disk.
+ *
+ * @see DLNAResource#checkThumbnail()
+ */
+public class ThumbnailService {
+	private static final Logger logger = LoggerFactory.getLogger(ThumbnailService.class);
+
+	private static final int PRIORITY_REQUESTED = 0;
+	private static final int PRIORITY_BACKGROUND = 1;
+
+	private static ThumbnailService instance;
+
+	private final ThreadPoolExecutor executor;
+	private final ThumbnailCache cache;
+	private final AtomicLong sequence = new AtomicLong();
+
+	/**
+	 * The tasks that have not finished yet, by the media information they
+	 * generate the thumbnail of, or by resource if it has none yet.
+	 */
+	private final Map<Object, ThumbnailTask> pending = new IdentityHashMap<Object, ThumbnailTask>();
+
+	/**
+	 * Returns the service that is shared by all renderers.
+	 *
+	 * @return The service instance.
+	 */
+	public static synchronized ThumbnailService getInstance() {
+		if (instance == null) {
+			PmsConfiguration configuration = PMS.getConfiguration();
+			ThumbnailCache cache = null;
+			int threads = 2;
+
+			if (configuration != null) {
+				threads = configuration.getThumbnailThreads();
+				long maxSize = configuration.getThumbnailCacheSize() * 1024L * 1024L;
+
+				if (maxSize > 0) {
+					cache = new ThumbnailCache(new File(configuration.getProfileDirectory(), "thumbnails"), maxSize);
+				}
+			}
+
+			instance = new ThumbnailService(threads, cache);
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Creates a new service.
+	 *
+	 * @param threads The maximum number of thumbnails generated at the same
+	 * 			time.
+	 * @param cache The cache in which thumbnails of files are kept, or null.
+	 */
+	ThumbnailService(int threads, ThumbnailCache cache) {
+		this.cache = cache;
+		executor = new ThreadPoolExecutor(
+			threads,
+			threads,
+			60,
+			TimeUnit.SECONDS,
+			new PriorityBlockingQueue<Runnable>(),
+			new ThreadFactory() {
+				private final AtomicInteger counter = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "thumbnailer-" + counter.getAndIncrement());
+					t.setDaemon(true);
+					t.setPriority(Thread.MIN_PRIORITY);
+					return t;
+				}
+			}
+		);
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Generates the thumbnail of a resource ahead of any background work and
+	 * waits for it. When the timeout expires, the thumbnail continues to be
+	 * generated in the background.
+	 *
+	 * @param resource The resource.
+	 * @param timeout The maximum time to wait.
+	 * @param unit The unit of the timeout.
+	 * @return True if the resource needs no thumbnail to be generated or it
+	 * 			was generated in time, false otherwise.
+	 */
+	public boolean generate(DLNAResource resource, long timeout, TimeUnit unit) {
+		if (!needsThumbnail(resource)) {
+			return true;
+		}
+
+		ThumbnailTask task;
+
+		synchronized (pending) {
+			Object key = getKey(resource);
+			task = pending.get(key);
+
+			// A queued background task is overtaken rather than waited for
+			if (task == null || (task.priority == PRIORITY_BACKGROUND && !task.started)) {
+				task = new ThumbnailTask(resource, key, PRIORITY_REQUESTED);
+				pending.put(key, task);
+				executor.execute(task);
+			}
+		}
+
+		try {
+			task.get(timeout, unit);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException e) {
+			logger.debug("Error while generating thumbnail", e.getCause());
+		} catch (TimeoutException e) {
+			logger.debug("The thumbnail of {} was not generated in time", resource.getSystemName());
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Queues the thumbnails of resources to be generated when no renderer is
+	 * waiting for one, e.g. for the page of a folder that a renderer is
+	 * likely to browse next. Resources that have not been resolved yet are
+	 * resolved first.
+	 *
+	 * @param resources The resources.
+	 */
+	public void generateInBackground(List<DLNAResource> resources) {
+		synchronized (pending) {
+			for (DLNAResource resource : resources) {
+				if (resource.isFolder() || (resource.isResolved() && !needsThumbnail(resource))) {
+					continue;
+				}
+
+				Object key = getKey(resource);
+
+				if (!pending.containsKey(key)) {
+					ThumbnailTask task = new ThumbnailTask(resource, key, PRIORITY_BACKGROUND);
+					pending.put(key, task);
+					executor.execute(task);
+				}
+			}
+		}
+	}
+
+	private static boolean needsThumbnail(DLNAResource resource) {
+		DLNAMediaInfo media = resource.getMedia();
+		return media != null && !media.isThumbready();
+	}
+
+	private static Object getKey(DLNAResource resource) {
+		return resource.getMedia() != null ? resource.getMedia() : resource;
+	}
+
+	/**
+	 * Generates a thumbnail, unless another task has done so already. Tasks
+	 * for the same media information run one after the other, so that only
+	 * the first generates it.
+	 */
+	private void generate(DLNAResource resource) {
+		if (!resource.isResolved()) {
+			resource.resolve();
+		}
+
+		DLNAMediaInfo media = resource.getMedia();
+
+		if (media == null) {
+			return;
+		}
+
+		synchronized (media) {
+			if (media.isThumbready()) {
+				return;
+			}
+
+			String cacheKey = getCacheKey(resource);
+
+			if (cacheKey != null) {
+				byte[] thumb = cache.get(cacheKey);
+
+				if (thumb != null) {
+					media.setThumb(thumb);
+					media.setThumbready(true);
+					return;
+				}
+			}
+
+			resource.checkThumbnail();
+
+			if (cacheKey != null && media.isThumbready() && media.hasThumb()) {
+				byte[] thumb = media.getThumb();
+
+				if (thumb != null) {
+					cache.put(cacheKey, thumb);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the key of the thumbnail of a file in the cache, which changes
+	 * when the file is modified.
+	 */
+	private String getCacheKey(DLNAResource resource) {
+		if (cache == null || !(resource instanceof RealFile)) {
+			return null;
+		}
+
+		File file = ((RealFile) resource).getFile();
+		return file.getAbsolutePath() + '\u0000' + file.lastModified() + '\u0000' + resource.getType();
+	}
+
+	/**
+	 * Generates the thumbnail of a resource. Tasks are ordered by priority
+	 * first and by the order in which they were queued second.
+	 */
+	private class ThumbnailTask extends FutureTask<Void> implements Comparable<ThumbnailTask> {
+		private final Object key;
+		private final int priority;
+		private final long number = sequence.getAndIncrement();
+		private volatile boolean started;
+
+		ThumbnailTask(final DLNAResource resource, final Object key, final int priority) {
+			super(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						generate(resource);
+					} catch (RuntimeException e) {
+						logger.debug("Error while generating the thumbnail of " + resource.getSystemName(), e);
+					}
+				}
+			}, null);
+
+			this.key = key;
+			this.priority = priority;
+		}
+
+		@Override
+		public void run() {
+			started = true;
+			super.run();
+		}
+
+		@Override
+		protected void done() {
+			synchronized (pending) {
+				// Unless a requested task has overtaken this one
+				if (pending.get(key) == this) {
+					pending.remove(key);
+				}
+			}
+		}
+
+		@Override
+		public int compareTo(ThumbnailTask other) {
+			if (priority != other.priority) {
+				return priority < other.priority ? -1 : 1;
+			}
+
+			return number < other.number ? -1 : (number == other.number ? 0 : 1);
+		}
+	}
+}
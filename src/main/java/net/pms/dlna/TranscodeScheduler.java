@@ -0,0 +1,274 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.pms.PMS;
+import net.pms.configuration.PmsConfiguration;
+import net.pms.io.OutputParams;
+import net.pms.io.ProcessWrapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admits the transcodes that renderers start, so that the server is not
+ * overloaded by them. The CPU cores are divided across the transcodes that
+ * are running: each new transcode gets the cores that the running
+ * transcodes do not use as its number of encoder threads, and at least the
+ * cores divided by the number of transcodes, itself included. Encoders
+ * cannot change their number of threads once started, so the cores of
+ * transcodes that end go to the transcodes that start next, including the
+ * ones that restart a running transcode, e.g. when a renderer seeks.
+ * <p>
+ * When the maximum number of transcodes is running, a new transcode waits
+ * for one of them to end. If none ends in time, it is started anyway, with a
+ * lower maximum bitrate than configured, rather than not playing at all.
+ *
+ * @see OutputParams#threads
+ * @see OutputParams#degraded
+ */
+public class TranscodeScheduler {
+	private static final Logger logger = LoggerFactory.getLogger(TranscodeScheduler.class);
+
+	private static TranscodeScheduler instance;
+
+	private final int cores;
+	private final int maxTranscodes;
+	private final long queueTimeout;
+
+	/**
+	 * The processes of the transcodes that have been started and have not
+	 * ended yet, with their number of encoder threads.
+	 */
+	private final Map<ProcessWrapper, Integer> running = new LinkedHashMap<ProcessWrapper, Integer>();
+
+	/**
+	 * The number of transcodes that have been admitted and are starting.
+	 */
+	private int starting;
+
+	/**
+	 * The number of encoder threads of the transcodes that are starting.
+	 */
+	private int startingThreads;
+
+	/**
+	 * The number of transcodes that wait to be admitted.
+	 */
+	private int waiting;
+
+	/**
+	 * Returns the scheduler that is shared by all renderers.
+	 *
+	 * @return The scheduler instance.
+	 */
+	public static synchronized TranscodeScheduler getInstance() {
+		if (instance == null) {
+			PmsConfiguration configuration = PMS.getConfiguration();
+
+			if (configuration != null) {
+				instance = new TranscodeScheduler(
+					configuration.getNumberOfCpuCores(),
+					configuration.getMaximumTranscodes(),
+					TimeUnit.SECONDS.toMillis(configuration.getTranscodeQueueTimeout())
+				);
+			} else {
+				int cores = Runtime.getRuntime().availableProcessors();
+				instance = new TranscodeScheduler(cores, cores, TimeUnit.SECONDS.toMillis(10));
+			}
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Creates a new scheduler.
+	 *
+	 * @param cores The number of CPU cores that are divided across the
+	 * 			transcodes.
+	 * @param maxTranscodes The maximum number of transcodes that run at the
+	 * 			same time, or 0 for no limit.
+	 * @param queueTimeout The number of milliseconds that a transcode waits
+	 * 			for another one to end when the maximum is running.
+	 */
+	TranscodeScheduler(int cores, int maxTranscodes, long queueTimeout) {
+		this.cores = Math.max(cores, 1);
+		this.maxTranscodes = Math.max(maxTranscodes, 0);
+		this.queueTimeout = Math.max(queueTimeout, 0);
+	}
+
+	/**
+	 * Admits a transcode, waiting for another one to end if the maximum
+	 * number of transcodes is running. Sets the number of encoder threads of
+	 * the transcode, and whether it is degraded. Every call must be followed
+	 * by a call to {@link #started(OutputParams, ProcessWrapper)}, also when
+	 * the transcode could not be started.
+	 *
+	 * @param params The parameters of the transcode.
+	 * @param replaced The process of a transcode that is stopped to start this
+	 * 			one, e.g. when a renderer seeks, or null.
+	 */
+	public synchronized void admit(OutputParams params, ProcessWrapper replaced) {
+		long deadline = System.currentTimeMillis() + queueTimeout;
+		boolean interrupted = false;
+
+		if (isSaturated(replaced)) {
+			waiting++;
+			logger.debug("Waiting for one of " + getActiveCount() + " transcodes to end, " + waiting + " transcodes are waiting");
+
+			try {
+				long remaining;
+
+				while (isSaturated(replaced) && (remaining = deadline - System.currentTimeMillis()) > 0) {
+					wait(remaining);
+				}
+			} catch (InterruptedException e) {
+				interrupted = true;
+			} finally {
+				waiting--;
+			}
+		}
+
+		params.degraded = isSaturated(replaced);
+		int share = cores / (count(replaced) + 1);
+		params.threads = Math.max(Math.max(cores - getUsedThreads(replaced), share), 1);
+
+		if (params.degraded) {
+			logger.info("Starting a degraded transcode, since " + getActiveCount() + " transcodes are running already");
+		}
+
+		starting++;
+		startingThreads += params.threads;
+		logger.debug("Admitted a transcode with " + params.threads + " encoder threads");
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Records that an admitted transcode has been started, so that it counts
+	 * as running until its process ends.
+	 *
+	 * @param params The parameters the transcode has been admitted with.
+	 * @param process The process, or null if the transcode could not be
+	 * 			started.
+	 */
+	public synchronized void started(OutputParams params, final ProcessWrapper process) {
+		starting--;
+		startingThreads -= params.threads;
+
+		if (!(process instanceof Thread)) {
+			// Only processes that run in their own thread can be waited for
+			notifyAll();
+			return;
+		}
+
+		running.put(process, params.threads);
+		Thread watcher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					((Thread) process).join();
+				} catch (InterruptedException e) {
+					return;
+				}
+
+				ended(process);
+			}
+		}, "Transcode Watcher");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	/**
+	 * Returns the number of transcodes that are running or starting.
+	 *
+	 * @return The number of transcodes.
+	 */
+	public synchronized int getActiveCount() {
+		return count(null);
+	}
+
+	/**
+	 * Returns the number of transcodes that wait for another one to end.
+	 *
+	 * @return The number of transcodes.
+	 */
+	public synchronized int getQueueDepth() {
+		return waiting;
+	}
+
+	private synchronized void ended(ProcessWrapper process) {
+		running.remove(process);
+		notifyAll();
+	}
+
+	private boolean isSaturated(ProcessWrapper replaced) {
+		return maxTranscodes > 0 && count(replaced) >= maxTranscodes;
+	}
+
+	/**
+	 * Counts the transcodes that are running or starting, not counting one
+	 * that is replaced.
+	 */
+	private int count(ProcessWrapper replaced) {
+		removeDestroyed();
+		int count = starting + running.size();
+
+		if (replaced != null && running.containsKey(replaced)) {
+			count--;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Adds up the encoder threads of the transcodes that are running or
+	 * starting, not counting one that is replaced.
+	 */
+	private int getUsedThreads(ProcessWrapper replaced) {
+		removeDestroyed();
+		int threads = startingThreads;
+
+		for (Map.Entry<ProcessWrapper, Integer> entry : running.entrySet()) {
+			if (entry.getKey() != replaced) {
+				threads += entry.getValue();
+			}
+		}
+
+		return threads;
+	}
+
+	private void removeDestroyed() {
+		Iterator<ProcessWrapper> iterator = running.keySet().iterator();
+
+		while (iterator.hasNext()) {
+			// Stopped processes end shortly, even if their threads still run
+			if (iterator.next().isDestroyed()) {
+				iterator.remove();
+			}
+		}
+	}
+}
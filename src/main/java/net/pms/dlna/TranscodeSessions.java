@@ -0,0 +1,249 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import net.pms.configuration.RendererConfiguration;
+import net.pms.io.OutputParams;
+import net.pms.io.ProcessWrapper;
+import net.pms.io.ProcessWrapperImpl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The transcodes that are running, so that a renderer that plays a resource
+ * that is being transcoded for another renderer already, with the same
+ * player, audio and subtitle tracks, time range and renderer profile, reads
+ * the output of the same process instead of starting another one. Each
+ * client reads the buffered output with its own read position.
+ * <p>
+ * A process that other clients have joined is not stopped when the renderer
+ * that started it seeks; it is stopped once the last client has stopped
+ * reading from it, as any other process.
+ *
+ * @see net.pms.io.BufferedOutputFile#getSharedInputStream(long)
+ */
+public class TranscodeSessions {
+	private static final Logger logger = LoggerFactory.getLogger(TranscodeSessions.class);
+
+	private static TranscodeSessions instance;
+
+	private final Map<Key, Session> sessions = new HashMap<Key, Session>();
+
+	/**
+	 * Returns the sessions of all renderers.
+	 *
+	 * @return The instance.
+	 */
+	public static synchronized TranscodeSessions getInstance() {
+		if (instance == null) {
+			instance = new TranscodeSessions();
+		}
+
+		return instance;
+	}
+
+	TranscodeSessions() {
+	}
+
+	/**
+	 * Registers a transcode that has been started, so that other clients can
+	 * read its output. Only processes with buffered output can be shared.
+	 *
+	 * @param resource The resource that is transcoded.
+	 * @param params The parameters of the transcode.
+	 * @param process The process.
+	 */
+	public synchronized void register(DLNAResource resource, OutputParams params, ProcessWrapper process) {
+		removeStopped();
+
+		if (process instanceof ProcessWrapperImpl) {
+			sessions.put(new Key(resource, params), new Session((ProcessWrapperImpl) process));
+		}
+	}
+
+	/**
+	 * Returns an input stream that reads the output of a running transcode of
+	 * a resource with the same parameters.
+	 *
+	 * @param resource The resource.
+	 * @param params The parameters of the transcode.
+	 * @param position The read position.
+	 * @return The input stream, or null if no such transcode is running or
+	 * 			its output from that position is not buffered anymore.
+	 */
+	public synchronized InputStream join(DLNAResource resource, OutputParams params, long position) {
+		removeStopped();
+		Session session = sessions.get(new Key(resource, params));
+
+		if (session == null) {
+			return null;
+		}
+
+		InputStream input = session.process.getSharedInputStream(position);
+
+		if (input == null) {
+			return null;
+		}
+
+		session.clients++;
+		logger.debug("Joined transcode " + session.process + " of " + resource.getSystemName() + ", " + session.clients + " clients have joined");
+		return new JoinedInputStream(input, session);
+	}
+
+	/**
+	 * Stops a process that the resource that started it does not need
+	 * anymore, unless other clients have joined it.
+	 *
+	 * @param process The process.
+	 */
+	public void stop(ProcessWrapper process) {
+		synchronized (this) {
+			for (Session session : sessions.values()) {
+				if (session.process == process && session.clients > 0) {
+					logger.debug("Not stopping " + process + ", which " + session.clients + " other clients read");
+					return;
+				}
+			}
+		}
+
+		process.stopProcess();
+	}
+
+	/**
+	 * Returns the number of transcodes that can be joined.
+	 *
+	 * @return The number of transcodes.
+	 */
+	public synchronized int size() {
+		removeStopped();
+		return sessions.size();
+	}
+
+	private void removeStopped() {
+		Iterator<Session> iterator = sessions.values().iterator();
+
+		while (iterator.hasNext()) {
+			if (iterator.next().process.isDestroyed()) {
+				iterator.remove();
+			}
+		}
+	}
+
+	private synchronized void leave(Session session) {
+		session.clients--;
+	}
+
+	private static class Session {
+		private final ProcessWrapperImpl process;
+
+		/**
+		 * The number of clients that have joined and are still reading,
+		 * not counting the renderer that started the process.
+		 */
+		private int clients;
+
+		Session(ProcessWrapperImpl process) {
+			this.process = process;
+		}
+	}
+
+	/**
+	 * What makes two transcodes produce the same output.
+	 */
+	private static class Key {
+		private final String description;
+		private final RendererConfiguration renderer;
+
+		Key(DLNAResource resource, OutputParams params) {
+			StringBuilder sb = new StringBuilder();
+			sb.append(resource.getClass().getName()).append('\u0000');
+			sb.append(resource.getSystemName()).append('\u0000');
+			sb.append(resource.getPlayer() != null ? resource.getPlayer().id() : "").append('\u0000');
+
+			if (params.aid != null) {
+				sb.append(params.aid.getId()).append(':').append(params.aid.getLang());
+			}
+
+			sb.append('\u0000');
+
+			if (params.sid != null) {
+				sb.append(params.sid.getId()).append(':').append(params.sid.getLang());
+
+				if (params.sid.getExternalFile() != null) {
+					sb.append(':').append(params.sid.getExternalFile().getAbsolutePath());
+				}
+			}
+
+			sb.append('\u0000').append(params.timeseek).append('\u0000').append(params.timeend);
+			description = sb.toString();
+			renderer = params.mediaRenderer;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+
+			Key other = (Key) o;
+			return description.equals(other.description) && renderer == other.renderer;
+		}
+
+		@Override
+		public int hashCode() {
+			return description.hashCode() * 31 + System.identityHashCode(renderer);
+		}
+	}
+
+	/**
+	 * Reads the output of a transcode that has been joined, and leaves it when
+	 * it is closed.
+	 */
+	private class JoinedInputStream extends FilterInputStream {
+		private final Session session;
+		private boolean closed;
+
+		JoinedInputStream(InputStream input, Session session) {
+			super(input);
+			this.session = session;
+		}
+
+		@Override
+		public void close() throws IOException {
+			synchronized (this) {
+				if (closed) {
+					return;
+				}
+
+				closed = true;
+			}
+
+			leave(session);
+			super.close();
+		}
+	}
+}
@@ -161,7 +161,7 @@ public class ZippedEntry extends DLNAResource implements IPushOutput {
 
 	@Override
 	public InputStream getThumbnailInputStream() throws IOException {
-		if (getMedia() != null && getMedia().getThumb() != null) {
+		if (getMedia() != null && getMedia().hasThumb()) {
 			return getMedia().getThumbnailInputStream();
 		} else {
 			return super.getThumbnailInputStream();
@@ -5,16 +5,45 @@ import net.pms.dlna.*;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.lang3.StringUtils;
 
 public class MediaLibraryFolder extends VirtualFolder {
 	public static final int FILES = 0;
 	public static final int TEXTS = 1;
 	public static final int PLAYLISTS = 2;
 	public static final int ISOS = 3;
+
+	/**
+	 * Matches the placeholders of query templates.
+	 */
+	private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{(\\d)\\}");
+
+	/**
+	 * Query templates turned into parameterized SQL, by template. The SQL is
+	 * the same whichever artist or album is browsed, so the database can
+	 * reuse the parsed statement instead of planning a new one every time.
+	 */
+	private static final Map<String, Query> queries = new ConcurrentHashMap<String, Query>();
+
 	private String sqls[];
 	private int expectedOutputs[];
 	private DLNAMediaDatabase database;
 
+	/**
+	 * The change counter of the database when the children were last
+	 * queried, see {@link DLNAMediaDatabase#getChangeCount()}.
+	 */
+	private long changeCount = -1;
+
 	public MediaLibraryFolder(String name, String sql, int expectedOutput) {
 		this(name, new String[]{sql}, new int[]{expectedOutput});
 	}
@@ -31,34 +60,37 @@ public class MediaLibraryFolder extends VirtualFolder {
 
 	@Override
 	public void discoverChildren() {
+		changeCount = database.getChangeCount();
+
 		if (sqls.length > 0) {
 			String sql = sqls[0];
 			int expectedOutput = expectedOutputs[0];
 			if (sql != null) {
-				sql = transformSQL(sql);
+				Query query = getQuery(sql);
+				List<String> parameters = getParameters(query);
 				if (expectedOutput == FILES) {
-					ArrayList<File> list = database.getFiles(sql);
+					ArrayList<File> list = database.getFiles(query.sql, parameters);
 					if (list != null) {
 						for (File f : list) {
 							addChild(new RealFile(f));
 						}
 					}
 				} else if (expectedOutput == PLAYLISTS) {
-					ArrayList<File> list = database.getFiles(sql);
+					ArrayList<File> list = database.getFiles(query.sql, parameters);
 					if (list != null) {
 						for (File f : list) {
 							addChild(new PlaylistFolder(f));
 						}
 					}
 				} else if (expectedOutput == ISOS) {
-					ArrayList<File> list = database.getFiles(sql);
+					ArrayList<File> list = database.getFiles(query.sql, parameters);
 					if (list != null) {
 						for (File f : list) {
 							addChild(new DVDISOFile(f));
 						}
 					}
 				} else if (expectedOutput == TEXTS) {
-					ArrayList<String> list = database.getStrings(sql);
+					ArrayList<String> list = database.getStrings(query.sql, parameters);
 					if (list != null) {
 						for (String s : list) {
 							String sqls2[] = new String[sqls.length - 1];
@@ -73,34 +105,124 @@ public class MediaLibraryFolder extends VirtualFolder {
 		}
 	}
 
-	private String transformSQL(String sql) {
-		sql = sql.replace("${0}", transformName(getName()));
-		if (getParent() != null) {
-			sql = sql.replace("${1}", transformName(getParent().getName()));
-			if (getParent().getParent() != null) {
-				sql = sql.replace("${2}", transformName(getParent().getParent().getName()));
-				if (getParent().getParent().getParent() != null) {
-					sql = sql.replace("${3}", transformName(getParent().getParent().getParent().getName()));
-					if (getParent().getParent().getParent().getParent() != null) {
-						sql = sql.replace("${4}", transformName(getParent().getParent().getParent().getParent().getName()));
-					}
+	/**
+	 * Returns the parameterized SQL for a query template, in which
+	 * <code>${n}</code> stands for the name of the folder n levels up.
+	 * Placeholders may also be part of a string literal, as they were when
+	 * names were pasted into the SQL: <code>'%${0}%'</code> becomes
+	 * <code>('%' || ? || '%')</code>.
+	 *
+	 * @throws IllegalArgumentException if a string literal is not closed.
+	 */
+	static Query getQuery(String template) {
+		Query query = queries.get(template);
+
+		if (query == null) {
+			List<Integer> levels = new ArrayList<Integer>();
+			StringBuilder sql = new StringBuilder();
+			int start = 0;
+			boolean quoted = false;
+
+			for (int i = 0; i < template.length(); i++) {
+				if (template.charAt(i) != '\'') {
+					continue;
 				}
+
+				if (!quoted) {
+					appendUnquoted(sql, template.substring(start, i), levels);
+					start = i + 1;
+					quoted = true;
+				} else if (i + 1 < template.length() && template.charAt(i + 1) == '\'') {
+					// An escaped quote inside the literal
+					i++;
+				} else {
+					appendQuoted(sql, template.substring(start, i), levels);
+					start = i + 1;
+					quoted = false;
+				}
+			}
+
+			if (quoted) {
+				throw new IllegalArgumentException("Unterminated string literal in query: " + template);
 			}
+
+			appendUnquoted(sql, template.substring(start), levels);
+			query = new Query(sql.toString(), levels);
+			queries.put(template, query);
+		}
+
+		return query;
+	}
+
+	private static void appendUnquoted(StringBuilder sql, String text, List<Integer> levels) {
+		Matcher matcher = PLACEHOLDER.matcher(text);
+		int end = 0;
+
+		while (matcher.find()) {
+			levels.add(Integer.parseInt(matcher.group(1)));
+			sql.append(text, end, matcher.start()).append('?');
+			end = matcher.end();
 		}
-		return sql;
+
+		sql.append(text, end, text.length());
 	}
 
-	private String transformName(String name) {
-		if (name.equals(DLNAMediaDatabase.NONAME)) {
-			name = "";
+	/**
+	 * Appends a string literal, without its quotes, as the concatenation of
+	 * its text and parameters.
+	 */
+	private static void appendQuoted(StringBuilder sql, String text, List<Integer> levels) {
+		Matcher matcher = PLACEHOLDER.matcher(text);
+		List<String> parts = new ArrayList<String>();
+		int end = 0;
+
+		while (matcher.find()) {
+			if (matcher.start() > end) {
+				parts.add("'" + text.substring(end, matcher.start()) + "'");
+			}
+
+			levels.add(Integer.parseInt(matcher.group(1)));
+			parts.add("?");
+			end = matcher.end();
+		}
+
+		if (end < text.length() || parts.isEmpty()) {
+			parts.add("'" + text.substring(end) + "'");
+		}
+
+		if (parts.size() == 1) {
+			sql.append(parts.get(0));
+		} else {
+			sql.append('(').append(StringUtils.join(parts, " || ")).append(')');
 		}
-		name = name.replace("'", "''"); // issue 448
-		return name;
+	}
+
+	/**
+	 * Returns the values of the parameters of a query for this folder.
+	 */
+	private List<String> getParameters(Query query) {
+		List<String> parameters = new ArrayList<String>(query.levels.size());
+
+		for (int level : query.levels) {
+			DLNAResource folder = this;
+
+			for (int i = 0; i < level && folder != null; i++) {
+				folder = folder.getParent();
+			}
+
+			if (folder == null || folder.getName().equals(DLNAMediaDatabase.NONAME)) {
+				parameters.add("");
+			} else {
+				parameters.add(folder.getName());
+			}
+		}
+
+		return parameters;
 	}
 
 	@Override
 	public boolean isRefreshNeeded() {
-		return true;
+		return database.getChangeCount() != changeCount;
 	}
 
 	@Override
@@ -108,87 +230,89 @@ public class MediaLibraryFolder extends VirtualFolder {
 		ArrayList<File> list = null;
 		ArrayList<String> strings = null;
 		int expectedOutput = 0;
+		changeCount = database.getChangeCount();
 
 		if (sqls.length > 0) {
 			String sql = sqls[0];
 			expectedOutput = expectedOutputs[0];
 			if (sql != null) {
-				sql = transformSQL(sql);
+				Query query = getQuery(sql);
 				if (expectedOutput == FILES || expectedOutput == PLAYLISTS || expectedOutput == ISOS) {
-					list = database.getFiles(sql);
+					list = database.getFiles(query.sql, getParameters(query));
 				} else if (expectedOutput == TEXTS) {
-					strings = database.getStrings(sql);
+					strings = database.getStrings(query.sql, getParameters(query));
 				}
 			}
 		}
 
-		ArrayList<File> addedFiles = new ArrayList<File>();
-		ArrayList<String> addedString = new ArrayList<String>();
-		ArrayList<DLNAResource> removedFiles = new ArrayList<DLNAResource>();
-		ArrayList<DLNAResource> removedString = new ArrayList<DLNAResource>();
-		int i = 0;
+		List<File> addedFiles = new ArrayList<File>();
+		List<String> addedString = new ArrayList<String>();
+		Set<DLNAResource> removed = Collections.newSetFromMap(new IdentityHashMap<DLNAResource, Boolean>());
 
 		if (list != null) {
+			Set<String> fileKeys = new HashSet<String>();
+
 			for (File file : list) {
-				boolean present = false;
+				fileKeys.add(getKey(file.getName(), file.lastModified()));
+			}
 
-				for (DLNAResource dlna : getChildren()) {
-					if (i == 0 && (!(dlna instanceof VirtualFolder) || (dlna instanceof MediaLibraryFolder))) {
-						removedFiles.add(dlna);
-					}
+			Set<String> childKeys = new HashSet<String>();
 
-					String name = dlna.getName();
-					long lm = dlna.getLastModified();
-					boolean videoTSHack = false;
+			for (DLNAResource dlna : getChildren()) {
+				String key = getKey(dlna.getName(), dlna.getLastModified());
+				String videoTSKey = null;
 
-					if (dlna instanceof DVDISOFile) {
-						DVDISOFile dvdISOFile = (DVDISOFile) dlna;
-						// XXX DVDISOFile has inconsistent ideas of what constitutes a VIDEO_TS folder
-						videoTSHack = dvdISOFile.getFilename().equals(file.getName());
-					}
-
-					if ((file.getName().equals(name) || videoTSHack) && file.lastModified() == lm) {
-						removedFiles.remove(dlna);
-						present = true;
-					}
+				if (dlna instanceof DVDISOFile) {
+					// XXX DVDISOFile has inconsistent ideas of what constitutes a VIDEO_TS folder
+					videoTSKey = getKey(((DVDISOFile) dlna).getFilename(), dlna.getLastModified());
+					childKeys.add(videoTSKey);
 				}
 
-				i++;
+				childKeys.add(key);
 
-				if (!present) {
+				if (isReplaceable(dlna) && !fileKeys.contains(key) && (videoTSKey == null || !fileKeys.contains(videoTSKey))) {
+					removed.add(dlna);
+				}
+			}
+
+			for (File file : list) {
+				if (!childKeys.contains(getKey(file.getName(), file.lastModified()))) {
 					addedFiles.add(file);
 				}
 			}
 		}
 
-		i = 0;
-
 		if (strings != null) {
-			for (String f : strings) {
-				boolean present = false;
-				for (DLNAResource d : getChildren()) {
-					if (i == 0 && (!(d instanceof VirtualFolder) || (d instanceof MediaLibraryFolder))) {
-						removedString.add(d);
-					}
-					String name = d.getName();
-					if (f.equals(name)) {
-						removedString.remove(d);
-						present = true;
-					}
+			Set<String> names = new HashSet<String>(strings);
+			Set<String> childNames = new HashSet<String>();
+
+			for (DLNAResource d : getChildren()) {
+				childNames.add(d.getName());
+
+				if (isReplaceable(d) && !names.contains(d.getName())) {
+					removed.add(d);
 				}
-				i++;
-				if (!present) {
+			}
+
+			for (String f : strings) {
+				if (!childNames.contains(f)) {
 					addedString.add(f);
 				}
 			}
 		}
 
-		for (DLNAResource f : removedFiles) {
-			getChildren().remove(f);
-		}
+		if (!removed.isEmpty()) {
+			// Removes them in a single pass rather than one by one
+			List<DLNAResource> remaining = new ArrayList<DLNAResource>(getChildren().size() - removed.size());
 
-		for (DLNAResource s : removedString) {
-			getChildren().remove(s);
+			for (DLNAResource child : getChildren()) {
+				if (!removed.contains(child)) {
+					remaining.add(child);
+				}
+			}
+
+			getChildren().clear();
+			getChildren().addAll(remaining);
 		}
 
 		for (File f : addedFiles) {
@@ -213,4 +337,31 @@ public class MediaLibraryFolder extends VirtualFolder {
 
 		// return removedFiles.size() != 0 || addedFiles.size() != 0 || removedString.size() != 0 || addedString.size() != 0;
 	}
+
+	/**
+	 * Returns whether a child is one of the query results, which are
+	 * replaced when the results change, as opposed to e.g. the transcode
+	 * folder.
+	 */
+	private static boolean isReplaceable(DLNAResource dlna) {
+		return !(dlna instanceof VirtualFolder) || (dlna instanceof MediaLibraryFolder);
+	}
+
+	private static String getKey(String name, long lastModified) {
+		return name + '\u0000' + lastModified;
+	}
+
+	static class Query {
+		final String sql;
+
+		/**
+		 * How many folders up the value of each parameter comes from.
+		 */
+		final List<Integer> levels;
+
+		Query(String sql, List<Integer> levels) {
+			this.sql = sql;
+			this.levels = levels;
+		}
+	}
 }
@@ -0,0 +1,207 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna.virtual;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.pms.PMS;
+import net.pms.configuration.RendererConfiguration;
+import net.pms.dlna.DLNAMediaDatabase;
+import net.pms.dlna.DLNAResource;
+import net.pms.dlna.RealFile;
+import net.pms.dlna.ResolutionScheduler;
+import net.pms.dlna.SearchCriteria;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Answers ContentDirectory searches from the media library database. The
+ * items found are kept in a folder per renderer below this one, which is
+ * what gives them the IDs that renderers play them by, so browsing it shows
+ * the items each renderer found most recently.
+ */
+public class SearchFolder extends VirtualFolder {
+	private static final Logger logger = LoggerFactory.getLogger(SearchFolder.class);
+
+	/**
+	 * Maximum number of items kept per renderer, unless a single search
+	 * returns more.
+	 */
+	private static final int MAX_RESULTS = 500;
+
+	private final DLNAMediaDatabase database;
+
+	/**
+	 * The folders of the items found, by renderer.
+	 */
+	private final Map<RendererConfiguration, Results> renderers = new HashMap<RendererConfiguration, Results>();
+
+	public SearchFolder(String name) {
+		super(name, null);
+		this.database = PMS.get().getDatabase();
+	}
+
+	/**
+	 * Returns a page of the items that match search criteria, sorted by file
+	 * name.
+	 *
+	 * @param criteria The criteria.
+	 * @param start The index of the first item.
+	 * @param count The maximum number of items, or 0 for all of them.
+	 * @param renderer The renderer that searches.
+	 * @return The items, or null if the database cannot be queried.
+	 */
+	public List<DLNAResource> search(SearchCriteria criteria, int start, int count, RendererConfiguration renderer) {
+		List<String> parameters = new ArrayList<String>(criteria.getParameters());
+		parameters.add(Integer.toString(count > 0 ? count : -1));
+		parameters.add(Integer.toString(start));
+		ArrayList<File> files = database.getFiles(
+			"SELECT FILENAME, MAX(MODIFIED) AS MODIFIED FROM FILES F WHERE " + criteria.getCondition() +
+			" GROUP BY FILENAME ORDER BY FILENAME ASC LIMIT ? OFFSET ?",
+			parameters
+		);
+
+		if (files == null) {
+			return null;
+		}
+
+		Results folder;
+
+		synchronized (this) {
+			folder = renderers.get(renderer);
+
+			if (folder == null) {
+				folder = new Results(renderer);
+				addChild(folder);
+				renderers.put(renderer, folder);
+			}
+		}
+
+		List<DLNAResource> resources = folder.add(files);
+
+		if (!ResolutionScheduler.getInstance().resolve(resources, null, 20, TimeUnit.SECONDS)) {
+			logger.debug("Not all items found for {} could be resolved in time", criteria);
+		}
+
+		return resources;
+	}
+
+	/**
+	 * Returns the number of items that match search criteria.
+	 *
+	 * @param criteria The criteria.
+	 * @return The number of items, or -1 if the database cannot be queried.
+	 */
+	public int getTotalMatches(SearchCriteria criteria) {
+		return database.getCount(
+			"SELECT COUNT(DISTINCT FILENAME) FROM FILES F WHERE " + criteria.getCondition(),
+			criteria.getParameters()
+		);
+	}
+
+	/**
+	 * The items found are added as they are, without transcode folders.
+	 */
+	@Override
+	public boolean isTranscodeFolderAvailable() {
+		return false;
+	}
+
+	/**
+	 * The items found by one renderer. Their players and mime types are
+	 * chosen for that renderer, so they are not shared with other renderers.
+	 */
+	private static class Results extends VirtualFolder {
+		private final RendererConfiguration renderer;
+
+		/**
+		 * The items found, by file and modification time, least recently
+		 * found first.
+		 */
+		private final Map<String, DLNAResource> results = new LinkedHashMap<String, DLNAResource>(16, 0.75f, true);
+
+		Results(RendererConfiguration renderer) {
+			super(renderer != null ? renderer.getRendererName() : "", null);
+			this.renderer = renderer;
+		}
+
+		/**
+		 * Returns the items for files found, adding the ones that were not
+		 * found before.
+		 */
+		synchronized List<DLNAResource> add(List<File> files) {
+			List<DLNAResource> resources = new ArrayList<DLNAResource>(files.size());
+
+			for (File file : files) {
+				String key = file.getAbsolutePath() + '\u0000' + file.lastModified();
+				DLNAResource resource = results.get(key);
+
+				if (resource == null) {
+					resource = new RealFile(file);
+					addChild(resource);
+
+					// Files that are not valid anymore are not added
+					if (!getChildren().contains(resource)) {
+						continue;
+					}
+
+					results.put(key, resource);
+				}
+
+				resources.add(resource);
+			}
+
+			Iterator<DLNAResource> eldest = results.values().iterator();
+
+			while (results.size() > Math.max(MAX_RESULTS, resources.size())) {
+				DLNAResource resource = eldest.next();
+				eldest.remove();
+				getChildren().remove(resource);
+
+				if (resource.getSecondaryResource() != null) {
+					getChildren().remove(resource.getSecondaryResource());
+				}
+			}
+
+			return resources;
+		}
+
+		/**
+		 * The renderer that searched, whatever renderer the folders above
+		 * were last browsed by.
+		 */
+		@Override
+		protected RendererConfiguration getDefaultRenderer() {
+			return renderer;
+		}
+
+		@Override
+		public boolean isTranscodeFolderAvailable() {
+			return false;
+		}
+	}
+}
@@ -182,7 +182,7 @@ public class FFmpegAudio extends FFmpegVideo {
 		params.waitbeforestart = 2000;
 		params.manageFastStart();
 
-		int nThreads = configuration.getNumberOfCpuCores();
+		int nThreads = params.getThreads(configuration.getNumberOfCpuCores());
 		List<String> cmdList = new ArrayList<String>();
 
 		cmdList.add(executable());
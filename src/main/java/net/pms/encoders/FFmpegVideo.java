@@ -510,7 +510,7 @@ public class FFmpegVideo extends FFmpegBase {
 		DLNAMediaInfo media,
 		OutputParams params
 	) throws IOException {
-		int nThreads = configuration.getNumberOfCpuCores();
+		int nThreads = params.getThreads(configuration.getNumberOfCpuCores());
 		List<String> cmdList = new ArrayList<String>();
 		RendererConfiguration renderer = params.mediaRenderer;
 		final String filename = dlna.getSystemName();
@@ -592,6 +592,9 @@ public class FFmpegVideo extends FFmpegBase {
 			defaultMaxBitrates = rendererMaxBitrates;
 		}
 
+		// Transcodes that are started while the server is busy get less
+		defaultMaxBitrates[0] = params.getMaximumBitrate(defaultMaxBitrates[0], configuration.getDegradedMaximumBitrate());
+
 		if (params.mediaRenderer.getCBRVideoBitrate() == 0) {
 			// Convert value from Mb to Kb
 			defaultMaxBitrates[0] = 1000 * defaultMaxBitrates[0];
@@ -89,7 +89,7 @@ public class FFmpegWebAudio extends FFmpegAudio {
 		params.waitbeforestart = 6000;
 		params.manageFastStart();
 
-		int nThreads = configuration.getNumberOfCpuCores();
+		int nThreads = params.getThreads(configuration.getNumberOfCpuCores());
 		List<String> cmdList = new ArrayList<String>();
 
 		cmdList.add(executable());
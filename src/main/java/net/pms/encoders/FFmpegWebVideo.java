@@ -133,7 +133,7 @@ public class FFmpegWebVideo extends FFmpegVideo {
 		cmdList.add(executable());
 		cmdList.addAll(getGlobalOptions(logger));
 
-		int nThreads = configuration.getNumberOfCpuCores();
+		int nThreads = params.getThreads(configuration.getNumberOfCpuCores());
 
 		// Decoder threads
 		cmdList.add("-threads");
@@ -731,7 +731,8 @@ public class MEncoderVideo extends Player {
 	 * Note: This is not exact. The bitrate can go above this but it is generally pretty good.
 	 * @return The maximum bitrate the video should be along with the buffer size using MEncoder vars
 	 */
-	private String addMaximumBitrateConstraints(String encodeSettings, DLNAMediaInfo media, String quality, RendererConfiguration mediaRenderer, String audioType) {
+	private String addMaximumBitrateConstraints(String encodeSettings, DLNAMediaInfo media, String quality, OutputParams params, String audioType) {
+		RendererConfiguration mediaRenderer = params.mediaRenderer;
 		int defaultMaxBitrates[] = getVideoBitrateConfig(configuration.getMaximumBitrate());
 		int rendererMaxBitrates[] = new int[2];
 
@@ -743,6 +744,9 @@ public class MEncoderVideo extends Player {
 			defaultMaxBitrates = rendererMaxBitrates;
 		}
 
+		// Transcodes that are started while the server is busy get less
+		defaultMaxBitrates[0] = params.getMaximumBitrate(defaultMaxBitrates[0], configuration.getDegradedMaximumBitrate());
+
 		if (mediaRenderer.getCBRVideoBitrate() == 0 && defaultMaxBitrates[0] > 0 && !quality.contains("vrc_buf_size") && !quality.contains("vrc_maxrate") && !quality.contains("vbitrate")) {
 			// Convert value from Mb to Kb
 			defaultMaxBitrates[0] = 1000 * defaultMaxBitrates[0];
@@ -1012,7 +1016,7 @@ public class MEncoderVideo extends Player {
 		{
 			int nThreads = (dvd || filename.toLowerCase().endsWith("dvr-ms")) ?
 				1 :
-				configuration.getMencoderMaxThreads();
+				params.getThreads(configuration.getMencoderMaxThreads());
 			boolean handleToken = false;
 			int i = 0;
 
@@ -1062,6 +1066,9 @@ public class MEncoderVideo extends Player {
 					defaultMaxBitrates = rendererMaxBitrates;
 				}
 
+				// Transcodes that are started while the server is busy get less
+				defaultMaxBitrates[0] = params.getMaximumBitrate(defaultMaxBitrates[0], configuration.getDegradedMaximumBitrate());
+
 				int maximumBitrate = defaultMaxBitrates[0];
 
 				// Determine a good quality setting based on video attributes
@@ -1093,7 +1100,7 @@ public class MEncoderVideo extends Player {
 			String encodeSettings = "-lavcopts autoaspect=1:vcodec=" + vcodec +
 					(wmv && !params.mediaRenderer.isXBOX() ? ":acodec=wmav2:abitrate=448" : (cbr_settings + ":acodec=" + (configuration.isMencoderAc3Fixed() ? "ac3_fixed" : "ac3") +
 							":abitrate=" + CodecUtil.getAC3Bitrate(configuration, params.aid))) +
-					":threads=" + (wmv && !params.mediaRenderer.isXBOX() ? 1 : configuration.getMencoderMaxThreads()) +
+					":threads=" + (wmv && !params.mediaRenderer.isXBOX() ? 1 : params.getThreads(configuration.getMencoderMaxThreads())) +
 					("".equals(mpeg2Options) ? "" : ":" + mpeg2Options);
 
 			String audioType = "ac3";
@@ -1103,7 +1110,7 @@ public class MEncoderVideo extends Player {
 				audioType = "pcm";
 			}
 
-			encodeSettings = addMaximumBitrateConstraints(encodeSettings, media, mpeg2Options, params.mediaRenderer, audioType);
+			encodeSettings = addMaximumBitrateConstraints(encodeSettings, media, mpeg2Options, params, audioType);
 			st = new StringTokenizer(encodeSettings, " ");
 
 			{
@@ -1746,7 +1753,7 @@ public class MEncoderVideo extends Player {
 							vcodec,
 							(configuration.isMencoderAc3Fixed() ? "ac3_fixed" : "ac3"),
 							CodecUtil.getAC3Bitrate(configuration, params.aid),
-							configuration.getMencoderMaxThreads(),
+							params.getThreads(configuration.getMencoderMaxThreads()),
 							expertOptions[i + 1]
 						);
 
@@ -1755,7 +1762,7 @@ public class MEncoderVideo extends Player {
 							lavcopts,
 							media,
 							lavcopts,
-							params.mediaRenderer,
+							params,
 							""
 						);
 
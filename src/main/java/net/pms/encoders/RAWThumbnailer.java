@@ -65,21 +65,23 @@ public class RAWThumbnailer extends Player {
 		params.hidebuffer = true;
 		final String filename = dlna.getSystemName();
 
-		if (media == null || media.getThumb() == null) {
+		if (media == null || !media.hasThumb()) {
 			return null;
 		}
 
-		if (media.getThumb().length == 0) {
+		byte thumb[] = media.getThumb();
+
+		if (thumb == null || thumb.length == 0) {
 			try {
-				media.setThumb(getThumbnail(params, filename));
+				thumb = getThumbnail(params, filename);
 			} catch (Exception e) {
 				logger.error("error extracting thumbnail", e);
 				return null;
 			}
 		}
 
-		byte copy[] = new byte[media.getThumb().length];
-		System.arraycopy(media.getThumb(), 0, copy, 0, media.getThumb().length);
+		byte copy[] = new byte[thumb.length];
+		System.arraycopy(thumb, 0, copy, 0, thumb.length);
 		media.setThumb(new byte[0]);
 
 		ProcessWrapper pw = new InternalJavaProcessImpl(new ByteArrayInputStream(copy));
@@ -133,7 +133,8 @@ public class TsMuxeRVideo extends Player {
 
 		if (this instanceof TsMuxeRAudio && media.getFirstAudioTrack() != null) {
 			String fakeFileName = writeResourceToFile("/resources/images/fake.jpg");
-			ffVideoPipe = new PipeIPCProcess(System.currentTimeMillis() + "fakevideo", System.currentTimeMillis() + "videoout", false, true);
+			// FFmpeg writes to its standard output, which is piped to tsMuxeR
+			ffVideoPipe = new PipeIPCProcess(System.currentTimeMillis() + "videoout", true);
 
 			String timeEndValue1 = "-t";
 			String timeEndValue2 = "" + params.timeend;
@@ -163,6 +164,7 @@ public class TsMuxeRVideo extends Player {
 
 			OutputParams ffparams = new OutputParams(configuration);
 			ffparams.maxBufferSize = 1;
+			ffparams.stdout_pipe = ffVideoPipe;
 			ffVideo = new ProcessWrapperImpl(ffmpegLPCMextract, ffparams);
 
 			if (
@@ -188,7 +190,7 @@ public class TsMuxeRVideo extends Player {
 				ffAudio[0] = new ProcessWrapperImpl(flacCmd, ffparams);
 			} else {
 				ffAudioPipe = new PipeIPCProcess[1];
-				ffAudioPipe[0] = new PipeIPCProcess(System.currentTimeMillis() + "mlpaudio", System.currentTimeMillis() + "audioout", false, true);
+				ffAudioPipe[0] = new PipeIPCProcess(System.currentTimeMillis() + "audioout", true);
 				String depth = "pcm_s16le";
 				String rate = "48000";
 
@@ -212,6 +214,7 @@ public class TsMuxeRVideo extends Player {
 
 				ffparams = new OutputParams(configuration);
 				ffparams.maxBufferSize = 1;
+				ffparams.stdout_pipe = ffAudioPipe[0];
 				ffAudio = new ProcessWrapperImpl[1];
 				ffAudio[0] = new ProcessWrapperImpl(flacCmd, ffparams);
 			}
@@ -675,52 +678,32 @@ public class TsMuxeRVideo extends Player {
 		params.maxBufferSize = 100;
 		params.input_pipes[0] = tsPipe;
 		params.stdin = null;
+		// The pipes exist once their processes have been run, so the
+		// processes that use them can be started right away
 		ProcessWrapper pipe_process = tsPipe.getPipeProcess();
 		p.attachProcess(pipe_process);
 		pipe_process.runInNewThread();
-
-		try {
-			Thread.sleep(50);
-		} catch (InterruptedException e) {
-		}
 		tsPipe.deleteLater();
 
 		ProcessWrapper ff_pipe_process = ffVideoPipe.getPipeProcess();
 		p.attachProcess(ff_pipe_process);
 		ff_pipe_process.runInNewThread();
-		try {
-			Thread.sleep(50);
-		} catch (InterruptedException e) {
-		}
 		ffVideoPipe.deleteLater();
 
 		p.attachProcess(ffVideo);
 		ffVideo.runInNewThread();
-		try {
-			Thread.sleep(50);
-		} catch (InterruptedException e) {
-		}
 
 		if (ffAudioPipe != null && params.aid != null) {
 			for (int i = 0; i < ffAudioPipe.length; i++) {
 				ff_pipe_process = ffAudioPipe[i].getPipeProcess();
 				p.attachProcess(ff_pipe_process);
 				ff_pipe_process.runInNewThread();
-				try {
-					Thread.sleep(50);
-				} catch (InterruptedException e) {
-				}
 				ffAudioPipe[i].deleteLater();
 				p.attachProcess(ffAudio[i]);
 				ffAudio[i].runInNewThread();
 			}
 		}
 
-		try {
-			Thread.sleep(100);
-		} catch (InterruptedException e) {
-		}
-
 		p.runInNewThread();
 		return p;
 	}
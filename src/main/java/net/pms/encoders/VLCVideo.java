@@ -192,7 +192,7 @@ public class VLCVideo extends Player {
 		int sampleRate;
 	}
 
-	protected Map<String, Object> getEncodingArgs(CodecConfig codecConfig) {
+	protected Map<String, Object> getEncodingArgs(CodecConfig codecConfig, OutputParams params) {
 		// See: http://www.videolan.org/doc/streaming-howto/en/ch03.html
 		// See: http://wiki.videolan.org/Codec
 		Map<String, Object> args = new HashMap<String, Object>();
@@ -228,7 +228,7 @@ public class VLCVideo extends Player {
 		args.put("soverlay", null);
 
 		// enable multi-threading
-		args.put("threads", "" + configuration.getNumberOfCpuCores());
+		args.put("threads", "" + params.getThreads(configuration.getNumberOfCpuCores()));
 
 		// Add extra args
 		args.putAll(codecConfig.extraTrans);
@@ -361,7 +361,7 @@ public class VLCVideo extends Player {
 		String separator = "";
 		StringBuilder encodingArgsBuilder = new StringBuilder();
 
-		for (Map.Entry<String, Object> curEntry : getEncodingArgs(codecConfig).entrySet()) {
+		for (Map.Entry<String, Object> curEntry : getEncodingArgs(codecConfig, params).entrySet()) {
 			encodingArgsBuilder.append(separator);
 			encodingArgsBuilder.append(curEntry.getKey());
 
@@ -0,0 +1,160 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.io;
+
+import net.pms.PMS;
+import net.pms.configuration.PmsConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+
+/**
+ * Pool of fixed size, off-heap memory segments used by {@link SegmentedBuffer}
+ * to hold transcoded data. Segments are allocated with
+ * {@link ByteBuffer#allocateDirect(int)}, so they do not count against the Java
+ * heap. Segments that are released after a transcode has finished are kept
+ * for reuse by the next transcode, up to a configurable amount of idle memory.
+ */
+public class BufferSegmentPool {
+	private static final Logger logger = LoggerFactory.getLogger(BufferSegmentPool.class);
+
+	/**
+	 * Size of a single segment in bytes. The current value is 1 MB.
+	 */
+	public static final int SEGMENT_SIZE = 1048576;
+
+	private static BufferSegmentPool instance;
+
+	private final LinkedList<ByteBuffer> idleSegments = new LinkedList<ByteBuffer>();
+	private final long maxIdleSize;
+	private final long maxSize;
+	private long allocatedSize;
+
+	/**
+	 * Returns the pool that is shared by all transcode buffers. The pool
+	 * retains at most one maximum size video buffer worth of idle segments.
+	 *
+	 * @return The pool instance.
+	 */
+	public static synchronized BufferSegmentPool getInstance() {
+		if (instance == null) {
+			PmsConfiguration configuration = PMS.getConfiguration();
+			int maxIdleSegments = configuration != null ? configuration.getMaxMemoryBufferSize() : 100;
+			instance = new BufferSegmentPool((long) maxIdleSegments * SEGMENT_SIZE);
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Creates a new pool.
+	 *
+	 * @param maxIdleSize The maximum number of bytes of released segments to
+	 * 			retain for reuse.
+	 */
+	BufferSegmentPool(long maxIdleSize) {
+		this(maxIdleSize, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Creates a new pool that runs out of memory once it has allocated a
+	 * given number of bytes, as if direct memory were exhausted.
+	 *
+	 * @param maxIdleSize The maximum number of bytes of released segments to
+	 * 			retain for reuse.
+	 * @param maxSize The maximum number of bytes to allocate.
+	 */
+	BufferSegmentPool(long maxIdleSize, long maxSize) {
+		this.maxIdleSize = maxIdleSize;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Returns a cleared segment of {@link #SEGMENT_SIZE} bytes, either by
+	 * reusing a released segment or by allocating a new one.
+	 *
+	 * @return The segment.
+	 * @throws OutOfMemoryError When no more direct memory can be allocated.
+	 */
+	public synchronized ByteBuffer acquire() {
+		ByteBuffer segment = idleSegments.poll();
+
+		if (segment == null) {
+			if (allocatedSize + SEGMENT_SIZE > maxSize) {
+				throw new OutOfMemoryError("Buffer segment pool is limited to " + maxSize + " bytes");
+			}
+
+			segment = ByteBuffer.allocateDirect(SEGMENT_SIZE);
+			allocatedSize += SEGMENT_SIZE;
+			logger.trace("Allocated buffer segment, total footprint is now " + allocatedSize + " bytes");
+		}
+
+		segment.clear();
+		return segment;
+	}
+
+	/**
+	 * Returns a segment to the pool so that it can be reused.
+	 *
+	 * @param segment The segment obtained by {@link #acquire()}.
+	 */
+	public synchronized void release(ByteBuffer segment) {
+		if (getIdleSize() + SEGMENT_SIZE <= maxIdleSize) {
+			idleSegments.add(segment);
+		} else {
+			allocatedSize -= SEGMENT_SIZE;
+		}
+	}
+
+	/**
+	 * Returns the total number of bytes allocated by this pool, for segments
+	 * in use as well as idle segments.
+	 *
+	 * @return The footprint in bytes.
+	 */
+	public synchronized long getAllocatedSize() {
+		return allocatedSize;
+	}
+
+	/**
+	 * Returns the number of bytes of idle segments that are available for
+	 * reuse.
+	 *
+	 * @return The idle size in bytes.
+	 */
+	public synchronized long getIdleSize() {
+		return (long) idleSegments.size() * SEGMENT_SIZE;
+	}
+
+	/**
+	 * Returns the number of bytes of segments that are currently in use.
+	 *
+	 * @return The used size in bytes.
+	 */
+	public synchronized long getUsedSize() {
+		return allocatedSize - getIdleSize();
+	}
+
+	@Override
+	public String toString() {
+		return "BufferSegmentPool [allocated=" + getAllocatedSize() + ", used=" + getUsedSize() + ", idle=" + getIdleSize() + "]";
+	}
+}
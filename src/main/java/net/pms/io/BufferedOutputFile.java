@@ -34,8 +34,29 @@ public interface BufferedOutputFile {
 
 	public abstract InputStream getInputStream(long newReadPosition);
 
+	/**
+	 * Returns an input stream for another client that reads the same output,
+	 * with its own read position, provided that the data from that position
+	 * on is still buffered.
+	 *
+	 * @param position The read position.
+	 * @return The input stream, or null if the output cannot be shared from
+	 * 			that position.
+	 */
+	public abstract InputStream getSharedInputStream(long position);
+
 	public abstract long getWriteCount();
 
+	/**
+	 * Waits until the first data has been written, or the output has ended.
+	 *
+	 * @param timeout The maximum time to wait in milliseconds.
+	 * @return True if data has been written, false otherwise.
+	 * @throws InterruptedException If the thread was interrupted while
+	 * 			waiting.
+	 */
+	public abstract boolean waitForData(long timeout) throws InterruptedException;
+
 	public abstract void write(byte b[], int off, int len) throws IOException;
 
 	public abstract void write(int b) throws IOException;
@@ -0,0 +1,144 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.io;
+
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.Platform;
+import net.pms.PMS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Creates a named pipe (FIFO) on Unix-like systems. The pipe is created with
+ * the C library through JNA, without starting a <code>mkfifo</code> process,
+ * unless the library cannot be loaded. Either way the pipe exists once
+ * {@link #runInNewThread()} returns, so that the processes that use it can
+ * be started right away.
+ */
+class NativeFifo implements ProcessWrapper {
+	private static final Logger logger = LoggerFactory.getLogger(NativeFifo.class);
+	private static final int MODE = 0777;
+	private static final CLibrary libc = loadLibrary();
+
+	interface CLibrary extends Library {
+		int mkfifo(String pathname, int mode);
+
+		int chmod(String pathname, int mode);
+	}
+
+	private final String path;
+	private boolean created;
+
+	NativeFifo(String path) {
+		this.path = path;
+	}
+
+	private static CLibrary loadLibrary() {
+		if (Platform.isWindows()) {
+			return null;
+		}
+
+		try {
+			return (CLibrary) Native.loadLibrary("c", CLibrary.class);
+		} catch (UnsatisfiedLinkError e) {
+			logger.debug("Pipes are created with mkfifo: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Creates the pipe, if it has not been created yet.
+	 */
+	private synchronized void create() {
+		if (created) {
+			return;
+		}
+
+		created = true;
+
+		if (libc != null) {
+			// Unlike mkfifo -m, mkfifo() applies the umask to the mode
+			if (libc.mkfifo(path, MODE) == 0 && libc.chmod(path, MODE) == 0) {
+				logger.trace("Created pipe " + path);
+				return;
+			}
+
+			logger.debug("Cannot create pipe " + path + " (error " + Native.getLastError() + "), trying mkfifo");
+		}
+
+		OutputParams params = new OutputParams(PMS.getConfiguration());
+		params.maxBufferSize = 0.1;
+		params.log = true;
+		String cmdArray[];
+
+		if (Platform.isMac() || Platform.isFreeBSD() || Platform.isSolaris()) {
+			cmdArray = new String[] {"mkfifo", "-m", "777", path};
+		} else {
+			cmdArray = new String[] {"mkfifo", "--mode=777", path};
+		}
+
+		new ProcessWrapperImpl(cmdArray, params).runInSameThread();
+	}
+
+	@Override
+	public InputStream getInputStream(long seek) {
+		return null;
+	}
+
+	@Override
+	public List<String> getResults() {
+		return null;
+	}
+
+	@Override
+	public synchronized boolean isDestroyed() {
+		return created;
+	}
+
+	/**
+	 * Creates the pipe in the current thread, which is quick enough to not
+	 * need a thread of its own.
+	 */
+	@Override
+	public void runInNewThread() {
+		create();
+	}
+
+	@Override
+	public void runInSameThread() {
+		create();
+	}
+
+	@Override
+	public boolean isReadyToStop() {
+		return false;
+	}
+
+	@Override
+	public void setReadyToStop(boolean nullable) {
+	}
+
+	@Override
+	public void stopProcess() {
+	}
+}
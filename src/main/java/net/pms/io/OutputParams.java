@@ -62,6 +62,50 @@ public class OutputParams {
 	public boolean avidemux;
 	public boolean shift_scr;
 
+	/**
+	 * The pipe that the standard output of the process is piped to, instead
+	 * of it writing to a named pipe.
+	 */
+	public PipeIPCProcess stdout_pipe;
+
+	/**
+	 * The number of encoder threads, or 0 for the configured number.
+	 */
+	public int threads;
+
+	/**
+	 * Whether the transcode has been started while the server is busy, and
+	 * is limited to a lower maximum bitrate.
+	 */
+	public boolean degraded;
+
+	/**
+	 * Returns the number of encoder threads of the transcode.
+	 *
+	 * @param configured The number of threads that is configured.
+	 * @return The number of threads, at most the configured number.
+	 */
+	public int getThreads(int configured) {
+		return threads > 0 ? Math.min(threads, configured) : configured;
+	}
+
+	/**
+	 * Returns the maximum video bitrate of the transcode.
+	 *
+	 * @param configured The maximum bitrate that is configured, or 0 for no
+	 * 			maximum.
+	 * @param degradedMaximum The maximum bitrate of degraded transcodes.
+	 * @return The maximum bitrate, at most the degraded maximum if the
+	 * 			transcode is degraded, or 0 for no maximum.
+	 */
+	public int getMaximumBitrate(int configured, int degradedMaximum) {
+		if (degraded && (configured == 0 || configured > degradedMaximum)) {
+			return degradedMaximum;
+		}
+
+		return configured;
+	}
+
 	public OutputParams(PmsConfiguration configuration) {
 		if (configuration != null) {
 			waitbeforestart = configuration.getVideoTranscodeStartDelay() * 1000;
@@ -25,17 +25,41 @@ import net.pms.util.PCMAudioOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
 
+/**
+ * Pipes the output of one process to another through named pipes, with an
+ * optional {@link StreamModifier}. In anonymous mode the first process
+ * writes to its standard output instead of a named pipe, see
+ * {@link OutputParams#stdout_pipe}.
+ */
 public class PipeIPCProcess extends Thread implements ProcessWrapper {
 	private static final Logger logger = LoggerFactory.getLogger(PipeIPCProcess.class);
+
+	/**
+	 * Size of the buffer that pipes are copied through. A read from a pipe
+	 * returns at most what fits in the pipe, which is 64 KB on Linux.
+	 */
+	private static final int CHANNEL_BUFFER_SIZE = 64 * 1024;
 	private PipeProcess mkin;
 	private PipeProcess mkout;
 	private StreamModifier modifier;
 
+	/**
+	 * The standard output of the process that writes to this pipe in
+	 * anonymous mode, which is set once that process has started.
+	 */
+	private volatile InputStream stdout;
+	private final CountDownLatch stdoutReady = new CountDownLatch(1);
+
 	public StreamModifier getModifier() {
 		return modifier;
 	}
@@ -49,15 +73,41 @@ public class PipeIPCProcess extends Thread implements ProcessWrapper {
 		mkout = new PipeProcess(pipeNameOut, "out", forcereconnect2 ? "reconnect" : "dummy");
 	}
 
+	/**
+	 * Creates a pipe in anonymous mode, which reads the standard output of
+	 * the process whose {@link OutputParams#stdout_pipe} it is.
+	 *
+	 * @param pipeNameOut The name of the pipe that is written to.
+	 * @param forcereconnect Whether the pipe that is written to is reconnected.
+	 */
+	public PipeIPCProcess(String pipeNameOut, boolean forcereconnect) {
+		mkout = new PipeProcess(pipeNameOut, "out", forcereconnect ? "reconnect" : "dummy");
+	}
+
+	/**
+	 * Sets the standard output of the process that writes to this pipe in
+	 * anonymous mode.
+	 *
+	 * @param stdout The standard output.
+	 */
+	void setStandardOutput(InputStream stdout) {
+		this.stdout = stdout;
+		stdoutReady.countDown();
+	}
+
 	public void run() {
-		byte[] b = new byte[512 * 1024];
-		int n = -1;
 		InputStream in = null;
 		OutputStream out = null;
 		OutputStream debug = null;
 
 		try {
-			in = mkin.getInputStream();
+			if (mkin != null) {
+				in = mkin.getInputStream();
+			} else {
+				stdoutReady.await();
+				in = stdout;
+			}
+
 			out = mkout.getOutputStream();
 
 			if (modifier != null && modifier.isH264AnnexB()) {
@@ -72,14 +122,25 @@ public class PipeIPCProcess extends Thread implements ProcessWrapper {
 				out.write(modifier.getHeader());
 			}
 
-			while ((n = in.read(b)) > -1) {
-				out.write(b, 0, n);
-				if (debug != null) {
-					debug.write(b, 0, n);
+			if (in instanceof FileInputStream && out instanceof FileOutputStream) {
+				copy(((FileInputStream) in).getChannel(), ((FileOutputStream) out).getChannel());
+			} else if (in instanceof FileInputStream) {
+				copy(((FileInputStream) in).getChannel(), out);
+			} else {
+				byte[] b = new byte[512 * 1024];
+				int n;
+
+				while ((n = in.read(b)) > -1) {
+					out.write(b, 0, n);
+					if (debug != null) {
+						debug.write(b, 0, n);
+					}
 				}
 			}
 		} catch (IOException e) {
 			logger.debug("Error :" + e.getMessage());
+		} catch (InterruptedException e) {
+			logger.debug("Stopped before the process that writes to the pipe started");
 		} finally {
 			try {
 				// in and out may not have been initialized:
@@ -99,8 +160,50 @@ public class PipeIPCProcess extends Thread implements ProcessWrapper {
 		}
 	}
 
+	/**
+	 * Returns the name of the pipe that is read from.
+	 *
+	 * @return The name, or "-" for standard output in anonymous mode.
+	 */
 	public String getInputPipe() {
-		return mkin.getInputPipe();
+		return mkin != null ? mkin.getInputPipe() : "-";
+	}
+
+	/**
+	 * Copies everything from one pipe to another when nothing is modified,
+	 * through a direct buffer. The data is then only copied into and out of
+	 * memory outside the Java heap by the kernel, unlike with a byte array,
+	 * which every read and write of a stream copies once more.
+	 * <p>
+	 * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+	 * cannot be used, since a pipe has no size and it would transfer nothing.
+	 */
+	static void copy(FileChannel in, FileChannel out) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(CHANNEL_BUFFER_SIZE);
+
+		while (in.read(buffer) > -1) {
+			buffer.flip();
+
+			while (buffer.hasRemaining()) {
+				out.write(buffer);
+			}
+
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Copies everything from a pipe to a stream that modifies it. The stream
+	 * needs an array, but reading through the channel still saves allocating
+	 * native memory for every read, which a stream read of this size does.
+	 */
+	static void copy(FileChannel in, OutputStream out) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(CHANNEL_BUFFER_SIZE);
+
+		while (in.read(buffer) > -1) {
+			out.write(buffer.array(), 0, buffer.position());
+			buffer.clear();
+		}
 	}
 
 	public String getOutputPipe() {
@@ -112,12 +215,15 @@ public class PipeIPCProcess extends Thread implements ProcessWrapper {
 	}
 
 	public void deleteLater() {
-		mkin.deleteLater();
+		if (mkin != null) {
+			mkin.deleteLater();
+		}
+
 		mkout.deleteLater();
 	}
 
 	public InputStream getInputStream() throws IOException {
-		return mkin.getInputStream();
+		return mkin != null ? mkin.getInputStream() : stdout;
 	}
 
 	public OutputStream getOutputStream() throws IOException {
@@ -141,36 +247,27 @@ public class PipeIPCProcess extends Thread implements ProcessWrapper {
 
 	@Override
 	public void runInNewThread() {
-		if (!Platform.isWindows()) {
-			mkin.getPipeProcess().runInNewThread();
-			mkout.getPipeProcess().runInNewThread();
-
-			// Allow the threads some time to do their work before
-			// starting the main thread
-			try {
-				Thread.sleep(150);
-			} catch (InterruptedException e) {
-			}
-		}
-
+		createPipes();
 		start();
 	}
 
 	@Override
 	public void runInSameThread() {
-		if (!Platform.isWindows()) {
-			mkin.getPipeProcess().runInNewThread();
-			mkout.getPipeProcess().runInNewThread();
+		createPipes();
+		run();
+	}
 
-			// Allow the threads some time to do their work before
-			// running the main thread
-			try {
-				Thread.sleep(150);
-			} catch (InterruptedException e) {
+	/**
+	 * Creates the named pipes, which exist once this returns.
+	 */
+	private void createPipes() {
+		if (!Platform.isWindows()) {
+			if (mkin != null) {
+				mkin.getPipeProcess().runInSameThread();
 			}
-		}
 
-		run();
+			mkout.getPipeProcess().runInSameThread();
+		}
 	}
 
 	@Override
@@ -185,7 +282,11 @@ public class PipeIPCProcess extends Thread implements ProcessWrapper {
 	@Override
 	public void stopProcess() {
 		this.interrupt();
-		mkin.getPipeProcess().stopProcess();
+
+		if (mkin != null) {
+			mkin.getPipeProcess().stopProcess();
+		}
+
 		mkout.getPipeProcess().stopProcess();
 	}
 }
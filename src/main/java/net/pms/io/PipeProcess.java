@@ -89,21 +89,15 @@ public class PipeProcess {
 		return mk.getPipeName();
 	}
 
+	/**
+	 * Returns the process that creates the pipe. On Windows the pipe has been
+	 * created already, elsewhere it is created when the process is run.
+	 *
+	 * @return The process.
+	 */
 	public ProcessWrapper getPipeProcess() {
 		if (!Platform.isWindows()) {
-			OutputParams mkfifo_vid_params = new OutputParams(configuration);
-			mkfifo_vid_params.maxBufferSize = 0.1;
-			mkfifo_vid_params.log = true;
-			String cmdArray[];
-
-			if (Platform.isMac() || Platform.isFreeBSD() || Platform.isSolaris()) {
-				cmdArray = new String[] {"mkfifo", "-m", "777", linuxPipeName};
-			} else {
-				cmdArray = new String[] {"mkfifo", "--mode=777", linuxPipeName};
-			}
-
-			ProcessWrapperImpl mkfifo_vid_process = new ProcessWrapperImpl(cmdArray, mkfifo_vid_params);
-			return mkfifo_vid_process;
+			return new NativeFifo(linuxPipeName);
 		}
 
 		return mk;
@@ -32,6 +32,8 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class ProcessWrapperImpl extends Thread implements ProcessWrapper {
 	private static final Logger logger = LoggerFactory.getLogger(ProcessWrapperImpl.class);
@@ -54,6 +56,12 @@ public class ProcessWrapperImpl extends Thread implements ProcessWrapper {
 	private static int processCounter = 0;
 	private boolean success;
 
+	/**
+	 * Counted down once the output of the process can be read, or the
+	 * process has failed to start.
+	 */
+	private final CountDownLatch outputReady = new CountDownLatch(1);
+
 	@Override
 	public String toString() {
 		return super.getName();
@@ -206,6 +214,8 @@ public class ProcessWrapperImpl extends Thread implements ProcessWrapper {
 
 				bo.attachThread(this);
 				new OutputTextLogger(process.getInputStream()).start();
+			} else if (params.stdout_pipe != null) {
+				params.stdout_pipe.setStandardOutput(process.getInputStream());
 			} else if (params.log) {
 				stdoutConsumer = keepStdout
 					? new OutputTextConsumer(process.getInputStream(), true)
@@ -220,6 +230,8 @@ public class ProcessWrapperImpl extends Thread implements ProcessWrapper {
 				stdoutConsumer.start();
 			}
 
+			outputReady.countDown();
+
 			if (params.stdin != null) {
 				params.stdin.push(process.getOutputStream());
 			}
@@ -249,6 +261,8 @@ public class ProcessWrapperImpl extends Thread implements ProcessWrapper {
 			logger.error("Error initializing process: ", e);
 			stopProcess();
 		} finally {
+			outputReady.countDown();
+
 			try {
 				if (bo != null) {
 					bo.close();
@@ -309,6 +323,55 @@ public class ProcessWrapperImpl extends Thread implements ProcessWrapper {
 		return null;
 	}
 
+	/**
+	 * Waits until the process has written its first output, so that a reader
+	 * can start as soon as the process is ready rather than after a fixed
+	 * delay.
+	 *
+	 * @param timeout The maximum time to wait in milliseconds.
+	 * @return True if output is available, false if the process has ended
+	 * 			without output, its output is not buffered, or the timeout
+	 * 			elapsed.
+	 */
+	public boolean waitForOutput(long timeout) {
+		long deadline = System.currentTimeMillis() + timeout;
+
+		try {
+			if (!outputReady.await(timeout, TimeUnit.MILLISECONDS)) {
+				return false;
+			}
+
+			BufferedOutputFile buffer = bo;
+
+			if (buffer == null && stdoutConsumer != null) {
+				buffer = stdoutConsumer.getBuffer();
+			}
+
+			return buffer != null && buffer.waitForData(Math.max(deadline - System.currentTimeMillis(), 0));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Returns an input stream for another client that reads the output of
+	 * this process, see {@link BufferedOutputFile#getSharedInputStream(long)}.
+	 *
+	 * @param position The read position.
+	 * @return The input stream, or null if the output cannot be shared from
+	 * 			that position.
+	 */
+	public InputStream getSharedInputStream(long position) {
+		if (bo != null) {
+			return bo.getSharedInputStream(position);
+		} else if (stdoutConsumer != null && stdoutConsumer.getBuffer() != null) {
+			return stdoutConsumer.getBuffer().getSharedInputStream(position);
+		}
+
+		return null;
+	}
+
 	public List<String> getOtherResults() {
 		if (stdoutConsumer == null) {
 			return null;
@@ -0,0 +1,199 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Circular buffer of a fixed capacity that is backed by off-heap memory
+ * segments from the {@link BufferSegmentPool}. Data is addressed by its
+ * absolute position in the stream; the position is mapped onto the circular
+ * buffer internally. Segments are only acquired when a position inside them
+ * is written for the first time, so the buffer grows in steps of
+ * {@link BufferSegmentPool#SEGMENT_SIZE} bytes without ever copying its
+ * contents.
+ * <p>
+ * This class is not thread-safe, callers need to synchronize access.
+ */
+public class SegmentedBuffer {
+	private final BufferSegmentPool pool;
+	private final int segmentSize;
+	private final ByteBuffer[] segments;
+	private int capacity;
+	private int allocatedSegments;
+
+	/**
+	 * Creates a new buffer. No memory is allocated until data is written,
+	 * unless {@link #allocate(long)} is called.
+	 *
+	 * @param capacity The maximum number of bytes the buffer can hold.
+	 */
+	public SegmentedBuffer(int capacity) {
+		this(BufferSegmentPool.getInstance(), capacity);
+	}
+
+	SegmentedBuffer(BufferSegmentPool pool, int capacity) {
+		this.pool = pool;
+		this.capacity = capacity;
+
+		// Buffers smaller than a segment use a single private segment
+		segmentSize = Math.min(capacity, BufferSegmentPool.SEGMENT_SIZE);
+		segments = new ByteBuffer[(capacity + segmentSize - 1) / segmentSize];
+	}
+
+	/**
+	 * Returns the number of bytes the buffer can hold.
+	 *
+	 * @return The capacity.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of bytes of memory currently held by this buffer.
+	 *
+	 * @return The allocated size in bytes.
+	 */
+	public long getAllocatedSize() {
+		return (long) allocatedSegments * segmentSize;
+	}
+
+	/**
+	 * Makes sure that memory is available for all stream positions up to the
+	 * given one. If memory runs out before the capacity has been allocated
+	 * for the first time, the capacity is reduced to what could be allocated,
+	 * which is only safe as long as the buffer has not wrapped around yet.
+	 *
+	 * @param position The stream position that needs to be writable.
+	 * @return False if no memory could be allocated at all, true otherwise.
+	 */
+	public boolean allocate(long position) {
+		if (position >= capacity) {
+			position = capacity - 1;
+		}
+
+		if (position < getAllocatedSize()) {
+			// Segments are always allocated from the start of the buffer
+			return true;
+		}
+
+		int last = (int) (position / segmentSize);
+
+		for (int i = 0; i <= last; i++) {
+			if (segments[i] == null) {
+				try {
+					segments[i] = segmentSize == BufferSegmentPool.SEGMENT_SIZE ? pool.acquire() : ByteBuffer.allocateDirect(segmentSize);
+					allocatedSegments++;
+				} catch (OutOfMemoryError e) {
+					if (i == 0) {
+						return false;
+					}
+
+					capacity = i * segmentSize;
+					return true;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the byte at a stream position.
+	 *
+	 * @param position The stream position.
+	 * @return The byte.
+	 */
+	public byte get(long position) {
+		int index = (int) (position % capacity);
+		return segments[index / segmentSize].get(index % segmentSize);
+	}
+
+	/**
+	 * Sets the byte at a stream position.
+	 *
+	 * @param position The stream position.
+	 * @param b The byte.
+	 */
+	public void put(long position, byte b) {
+		int index = (int) (position % capacity);
+		segments[index / segmentSize].put(index % segmentSize, b);
+	}
+
+	/**
+	 * Copies bytes from the buffer, starting at a stream position.
+	 *
+	 * @param position The stream position of the first byte.
+	 * @param dst The destination array.
+	 * @param off The offset in the destination array.
+	 * @param len The number of bytes to copy.
+	 */
+	public void get(long position, byte[] dst, int off, int len) {
+		while (len > 0) {
+			int index = (int) (position % capacity);
+			ByteBuffer segment = segments[index / segmentSize];
+			int segmentOffset = index % segmentSize;
+			int count = Math.min(len, Math.min(segmentSize - segmentOffset, capacity - index));
+			segment.position(segmentOffset);
+			segment.get(dst, off, count);
+			position += count;
+			off += count;
+			len -= count;
+		}
+	}
+
+	/**
+	 * Copies bytes into the buffer, starting at a stream position.
+	 *
+	 * @param position The stream position of the first byte.
+	 * @param src The source array.
+	 * @param off The offset in the source array.
+	 * @param len The number of bytes to copy.
+	 */
+	public void put(long position, byte[] src, int off, int len) {
+		while (len > 0) {
+			int index = (int) (position % capacity);
+			ByteBuffer segment = segments[index / segmentSize];
+			int segmentOffset = index % segmentSize;
+			int count = Math.min(len, Math.min(segmentSize - segmentOffset, capacity - index));
+			segment.position(segmentOffset);
+			segment.put(src, off, count);
+			position += count;
+			off += count;
+			len -= count;
+		}
+	}
+
+	/**
+	 * Returns all memory held by this buffer to the pool. The buffer must not
+	 * be used afterwards.
+	 */
+	public void release() {
+		for (int i = 0; i < segments.length; i++) {
+			if (segments[i] != null && segmentSize == BufferSegmentPool.SEGMENT_SIZE) {
+				pool.release(segments[i]);
+			}
+
+			segments[i] = null;
+		}
+
+		allocatedSegments = 0;
+	}
+}
@@ -118,6 +118,15 @@ public class SizeLimitInputStream extends InputStream {
 		return maxBytesToRead;
 	}
 
+	/**
+	 * Get the input stream that is being protected by this stream.
+	 *
+	 * @return The underlying input stream.
+	 */
+	public InputStream getInputStream() {
+		return in;
+	}
+
 	/**
 	 * Create a new size limit input stream from another stream given a size
 	 * limit.
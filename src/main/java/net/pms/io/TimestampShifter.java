@@ -0,0 +1,300 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.io;
+
+/**
+ * Shifts the timestamps of a transcoded MPEG-PS or MPEG-TS stream by the time
+ * seek offset of the transcode, so that renderers like the WDTV Live show the
+ * actual playback position instead of starting at zero.
+ * <p>
+ * The stream is handed over in chunks, each one preceded by the bytes of
+ * earlier chunks that may hold the start of a header that has not been
+ * processed yet (see {@link #getWindowStart(long)}). Pack headers are found by
+ * scanning the chunk for their start code, and PES headers by walking from
+ * packet to packet, so every byte is inspected at most once and headers that
+ * straddle two chunks are still found.
+ * <p>
+ * This class is not thread-safe, callers need to synchronize access.
+ */
+class TimestampShifter {
+	/**
+	 * Size of a pack header up to and including the last SCR byte.
+	 */
+	private static final int SCR_HEADER_SIZE = 10;
+
+	/**
+	 * Minimum number of bytes needed to determine the size of a packet.
+	 */
+	private static final int PACKET_HEADER_SIZE = 6;
+
+	private final double timeseek;
+	private final boolean shiftScr;
+	private final boolean shiftPackets;
+	private long packetPosition;
+
+	/**
+	 * Creates a new shifter.
+	 *
+	 * @param timeseek The time seek offset in seconds.
+	 * @param shiftScr Whether the SCR of pack headers should be shifted.
+	 * @param shiftPackets Whether the PTS and DTS of PES headers should be
+	 * 			shifted.
+	 */
+	TimestampShifter(double timeseek, boolean shiftScr, boolean shiftPackets) {
+		this.timeseek = timeseek;
+		this.shiftScr = shiftScr;
+		this.shiftPackets = shiftPackets;
+	}
+
+	/**
+	 * Returns the stream position of the first byte that has to be passed to
+	 * {@link #shift(byte[], long, int, long, int)} along with the next chunk.
+	 *
+	 * @param position The stream position at which the next chunk starts.
+	 * @return The stream position, never after <code>position</code>.
+	 */
+	long getWindowStart(long position) {
+		long start = position;
+
+		if (shiftScr) {
+			start = Math.max(position - (SCR_HEADER_SIZE - 1), 0);
+		}
+
+		if (shiftPackets && packetPosition < start) {
+			start = packetPosition;
+		}
+
+		return start;
+	}
+
+	/**
+	 * Shifts all timestamps in the headers that end in a new chunk of the
+	 * stream. The data is modified in place.
+	 *
+	 * @param data The bytes of the stream from the window start up to the end
+	 * 			of the new chunk.
+	 * @param start The stream position of the first byte in the array, as
+	 * 			returned by {@link #getWindowStart(long)}, or later if the
+	 * 			buffer could not hold the earlier bytes anymore.
+	 * @param length The number of bytes in the array.
+	 * @param position The stream position at which the new chunk starts.
+	 * @param capacity The capacity of the buffer holding the stream.
+	 */
+	void shift(byte[] data, long start, int length, long position, int capacity) {
+		if (shiftScr) {
+			shiftPackHeaders(data, (int) (position - start) - (SCR_HEADER_SIZE - 1), length);
+		}
+
+		if (shiftPackets) {
+			shiftPacketHeaders(data, start, length, capacity);
+		}
+	}
+
+	/**
+	 * Shifts the SCR of all pack headers that end in the given range.
+	 *
+	 * @param data The stream data.
+	 * @param from The index of the first possible header start.
+	 * @param length The number of bytes in the array.
+	 */
+	private void shiftPackHeaders(byte[] data, int from, int length) {
+		int last = length - SCR_HEADER_SIZE;
+
+		// Look for the 0xBA of the start code first, it is the rarest byte
+		for (int i = Math.max(from, 0) + 3; i <= last + 3; i++) {
+			if (data[i] == -70 && data[i - 1] == 1 && data[i - 2] == 0 && data[i - 3] == 0) {
+				shiftSCR(data, i - 3, (int) timeseek);
+			}
+		}
+	}
+
+	/**
+	 * Walks from packet to packet and shifts the PTS and DTS of every PES
+	 * header that is complete. Walking stops at the first packet with an
+	 * incomplete header, which is picked up again with the next chunk.
+	 *
+	 * @param data The stream data.
+	 * @param start The stream position of the first byte in the array.
+	 * @param length The number of bytes in the array.
+	 * @param capacity The capacity of the buffer holding the stream.
+	 */
+	private void shiftPacketHeaders(byte[] data, long start, int length, int capacity) {
+		long end = start + length;
+
+		if (packetPosition < start) {
+			// The buffer has been overwritten, continue with what is left
+			packetPosition = start;
+		}
+
+		while (packetPosition + PACKET_HEADER_SIZE <= end) {
+			int index = (int) (packetPosition - start);
+			int packetLength;
+			int streamPos = 0;
+
+			if (data[index] == 71) { // TS
+				packetLength = 188;
+				streamPos = 4;
+
+				// adaptation field
+				if ((data[index + 3] & 0x20) == 0x20) {
+					streamPos += 1 + (data[index + 4] & 0xff);
+				}
+
+				if (streamPos == 188) {
+					streamPos = -1;
+				}
+			} else if (data[index + 3] == -70) { // BA
+				packetLength = 14;
+				streamPos = -1;
+			} else {
+				packetLength = PACKET_HEADER_SIZE + (data[index + 4] & 0xff) * 256 + (data[index + 5] & 0xff);
+			}
+
+			if (streamPos != -1) {
+				int tsIndex = index + streamPos + 18;
+
+				if (tsIndex >= length) {
+					break;
+				}
+
+				long position = packetPosition + streamPos + 18;
+
+				if (!shiftVideo(data, tsIndex, position == 50 && end < capacity)) {
+					shiftAudio(data, tsIndex - 5);
+				}
+			}
+
+			packetPosition += packetLength;
+		}
+	}
+
+	// Ditlew - Modify SCR
+	private static void shiftSCR(byte[] data, int index, int offset_sec) {
+		int m5 = index + 4;
+		int m4 = index + 5;
+		int m3 = index + 6;
+		int m2 = index + 7;
+		int m1 = index + 8;
+		int m0 = index + 9;
+
+		// control bits
+		if (!((data[m5] & 128) == 128)
+			&& ((data[m5] & 64) == 64)
+			&& ((data[m5] & 4) == 4)
+			&& ((data[m3] & 4) == 4)
+			&& ((data[m1] & 4) == 4)
+			&& ((data[m0] & 1) == 1)) {
+			long scr_32_30 = ((data[m5] & 56) >> 3);
+			long scr_29_15 = ((data[m5] & 3) << 13) + ((data[m4] & 0xff) << 5) + ((data[m3] & 248) >> 3);
+			long scr_14_00 = ((data[m3] & 3) << 13) + ((data[m2] & 0xff) << 5) + ((data[m1] & 248) >> 3);
+
+			long scr = (scr_32_30 << 30) + (scr_29_15 << 15) + scr_14_00;
+			long scr_new = scr + (90000L * offset_sec);
+
+			long scr_32_30_new = (scr_new & 7516192768L) >> 30;  // 111000000000000000000000000000000
+			long scr_29_15_new = (scr_new & 1073709056L) >> 15;  // 000111111111111111000000000000000
+			long scr_14_00_new = (scr_new & 32767L);             // 000000000000000000111111111111111
+
+			// scr_32_30_new
+			data[m5] = (byte) ((data[m5] & 199) + ((scr_32_30_new << 3) & 56)); // 11000111
+
+			// scr_29_15_new
+			data[m5] = (byte) ((data[m5] & 252) + ((scr_29_15_new >> 13) & 3)); // 00000011
+			data[m4] = (byte) (scr_29_15_new >> 5);                             // 11111111
+			data[m3] = (byte) ((data[m3] & 7) + ((scr_29_15_new << 3) & 248));  // 11111000
+
+			// scr_14_00_new
+			data[m3] = (byte) ((data[m3] & 252) + ((scr_14_00_new >> 13) & 3)); // 00000011
+			data[m2] = (byte) (scr_14_00_new >> 5);                             // 11111111
+			data[m1] = (byte) ((data[m1] & 7) + ((scr_14_00_new << 3) & 248));  // 11111000
+		}
+	}
+
+	private boolean shiftAudio(byte[] data, int index) {
+		boolean bb = (data[index - 10] == -67 || data[index - 10] == -64)
+			&& data[index - 11] == 1
+			&& data[index - 12] == 0
+			&& data[index - 13] == 0
+			&& (data[index - 6] & 128) == 128;
+		if (bb) {
+			int pts = getTS(data, index);
+			pts += (int) (timeseek * 90000);
+
+			setTS(pts, data, index);
+			return true;
+		}
+		return false;
+	}
+
+	private boolean shiftVideo(byte[] data, int index, boolean firstPacket) {
+		boolean bb = (data[index - 15] == -32 || data[index - 15] == -3)
+			&& data[index - 16] == 1
+			&& data[index - 17] == 0
+			&& data[index - 18] == 0
+			&& (data[index - 11] & 128) == 128
+			&& (data[index - 9] & 32) == 32;
+
+		if (bb) { // check EO or FD (tsMuxeR)
+			int pts = getTS(data, index - 5);
+			int dts = 0;
+			boolean dts_present = (data[index - 11] & 64) == 64;
+			if (dts_present) {
+				if ((data[index - 4] & 15) == 15) {
+					dts = (((((255 - (data[index - 3] & 0xff)) << 8) + (255 - (data[index - 2] & 0xff))) >> 1) << 15) + ((((255 - (data[index - 1] & 0xff)) << 8) + (255 - (data[index] & 0xff))) >> 1);
+					dts = -dts;
+				} else {
+					dts = getTS(data, index);
+				}
+			}
+
+			int ts = (int) (timeseek * 90000);
+			if (firstPacket) {
+				dts--;
+			}
+			pts += ts;
+
+			setTS(pts, data, index - 5);
+			if (dts_present) {
+				if (dts < 0) {
+					data[index - 4] = (byte) 17;
+				}
+				dts += ts;
+				setTS(dts, data, index);
+			}
+			return true;
+		}
+		return false;
+	}
+
+	private static int getTS(byte[] data, int index) {
+		return (((((data[index - 3] & 0xff) << 8) + (data[index - 2] & 0xff)) >> 1) << 15)
+			+ ((((data[index - 1] & 0xff) << 8) + (data[index] & 0xff)) >> 1);
+	}
+
+	private static void setTS(int ts, byte[] data, int index) {
+		int pts_low = ts & 32767;
+		int pts_high = (ts >> 15) & 32767;
+		int pts_left_low = 1 + (pts_low << 1);
+		int pts_left_high = 1 + (pts_high << 1);
+		data[index - 3] = (byte) ((pts_left_high & 65280) >> 8);
+		data[index - 2] = (byte) (pts_left_high & 255);
+		data[index - 1] = (byte) ((pts_left_low & 65280) >> 8);
+		data[index] = (byte) (pts_left_low & 255);
+	}
+}
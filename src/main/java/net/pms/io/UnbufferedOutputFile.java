@@ -84,6 +84,29 @@ public class UnbufferedOutputFile implements BufferedOutputFile {
 		return pipedInputStream;
 	}
 
+	/**
+	 * The output is piped to a single client, so it cannot be shared.
+	 *
+	 * @param position This parameter is ignored.
+	 * @return null
+	 */
+	@Override
+	public InputStream getSharedInputStream(long position) {
+		return null;
+	}
+
+	/**
+	 * Data is piped to the reader as it is written, so there is nothing to
+	 * wait for.
+	 *
+	 * @param timeout This parameter is ignored.
+	 * @return true
+	 */
+	@Override
+	public boolean waitForData(long timeout) {
+		return true;
+	}
+
 	/**
 	 * Writes len bytes from the specified byte array starting at offset off to
 	 * the piped output stream.
@@ -23,7 +23,11 @@ import java.io.InputStream;
 
 class WaitBufferedInputStream extends InputStream {
 	private BufferedOutputFile outputStream;
-	private long readCount;
+	/**
+	 * The read position, which the writer reads to know how far it may get
+	 * ahead of this stream.
+	 */
+	private volatile long readCount;
 	private boolean firstRead;
 
 	public void setReadCount(long readCount) {
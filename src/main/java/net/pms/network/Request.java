@@ -25,6 +25,7 @@ import net.pms.dlna.DLNAMediaInfo;
 import net.pms.dlna.DLNAMediaSubtitle;
 import net.pms.dlna.DLNAResource;
 import net.pms.dlna.Range;
+import net.pms.dlna.ThumbnailService;
 import net.pms.external.StartStopListenerDelegate;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -42,6 +43,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.commons.lang3.StringUtils.isEmpty;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
@@ -217,10 +219,15 @@ public class Request extends HTTPResource {
 					output(output, "Accept-Ranges: bytes");
 					output(output, "Expires: " + getFUTUREDATE() + " GMT");
 					output(output, "Connection: keep-alive");
-					if (mediaRenderer.isMediaParserV2()) {
-						dlna.checkThumbnail();
+					if (
+						mediaRenderer.isMediaParserV2() &&
+						!ThumbnailService.getInstance().generate(dlna, configuration.getThumbnailTimeout(), TimeUnit.MILLISECONDS)
+					) {
+						// Rather than keeping the renderer waiting
+						inputStream = dlna.getGenericThumbnailInputStream(null);
+					} else {
+						inputStream = dlna.getThumbnailInputStream();
 					}
-					inputStream = dlna.getThumbnailInputStream();
 				} else if (fileName.indexOf("subtitle0000") > -1) {
 					// This is a request for a subtitle file
 					output(output, "Content-Type: text/plain");
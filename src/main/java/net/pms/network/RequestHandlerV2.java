@@ -116,15 +116,26 @@ public class RequestHandlerV2 extends SimpleChannelUpstreamHandler {
 		// header matches are attempted and if those fail as well we're stuck with the
 		// default renderer.
 
-		// Attempt 1: try to recognize the renderer by its socket address
-		renderer = RendererConfiguration.getRendererConfigurationBySocketAddress(ia);
+		// Renderers are remembered by address and User-Agent header, so that
+		// only their first request needs to go through the attempts below
+		String userAgent = nettyRequest.getHeader(HttpHeaders.Names.USER_AGENT);
+		RendererConfiguration recognized = RendererConfiguration.getRendererConfiguration(ia, userAgent);
 
-		if (renderer != null) {
-			PMS.get().setRendererFound(renderer);
+		if (recognized != null) {
+			renderer = recognized;
 			request.setMediaRenderer(renderer);
-			logger.trace("Matched media renderer \"" + renderer.getRendererName() + "\" based on address " + ia);
+			logger.trace("Matched media renderer \"" + renderer.getRendererName() + "\" based on address " + ia + " and User-Agent");
+		} else {
+			// Attempt 1: try to recognize the renderer by its socket address
+			renderer = RendererConfiguration.getRendererConfigurationBySocketAddress(ia);
+
+			if (renderer != null) {
+				PMS.get().setRendererFound(renderer);
+				request.setMediaRenderer(renderer);
+				logger.trace("Matched media renderer \"" + renderer.getRendererName() + "\" based on address " + ia);
+			}
 		}
-		
+
 		for (String name : nettyRequest.getHeaderNames()) {
 			String headerLine = name + ": " + nettyRequest.getHeader(name);
 			logger.trace("Received on socket: " + headerLine);
@@ -219,6 +230,10 @@ public class RequestHandlerV2 extends SimpleChannelUpstreamHandler {
 		}
 
 		if (request != null) {
+			if (recognized == null && request.getMediaRenderer() != null) {
+				request.getMediaRenderer().associate(ia, userAgent);
+			}
+
 			// Still no media renderer recognized?
 			if (request.getMediaRenderer() == null) {
 
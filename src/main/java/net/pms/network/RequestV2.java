@@ -24,13 +24,20 @@ import net.pms.configuration.RendererConfiguration;
 import net.pms.dlna.DLNAMediaInfo;
 import net.pms.dlna.DLNAMediaSubtitle;
 import net.pms.dlna.DLNAResource;
+import net.pms.dlna.MapFile;
 import net.pms.dlna.Range;
+import net.pms.dlna.SearchCriteria;
+import net.pms.dlna.ThumbnailService;
+import net.pms.dlna.virtual.SearchFolder;
 import net.pms.external.StartStopListenerDelegate;
+import net.pms.io.SizeLimitInputStream;
+import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.DefaultFileRegion;
+import org.jboss.netty.channel.FileRegion;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpResponse;
@@ -38,14 +45,18 @@ import org.jboss.netty.handler.stream.ChunkedStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.Socket;
 import java.net.URL;
+import java.nio.channels.FileChannel;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.commons.lang3.StringUtils.isEmpty;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
@@ -59,6 +70,17 @@ public class RequestV2 extends HTTPResource {
 	private static SimpleDateFormat sdf = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss", Locale.US);
 	private static int BUFFER_SIZE = 8 * 1024;
 	private static final int[] MULTIPLIER = new int[] { 1, 60, 3600, 24*3600};
+
+	/**
+	 * The containers of the XBOX that stand for folders of the media library.
+	 */
+	private static final List<String> XBOX_CONTAINERS = Arrays.asList("4", "5", "6", "7", "F");
+
+	/**
+	 * Typical size in bytes of the DIDL of an item, to make room for the
+	 * items of a Browse response all at once.
+	 */
+	private static final int ESTIMATED_ITEM_SIZE = 1024;
 	private final String method;
 	private static final PmsConfiguration configuration = PMS.getConfiguration();
 
@@ -247,7 +269,7 @@ public class RequestV2 extends HTTPResource {
 	) throws IOException {
 		ChannelFuture future = null;
 		long CLoverride = -2; // 0 and above are valid Content-Length values, -1 means omit
-		StringBuilder response = new StringBuilder();
+		ResponseBuffer response = new ResponseBuffer();
 		DLNAResource dlna = null;
 		boolean xbox = mediaRenderer.isXBOX();
 
@@ -295,11 +317,15 @@ public class RequestV2 extends HTTPResource {
 					output.setHeader(HttpHeaders.Names.EXPIRES, getFUTUREDATE() + " GMT");
 					output.setHeader(HttpHeaders.Names.CONNECTION, "keep-alive");
 
-					if (mediaRenderer.isMediaParserV2()) {
-						dlna.checkThumbnail();
+					if (
+						mediaRenderer.isMediaParserV2() &&
+						!ThumbnailService.getInstance().generate(dlna, configuration.getThumbnailTimeout(), TimeUnit.MILLISECONDS)
+					) {
+						// Rather than keeping the renderer waiting
+						inputStream = dlna.getGenericThumbnailInputStream(null);
+					} else {
+						inputStream = dlna.getThumbnailInputStream();
 					}
-
-					inputStream = dlna.getThumbnailInputStream();
 				} else if (fileName.indexOf("subtitle0000") > -1) {
 					// This is a request for a subtitle file
 					output.setHeader(HttpHeaders.Names.CONTENT_TYPE, "text/plain");
@@ -575,6 +601,98 @@ public class RequestV2 extends HTTPResource {
 				response.append(CRLF);
 				response.append(HTTPXMLHelper.SOAP_ENCODING_FOOTER);
 				response.append(CRLF);
+			} else if (soapaction != null && soapaction.contains("ContentDirectory:1#Search") && isLibrarySearch(content, xbox)) {
+				String containerID = getEnclosingValue(content, "<ContainerID>", "</ContainerID>");
+				String criteria = getEnclosingValue(content, "<SearchCriteria>", "</SearchCriteria>");
+				Object sI = getEnclosingValue(content, "<StartingIndex>", "</StartingIndex>");
+				Object rC = getEnclosingValue(content, "<RequestedCount>", "</RequestedCount>");
+
+				if (sI != null) {
+					startingIndex = Integer.parseInt(sI.toString());
+				}
+
+				if (rC != null) {
+					requestCount = Integer.parseInt(rC.toString());
+				}
+
+				response.append(HTTPXMLHelper.XML_HEADER);
+				response.append(CRLF);
+				response.append(HTTPXMLHelper.SOAP_ENCODING_HEADER);
+				response.append(CRLF);
+				SearchCriteria searchCriteria = null;
+
+				try {
+					searchCriteria = SearchCriteria.parse(StringEscapeUtils.unescapeXml(criteria != null ? criteria : "*")).forRenderer(mediaRenderer);
+				} catch (IllegalArgumentException iae) {
+					logger.debug("Invalid search criteria: " + iae.getMessage());
+				}
+
+				DLNAResource container = null;
+
+				if (searchCriteria != null && containerID != null && containerID.contains("$")) {
+					// Other IDs are the root, or the virtual containers of the XBOX
+					List<DLNAResource> containers = PMS.get().getRootFolder(mediaRenderer).getDLNAResources(containerID, false, 0, 0, mediaRenderer);
+
+					if (containers != null && !containers.isEmpty()) {
+						container = containers.get(0);
+
+						// Only shared folders can be searched in the database
+						List<File> files = container instanceof MapFile ? ((MapFile) container).getSharedFiles() : Collections.<File>emptyList();
+						searchCriteria = searchCriteria.within(files);
+					}
+				}
+
+				if (searchCriteria == null) {
+					response.append(HTTPXMLHelper.UPNP_INVALID_SEARCH_CRITERIA);
+				} else if (containerID != null && containerID.contains("$") && container == null) {
+					response.append(HTTPXMLHelper.UPNP_NO_SUCH_CONTAINER);
+				} else {
+					SearchFolder searchFolder = PMS.get().getLibrary().getSearchFolder();
+					List<DLNAResource> files = searchFolder.search(searchCriteria, startingIndex, requestCount, mediaRenderer);
+					int totalMatches = searchFolder.getTotalMatches(searchCriteria);
+					int returned = 0;
+
+					response.append(HTTPXMLHelper.SEARCHRESPONSE_HEADER);
+					response.append(CRLF);
+					response.append(HTTPXMLHelper.RESULT_HEADER);
+					response.append(HTTPXMLHelper.DIDL_HEADER);
+
+					if (files != null) {
+						response.reserve(files.size() * ESTIMATED_ITEM_SIZE);
+						StringBuilder didl = new StringBuilder();
+
+						for (DLNAResource uf : files) {
+							if (xbox && containerID != null) {
+								uf.setFakeParentId(containerID);
+							}
+
+							// Items of unsupported types are not searched for,
+							// so this only leaves out those of unusable players
+							if (uf.getPlayer() == null || uf.getPlayer().isPlayerCompatible(mediaRenderer)) {
+								didl.setLength(0);
+								uf.appendDidlString(didl, mediaRenderer);
+								response.append(didl);
+								returned++;
+							}
+						}
+					}
+
+					response.append(HTTPXMLHelper.DIDL_FOOTER);
+					response.append(HTTPXMLHelper.RESULT_FOOTER);
+					response.append(CRLF);
+					response.append("<NumberReturned>").append(returned).append("</NumberReturned>");
+					response.append(CRLF);
+					response.append("<TotalMatches>").append(Math.max(totalMatches, startingIndex + returned)).append("</TotalMatches>");
+					response.append(CRLF);
+					response.append("<UpdateID>").append(searchFolder.getUpdateId()).append("</UpdateID>");
+					response.append(CRLF);
+					response.append(HTTPXMLHelper.SEARCHRESPONSE_FOOTER);
+				}
+
+				response.append(CRLF);
+				response.append(HTTPXMLHelper.SOAP_ENCODING_FOOTER);
+				response.append(CRLF);
+				logger.trace("{}", response);
 			} else if (soapaction != null && (soapaction.contains("ContentDirectory:1#Browse") || soapaction.contains("ContentDirectory:1#Search"))) {
 				objectID = getEnclosingValue(content, "<ObjectID>", "</ObjectID>");
 				String containerID = null;
@@ -632,7 +750,7 @@ public class RequestV2 extends HTTPResource {
 					} else if (containerID.equals("4") && PMS.get().getLibrary().getAllFolder() != null) {
 						objectID = PMS.get().getLibrary().getAllFolder().getResourceId();
 					} else if (containerID.equals("1")) {
-						String artist = getEnclosingValue(content, "upnp:artist = &quot;", "&quot;)");
+						String artist = getXBOXArtist(content);
 						if (artist != null) {
 							objectID = PMS.get().getLibrary().getArtistFolder().getResourceId();
 							searchCriteria = artist;
@@ -662,12 +780,18 @@ public class RequestV2 extends HTTPResource {
 
 				int minus = 0;
 				if (files != null) {
+					// The items are encoded one by one, reusing the same builder
+					response.reserve(files.size() * ESTIMATED_ITEM_SIZE);
+					StringBuilder didl = new StringBuilder();
+
 					for (DLNAResource uf : files) {
 						if (xbox && containerID != null) {
 							uf.setFakeParentId(containerID);
 						}
 						if (uf.isCompatible(mediaRenderer) && (uf.getPlayer() == null || uf.getPlayer().isPlayerCompatible(mediaRenderer))) {
-							response.append(uf.getDidlString(mediaRenderer));
+							didl.setLength(0);
+							uf.appendDidlString(didl, mediaRenderer);
+							response.append(didl);
 						} else {
 							minus++;
 						}
@@ -721,7 +845,7 @@ public class RequestV2 extends HTTPResource {
 				response.append(CRLF);
 				response.append(HTTPXMLHelper.SOAP_ENCODING_FOOTER);
 				response.append(CRLF);
-				logger.trace(response.toString());
+				logger.trace("{}", response);
 			}
 		} else if (method.equals("SUBSCRIBE")) {
 			output.setHeader("SID", PMS.get().usn());
@@ -794,14 +918,13 @@ public class RequestV2 extends HTTPResource {
 		output.setHeader("Server", PMS.get().getServerName());
 
 		if (response.length() > 0) {
-			// A response message was constructed; convert it to data ready to be sent.
-			byte responseData[] = response.toString().getBytes("UTF-8");
-			output.setHeader(HttpHeaders.Names.CONTENT_LENGTH, "" + responseData.length);
+			// A response message was constructed, already encoded and ready to be sent.
+			ChannelBuffer buf = response.getBuffer();
+			output.setHeader(HttpHeaders.Names.CONTENT_LENGTH, "" + buf.readableBytes());
 
 			// HEAD requests only require headers to be set, no need to set contents.
 			if (!method.equals("HEAD")) {
 				// Not a HEAD request, so set the contents of the response.
-				ChannelBuffer buf = ChannelBuffers.copiedBuffer(responseData);
 				output.setContent(buf);
 			}
 
@@ -842,13 +965,27 @@ public class RequestV2 extends HTTPResource {
 			future = e.getChannel().write(output);
 
 			if (lowRange != DLNAMediaInfo.ENDFILE_POS && !method.equals("HEAD")) {
-				// Send the response body to the client in chunks.
-				ChannelFuture chunkWriteFuture = e.getChannel().write(new ChunkedStream(inputStream, BUFFER_SIZE));
+				// Send the response body to the client. Local files that are not
+				// transcoded are handed to the socket directly, everything else is
+				// sent in chunks.
+				final FileRegion region = configuration.isZeroCopyStreaming() ? getFileRegion(inputStream) : null;
+				ChannelFuture chunkWriteFuture;
+
+				if (region != null) {
+					logger.trace("Sending " + region.getCount() + " bytes from position " + region.getPosition() + " using zero-copy transfer");
+					chunkWriteFuture = e.getChannel().write(region);
+				} else {
+					chunkWriteFuture = e.getChannel().write(new ChunkedStream(inputStream, BUFFER_SIZE));
+				}
 
 				// Add a listener to clean up after sending the entire response body.
 				chunkWriteFuture.addListener(new ChannelFutureListener() {
 					@Override
 					public void operationComplete(ChannelFuture future) {
+						if (region != null) {
+							region.releaseExternalResources();
+						}
+
 						try {
 							PMS.get().getRegistry().reenableGoToSleep();
 							inputStream.close();
@@ -907,6 +1044,48 @@ public class RequestV2 extends HTTPResource {
 		return future;
 	}
 
+	/**
+	 * Returns a {@link FileRegion} for the bytes that remain to be read from an
+	 * input stream, if that stream reads directly from a local file. The region
+	 * starts at the current position of the file and honors the limit imposed
+	 * by a {@link SizeLimitInputStream}, so that byte range requests can be
+	 * served with {@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+	 * without copying the data through the heap.
+	 *
+	 * @param in The input stream to send.
+	 * @return The file region, or null if the stream cannot be sent that way.
+	 */
+	private FileRegion getFileRegion(InputStream in) {
+		long limit = -1;
+
+		if (in instanceof SizeLimitInputStream) {
+			limit = ((SizeLimitInputStream) in).getBytesLeft();
+			in = ((SizeLimitInputStream) in).getInputStream();
+		}
+
+		if (!(in instanceof FileInputStream)) {
+			return null;
+		}
+
+		try {
+			FileChannel channel = ((FileInputStream) in).getChannel();
+			long position = channel.position();
+			long count = channel.size() - position;
+
+			if (limit > -1 && limit < count) {
+				count = limit;
+			}
+
+			if (count > 0) {
+				return new DefaultFileRegion(channel, position, count);
+			}
+		} catch (IOException e) {
+			logger.debug("Cannot determine file region, falling back to chunked transfer: " + e.getMessage());
+		}
+
+		return null;
+	}
+
 	/**
 	 * Returns a date somewhere in the far future.
 	 * @return The {@link String} containing the date
@@ -916,6 +1095,41 @@ public class RequestV2 extends HTTPResource {
 		return sdf.format(new Date(10000000000L + System.currentTimeMillis()));
 	}
 
+	/**
+	 * Returns whether a Search is answered from the media library. Searches on
+	 * the virtual containers of the XBOX, and its artist searches on container
+	 * "1", are browses of library folders in disguise, so those are left to
+	 * the Browse code.
+	 */
+	private boolean isLibrarySearch(String content, boolean xbox) {
+		if (!configuration.getUseCache() || PMS.get().getLibrary() == null) {
+			return false;
+		}
+
+		if (!xbox) {
+			return true;
+		}
+
+		String containerID = getEnclosingValue(content, "<ContainerID>", "</ContainerID>");
+
+		if (containerID == null) {
+			return true;
+		}
+
+		if (containerID.equals("1")) {
+			return getXBOXArtist(content) == null;
+		}
+
+		return !XBOX_CONTAINERS.contains(containerID);
+	}
+
+	/**
+	 * Returns the artist that the XBOX searches its container "1" for.
+	 */
+	private String getXBOXArtist(String content) {
+		return getEnclosingValue(content, "upnp:artist = &quot;", "&quot;)");
+	}
+
 	/**
 	 * Returns the string value that is enclosed by the left and right tag in a content string.
 	 * Only the first match of each tag is used to determine positions. If either of the tags
@@ -0,0 +1,135 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.network;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.util.CharsetUtil;
+
+/**
+ * The body of a response, which is encoded as UTF-8 into the buffer that is
+ * sent as it is appended. A Browse response of thousands of items is then
+ * held in memory once, instead of as a {@link StringBuilder}, the string
+ * made from it, its UTF-8 bytes and a copy of those in the buffer that is
+ * sent.
+ */
+class ResponseBuffer {
+	private static final int INITIAL_SIZE = 8 * 1024;
+
+	private final ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(INITIAL_SIZE);
+	private final Writer writer = new OutputStreamWriter(new ChannelBufferOutputStream(buffer), CharsetUtil.UTF_8);
+
+	/**
+	 * Characters copied out of builders, reused for every builder appended.
+	 */
+	private char[] chars = new char[0];
+
+	ResponseBuffer append(String s) {
+		try {
+			writer.write(s);
+		} catch (IOException e) {
+			// Writing to a buffer in memory does not fail
+			throw new IllegalStateException(e);
+		}
+
+		return this;
+	}
+
+	ResponseBuffer append(long l) {
+		return append(String.valueOf(l));
+	}
+
+	ResponseBuffer append(Object o) {
+		return append(String.valueOf(o));
+	}
+
+	/**
+	 * Appends the contents of a builder, without making a string of them, so
+	 * that the builder can be reused for the next item.
+	 *
+	 * @param sb The builder.
+	 * @return This buffer.
+	 */
+	ResponseBuffer append(StringBuilder sb) {
+		int length = sb.length();
+
+		if (chars.length < length) {
+			chars = new char[Math.max(length, 2 * chars.length)];
+		}
+
+		sb.getChars(0, length, chars, 0);
+
+		try {
+			writer.write(chars, 0, length);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+
+		return this;
+	}
+
+	/**
+	 * Makes room for a number of bytes, so that a response whose size can be
+	 * estimated does not have to grow the buffer step by step.
+	 *
+	 * @param bytes The number of bytes that will be appended.
+	 */
+	void reserve(int bytes) {
+		flush();
+		buffer.ensureWritableBytes(bytes);
+	}
+
+	/**
+	 * Returns the number of bytes of the response so far.
+	 *
+	 * @return The length in bytes.
+	 */
+	int length() {
+		flush();
+		return buffer.readableBytes();
+	}
+
+	/**
+	 * Returns the buffer with the encoded response, ready to be sent.
+	 *
+	 * @return The buffer.
+	 */
+	ChannelBuffer getBuffer() {
+		flush();
+		return buffer;
+	}
+
+	private void flush() {
+		try {
+			writer.flush();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getBuffer().toString(CharsetUtil.UTF_8);
+	}
+}
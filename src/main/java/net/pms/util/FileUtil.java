@@ -12,8 +12,10 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
 import static org.apache.commons.lang3.StringUtils.endsWithIgnoreCase;
 import static org.apache.commons.lang3.StringUtils.equalsIgnoreCase;
@@ -23,7 +25,23 @@ import static org.mozilla.universalchardet.Constants.*;
 
 public class FileUtil {
 	private static final Logger logger = LoggerFactory.getLogger(FileUtil.class);
-	private static Map<File, File[]> cache;
+
+	/**
+	 * Maximum number of folders of which the subtitle files are remembered.
+	 */
+	private static final int SUBTITLE_FOLDERS_SIZE = 256;
+
+	/**
+	 * Subtitle files by folder, least recently used first.
+	 */
+	private static final Map<File, SubtitleFolder> subtitleFolders = new LinkedHashMap<File, SubtitleFolder>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<File, SubtitleFolder> eldest) {
+			return size() > SUBTITLE_FOLDERS_SIZE;
+		}
+	};
 	// signal an invalid parameter in getFileLocation() without raising an exception or returning null
 	private static final String DEFAULT_BASENAME = "NO_DEFAULT_BASENAME_SUPPLIED.conf";
 
@@ -408,105 +426,189 @@ public class FileUtil {
 		return found;
 	}
 
-	private synchronized static boolean browseFolderForSubtitles(File subFolder, File file, DLNAMediaInfo media, boolean usecache) {
+	private static boolean browseFolderForSubtitles(File subFolder, File file, DLNAMediaInfo media, boolean usecache) {
+		SubtitleFolder folder = getSubtitleFolder(subFolder, usecache);
+
+		if (folder == null) {
+			return false;
+		}
+
 		boolean found = false;
+		String fileName = FilenameUtils.getBaseName(file.getName()).toLowerCase();
+
+		// The media may be shared by the resource trees of several renderers
+		synchronized (media != null ? media : folder) {
+			for (int i = folder.indexOf(fileName); i < folder.names.length && folder.names[i].startsWith(fileName); i++) {
+				String fName = folder.names[i];
+				String ext = folder.extensions[i];
+				int a = fileName.length();
+				int b = fName.length() - ext.length() - 1;
+				String code = "";
+
+				if (a <= b) { // handling case with several dots: <video>..<extension>
+					code = fName.substring(a, b);
+				}
+
+				if (code.startsWith(".")) {
+					code = code.substring(1);
+				}
 
-		if (!usecache) {
-			cache = null;
+				found = addSubtitles(folder.files[i], ext, code, media) || found;
+			}
 		}
 
-		if (cache == null) {
-			cache = new HashMap<File, File[]>();
+		return found;
+	}
+
+	/**
+	 * Returns the subtitle files in a folder. The folder is only listed again
+	 * when it has been modified since it was listed last.
+	 *
+	 * @param folder The folder.
+	 * @param usecache Whether to list the folder again in any case.
+	 * @return The subtitle files, or null if the folder cannot be listed.
+	 */
+	private static SubtitleFolder getSubtitleFolder(File folder, boolean usecache) {
+		long modified = folder.lastModified();
+		SubtitleFolder subtitles;
+
+		synchronized (subtitleFolders) {
+			subtitles = subtitleFolders.get(folder);
+		}
+
+		if (subtitles != null && usecache && subtitles.modified == modified) {
+			return subtitles;
 		}
 
-		File[] allSubs = cache.get(subFolder);
-		if (allSubs == null) {
-			allSubs = subFolder.listFiles();
+		File[] files = folder.listFiles();
 
-			if (allSubs != null) {
-				cache.put(subFolder, allSubs);
-			}
+		if (files == null) {
+			return null;
 		}
 
-		String fileName = FilenameUtils.getBaseName(file.getName()).toLowerCase();
-		if (allSubs != null) {
-			for (File f : allSubs) {
-				if (f.isFile() && !f.isHidden()) {
-					String fName = f.getName().toLowerCase();
-					for (String ext : SubtitleType.getSupportedFileExtensions()) {
-						if (fName.length() > ext.length() && fName.startsWith(fileName) && endsWithIgnoreCase(fName, "." + ext)) {
-							int a = fileName.length();
-							int b = fName.length() - ext.length() - 1;
-							String code = "";
-
-							if (a <= b) { // handling case with several dots: <video>..<extension>
-								code = fName.substring(a, b);
-							}
+		subtitles = new SubtitleFolder(modified, files);
 
-							if (code.startsWith(".")) {
-								code = code.substring(1);
-							}
+		synchronized (subtitleFolders) {
+			subtitleFolders.put(folder, subtitles);
+		}
 
-							boolean exists = false;
-							if (media != null) {
-								for (DLNAMediaSubtitle sub : media.getSubtitleTracksList()) {
-									if (f.equals(sub.getExternalFile())) {
-										exists = true;
-									} else if (equalsIgnoreCase(ext, "idx") && sub.getType() == SubtitleType.MICRODVD) { // sub+idx => VOBSUB
-										sub.setType(SubtitleType.VOBSUB);
-										exists = true;
-									} else if (equalsIgnoreCase(ext, "sub") && sub.getType() == SubtitleType.VOBSUB) { // VOBSUB
-										try {
-											sub.setExternalFile(f);
-										} catch (FileNotFoundException ex) {
-											logger.warn("Exception during external subtitles scan.", ex);
-										}
-
-										exists = true;
-									}
-								}
-							}
+		return subtitles;
+	}
 
-							if (!exists) {
-								DLNAMediaSubtitle sub = new DLNAMediaSubtitle();
-								sub.setId(100 + (media == null ? 0 : media.getSubtitleTracksList().size())); // fake id, not used
-								if (code.length() == 0 || !Iso639.getCodeList().contains(code)) {
-									sub.setLang(DLNAMediaSubtitle.UND);
-									sub.setType(SubtitleType.valueOfFileExtension(ext));
-									if (code.length() > 0) {
-										sub.setFlavor(code);
-										if (sub.getFlavor().contains("-")) {
-											String flavorLang = sub.getFlavor().substring(0, sub.getFlavor().indexOf("-"));
-											String flavorTitle = sub.getFlavor().substring(sub.getFlavor().indexOf("-") + 1);
-											if (Iso639.getCodeList().contains(flavorLang)) {
-												sub.setLang(flavorLang);
-												sub.setFlavor(flavorTitle);
-											}
-										}
-									}
-								} else {
-									sub.setLang(code);
-									sub.setType(SubtitleType.valueOfFileExtension(ext));
-								}
-
-								try {
-									sub.setExternalFile(f);
-								} catch (FileNotFoundException ex) {
-									logger.warn("Exception during external subtitles scan.", ex);
-								}
-
-								found = true;
-								if (media != null) {
-									media.getSubtitleTracksList().add(sub);
-								}
-							}
-						}
+	/**
+	 * Adds an external subtitle file to the subtitle tracks of a video,
+	 * unless it is one of them already.
+	 *
+	 * @return Whether the file was added.
+	 */
+	private static boolean addSubtitles(File f, String ext, String code, DLNAMediaInfo media) {
+		boolean exists = false;
+		if (media != null) {
+			for (DLNAMediaSubtitle sub : media.getSubtitleTracksList()) {
+				if (f.equals(sub.getExternalFile())) {
+					exists = true;
+				} else if (equalsIgnoreCase(ext, "idx") && sub.getType() == SubtitleType.MICRODVD) { // sub+idx => VOBSUB
+					sub.setType(SubtitleType.VOBSUB);
+					exists = true;
+				} else if (equalsIgnoreCase(ext, "sub") && sub.getType() == SubtitleType.VOBSUB) { // VOBSUB
+					try {
+						sub.setExternalFile(f);
+					} catch (FileNotFoundException ex) {
+						logger.warn("Exception during external subtitles scan.", ex);
 					}
+
+					exists = true;
 				}
 			}
 		}
 
-		return found;
+		if (exists) {
+			return false;
+		}
+
+		DLNAMediaSubtitle sub = new DLNAMediaSubtitle();
+		sub.setId(100 + (media == null ? 0 : media.getSubtitleTracksList().size())); // fake id, not used
+		if (code.length() == 0 || !Iso639.isCode(code)) {
+			sub.setLang(DLNAMediaSubtitle.UND);
+			sub.setType(SubtitleType.valueOfFileExtension(ext));
+			if (code.length() > 0) {
+				sub.setFlavor(code);
+				if (sub.getFlavor().contains("-")) {
+					String flavorLang = sub.getFlavor().substring(0, sub.getFlavor().indexOf("-"));
+					String flavorTitle = sub.getFlavor().substring(sub.getFlavor().indexOf("-") + 1);
+					if (Iso639.isCode(flavorLang)) {
+						sub.setLang(flavorLang);
+						sub.setFlavor(flavorTitle);
+					}
+				}
+			}
+		} else {
+			sub.setLang(code);
+			sub.setType(SubtitleType.valueOfFileExtension(ext));
+		}
+
+		try {
+			sub.setExternalFile(f);
+		} catch (FileNotFoundException ex) {
+			logger.warn("Exception during external subtitles scan.", ex);
+		}
+
+		if (media != null) {
+			media.getSubtitleTracksList().add(sub);
+		}
+
+		return true;
+	}
+
+	/**
+	 * The subtitle files in a folder, sorted by their lower case names, so
+	 * that the subtitles of a video are found with a binary search for the
+	 * name of the video instead of by going through all files in the folder.
+	 */
+	private static final class SubtitleFolder {
+		private final long modified;
+		private final String[] names;
+		private final String[] extensions;
+		private final File[] files;
+
+		SubtitleFolder(long modified, File[] allFiles) {
+			this.modified = modified;
+			Map<String, File> subtitles = new TreeMap<String, File>();
+
+			for (File f : allFiles) {
+				String name = f.getName().toLowerCase();
+
+				// The extension is checked first, which spares checking the other files
+				if (
+					SubtitleType.getSupportedFileExtensions().contains(FilenameUtils.getExtension(name)) &&
+					name.length() > FilenameUtils.getExtension(name).length() + 1 &&
+					f.isFile() &&
+					!f.isHidden()
+				) {
+					subtitles.put(name, f);
+				}
+			}
+
+			names = new String[subtitles.size()];
+			extensions = new String[subtitles.size()];
+			files = new File[subtitles.size()];
+			int i = 0;
+
+			for (Map.Entry<String, File> subtitle : subtitles.entrySet()) {
+				names[i] = subtitle.getKey();
+				extensions[i] = FilenameUtils.getExtension(subtitle.getKey());
+				files[i] = subtitle.getValue();
+				i++;
+			}
+		}
+
+		/**
+		 * Returns the index of the first name that is not less than a prefix.
+		 */
+		int indexOf(String prefix) {
+			int i = Arrays.binarySearch(names, prefix);
+			return i >= 0 ? i : -i - 1;
+		}
 	}
 
 	/**
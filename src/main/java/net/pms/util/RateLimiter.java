@@ -0,0 +1,94 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits how often an operation is performed by any number of threads
+ * together, e.g. to keep background work from flooding a network share.
+ * Every call to {@link #acquire(int)} waits until the operations of the
+ * calls before it have had their share of time.
+ */
+public class RateLimiter {
+	private final long interval;
+	private final AtomicLong nextTurn = new AtomicLong(System.nanoTime());
+
+	/**
+	 * Creates a new limiter.
+	 *
+	 * @param permitsPerSecond The maximum number of operations per second, or
+	 * 			0 for no limit.
+	 */
+	public RateLimiter(int permitsPerSecond) {
+		interval = permitsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / permitsPerSecond : 0;
+	}
+
+	/**
+	 * Waits until the next operation may be performed.
+	 *
+	 * @return False if the thread was interrupted while waiting, true
+	 * 			otherwise.
+	 */
+	public boolean acquire() {
+		return acquire(1);
+	}
+
+	/**
+	 * Waits until a number of operations may be performed. The operations
+	 * may also have been performed already, in which case the next caller
+	 * waits for them instead.
+	 *
+	 * @param permits The number of operations.
+	 * @return False if the thread was interrupted while waiting, true
+	 * 			otherwise.
+	 */
+	public boolean acquire(int permits) {
+		if (interval == 0 || permits <= 0) {
+			return true;
+		}
+
+		long turn;
+
+		while (true) {
+			long next = nextTurn.get();
+
+			// Time that went by unused is not made up for with a burst
+			turn = Math.max(next, System.nanoTime());
+
+			if (nextTurn.compareAndSet(next, turn + permits * interval)) {
+				break;
+			}
+		}
+
+		long delay = turn - System.nanoTime();
+
+		if (delay > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
@@ -19,6 +19,7 @@
 
 package net.pms.configuration;
 
+import static net.pms.configuration.RendererConfiguration.getRendererConfiguration;
 import static net.pms.configuration.RendererConfiguration.getRendererConfigurationBySocketAddress;
 import static net.pms.configuration.RendererConfiguration.getRendererConfigurationByUA;
 import static net.pms.configuration.RendererConfiguration.getRendererConfigurationByUAAHH;
@@ -366,4 +367,37 @@ public class RendererConfigurationTest {
 		assertEquals("PlayStation 3", conf.getRendererName());
 
 	}
+
+	/**
+	 * Test {@link RendererConfiguration#getRendererConfiguration(InetAddress, String)}
+	 * @throws UnknownHostException
+	 */
+	@Test
+	public void testGetByAddressAndUserAgent() throws UnknownHostException {
+		PmsConfiguration pmsConf = null;
+
+		try {
+			pmsConf = new PmsConfiguration(false);
+		} catch (ConfigurationException e) {
+			// This should be impossible since no configuration file will be loaded.
+		}
+
+		loadRendererConfigurations(pmsConf);
+		pmsConf.setRendererForceIp("PlayStation 3@192.168.1.1");
+		InetAddress address = InetAddress.getByName("192.168.1.1");
+		assertNull(getRendererConfiguration(address, "PLAYSTATION 3"));
+
+		RendererConfiguration conf = getRendererConfigurationBySocketAddress(address);
+		conf.associate(address, "PLAYSTATION 3");
+		conf = getRendererConfiguration(address, "PLAYSTATION 3");
+		assertNotNull(conf);
+		assertEquals("PlayStation 3", conf.getRendererName());
+
+		// Other devices at the same address are recognized separately
+		assertNull(getRendererConfiguration(address, "Unknown Renderer"));
+
+		// Changing the forced IP addresses forgets the recognized renderers
+		pmsConf.setRendererForceIp("");
+		assertNull(getRendererConfiguration(address, "PLAYSTATION 3"));
+	}
 }
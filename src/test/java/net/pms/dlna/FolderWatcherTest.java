@@ -0,0 +1,68 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import com.sun.jna.Platform;
+import java.io.File;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class FolderWatcherTest {
+	@Test
+	public void testDisabledWatcherWatchesNothing() {
+		FolderWatcher watcher = new FolderWatcher(false);
+		File folder = new File(System.getProperty("java.io.tmpdir"));
+		watcher.watch(folder);
+		assertThat(watcher.getLastChange(folder)).isEqualTo(-1);
+	}
+
+	@Test
+	public void testChangesInWatchedFolderAreRecorded() throws Exception {
+		assumeTrue(Platform.isLinux());
+		File folder = File.createTempFile("pms-watch", "");
+		assertThat(folder.delete()).isTrue();
+		assertThat(folder.mkdir()).isTrue();
+
+		try {
+			FolderWatcher watcher = new FolderWatcher(true);
+			watcher.watch(folder);
+			long watched = watcher.getLastChange(folder);
+			assumeTrue(watched != -1);
+			assertThat(watched).isEqualTo(0);
+
+			int systemUpdateId = DLNAResource.getSystemUpdateId();
+			Thread.sleep(20);
+			FileUtils.writeStringToFile(new File(folder, "movie.mkv"), "test");
+
+			long deadline = System.currentTimeMillis() + 5000;
+
+			while ((watcher.getLastChange(folder) == watched || DLNAResource.getSystemUpdateId() == systemUpdateId) && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+
+			assertThat(watcher.getLastChange(folder)).isGreaterThan(watched);
+			assertThat(DLNAResource.getSystemUpdateId()).isGreaterThan(systemUpdateId);
+		} finally {
+			FileUtils.deleteQuietly(folder);
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.pms.dlna.virtual.VirtualFolder;
+import net.pms.newgui.DummyFrame;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class LibraryScannerTest {
+	/**
+	 * Folder that adds a number of files and subfolders when it is
+	 * discovered, and counts how often that happens.
+	 */
+	private static class TestFolder extends VirtualFolder {
+		private final int depth;
+		private final AtomicInteger discoverCount;
+
+		TestFolder(String name, int depth, AtomicInteger discoverCount) {
+			super(name, null);
+			this.depth = depth;
+			this.discoverCount = discoverCount;
+		}
+
+		@Override
+		public void discoverChildren() {
+			discoverCount.incrementAndGet();
+
+			for (int i = 0; i < 3; i++) {
+				addChild(new TestFile("file" + i));
+			}
+
+			if (depth > 0) {
+				for (int i = 0; i < 3; i++) {
+					addChild(new TestFolder("folder" + i, depth - 1, discoverCount));
+				}
+			}
+		}
+
+		@Override
+		public boolean allowScan() {
+			return true;
+		}
+	}
+
+	private static class TestFile extends VirtualFolder {
+		TestFile(String name) {
+			super(name, null);
+		}
+
+		@Override
+		public boolean isFolder() {
+			return false;
+		}
+	}
+
+	private static VirtualFolder createRoot(AtomicInteger discoverCount) {
+		VirtualFolder root = new VirtualFolder("root", null);
+		root.addChild(new TestFolder("a", 2, discoverCount));
+		root.addChild(new TestFolder("b", 2, discoverCount));
+		return root;
+	}
+
+	@Test
+	public void testAllFoldersAreScanned() {
+		AtomicInteger discoverCount = new AtomicInteger();
+		VirtualFolder root = createRoot(discoverCount);
+		LibraryScanner scanner = new LibraryScanner(4, 0, null, new DummyFrame());
+
+		assertThat(scanner.scan(root)).isTrue();
+
+		// Two trees of 1 + 3 + 9 folders with 3 files each
+		assertThat(discoverCount.get()).isEqualTo(26);
+		assertThat(scanner.getFileCount()).isEqualTo(78);
+
+		// The children of scanned folders are dropped
+		for (DLNAResource child : root.getChildren()) {
+			assertThat(child.getChildren()).isEmpty();
+		}
+	}
+
+	@Test
+	public void testStoppedScanIsIncomplete() {
+		AtomicInteger discoverCount = new AtomicInteger();
+		final LibraryScanner scanner = new LibraryScanner(1, 20, null, new DummyFrame());
+
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+				}
+
+				scanner.stop();
+			}
+		}.start();
+
+		assertThat(scanner.scan(createRoot(discoverCount))).isFalse();
+		assertThat(discoverCount.get()).isLessThan(26);
+	}
+}
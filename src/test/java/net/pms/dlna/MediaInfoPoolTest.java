@@ -0,0 +1,71 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class MediaInfoPoolTest {
+	@Test
+	public void testHandlesAreReused() throws Exception {
+		MediaInfo first = MediaInfoPool.createHandle();
+		MediaInfoPool pool = new MediaInfoPool(first, 2);
+
+		MediaInfo handle = pool.acquire();
+		assertThat(handle).isSameAs(first);
+		pool.release(handle);
+
+		assertThat(pool.acquire()).isSameAs(first);
+		assertThat(pool.getWaitCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void testAcquireWaitsWhenAllHandlesAreInUse() throws Exception {
+		final MediaInfoPool pool = new MediaInfoPool(MediaInfoPool.createHandle(), 2);
+		final MediaInfo first = pool.acquire();
+		MediaInfo second = pool.acquire();
+		assertThat(second).isNotSameAs(first);
+
+		final AtomicReference<MediaInfo> third = new AtomicReference<MediaInfo>();
+		final CountDownLatch acquired = new CountDownLatch(1);
+		Thread waiter = new Thread() {
+			@Override
+			public void run() {
+				try {
+					third.set(pool.acquire());
+					acquired.countDown();
+				} catch (InterruptedException e) {
+				}
+			}
+		};
+		waiter.start();
+
+		assertThat(acquired.await(200, TimeUnit.MILLISECONDS)).isFalse();
+		pool.release(first);
+		assertThat(acquired.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(third.get()).isSameAs(first);
+		assertThat(pool.getWaitCount()).isEqualTo(1);
+		assertThat(pool.getMaxWaitTime()).isGreaterThanOrEqualTo(100);
+	}
+}
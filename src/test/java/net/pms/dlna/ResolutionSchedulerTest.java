@@ -0,0 +1,190 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.pms.dlna.virtual.VirtualFolder;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ResolutionSchedulerTest {
+	/**
+	 * Folder that counts how often it is resolved and can be made to block.
+	 */
+	private static class CountingFolder extends VirtualFolder {
+		private final AtomicInteger resolveCount;
+		private final CountDownLatch release;
+
+		CountingFolder(AtomicInteger resolveCount, CountDownLatch release) {
+			super("test", null);
+			this.resolveCount = resolveCount;
+			this.release = release;
+		}
+
+		@Override
+		protected void resolveOnce() {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+			}
+
+			resolveCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Folder that records how many folders are being resolved at once.
+	 */
+	private static class ConcurrencyFolder extends VirtualFolder {
+		private final AtomicInteger active;
+		private final AtomicInteger maximum;
+
+		ConcurrencyFolder(AtomicInteger active, AtomicInteger maximum) {
+			super("test", null);
+			this.active = active;
+			this.maximum = maximum;
+		}
+
+		@Override
+		protected void resolveOnce() {
+			int count = active.incrementAndGet();
+
+			synchronized (maximum) {
+				maximum.set(Math.max(maximum.get(), count));
+			}
+
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+			}
+
+			active.decrementAndGet();
+		}
+	}
+
+	private static List<DLNAResource> createFolders(int count, AtomicInteger resolveCount, CountDownLatch release) {
+		List<DLNAResource> folders = new ArrayList<DLNAResource>();
+
+		for (int i = 0; i < count; i++) {
+			folders.add(new CountingFolder(resolveCount, release));
+		}
+
+		return folders;
+	}
+
+	@Test
+	public void testRequestedResourcesAreResolved() {
+		ResolutionScheduler scheduler = new ResolutionScheduler(3);
+		AtomicInteger resolveCount = new AtomicInteger();
+		List<DLNAResource> folders = createFolders(10, resolveCount, new CountDownLatch(0));
+
+		assertThat(scheduler.resolve(folders, null, 5, TimeUnit.SECONDS)).isTrue();
+		assertThat(resolveCount.get()).isEqualTo(10);
+
+		for (DLNAResource folder : folders) {
+			assertThat(folder.isResolved()).isTrue();
+		}
+
+		// Resolved resources are not resolved again
+		assertThat(scheduler.resolve(folders, null, 0, TimeUnit.SECONDS)).isTrue();
+		assertThat(resolveCount.get()).isEqualTo(10);
+	}
+
+	@Test
+	public void testResolvingContinuesAfterTimeout() throws Exception {
+		ResolutionScheduler scheduler = new ResolutionScheduler(2);
+		AtomicInteger resolveCount = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		List<DLNAResource> folders = createFolders(4, resolveCount, release);
+
+		assertThat(scheduler.resolve(folders, null, 100, TimeUnit.MILLISECONDS)).isFalse();
+		release.countDown();
+
+		long deadline = System.currentTimeMillis() + 5000;
+
+		while (resolveCount.get() < 4 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		assertThat(resolveCount.get()).isEqualTo(4);
+	}
+
+	@Test
+	public void testRequestedResourcesGoAheadOfBackgroundWork() {
+		ResolutionScheduler scheduler = new ResolutionScheduler(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		// Keep the only thread busy, so that everything else is queued
+		scheduler.resolveInBackground(createFolders(1, new AtomicInteger(), release), null);
+
+		AtomicInteger backgroundCount = new AtomicInteger();
+		CountDownLatch releaseBackground = new CountDownLatch(1);
+		scheduler.resolveInBackground(createFolders(100, backgroundCount, releaseBackground), null);
+
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+				}
+
+				release.countDown();
+			}
+		}.start();
+
+		AtomicInteger requestedCount = new AtomicInteger();
+		List<DLNAResource> requested = createFolders(5, requestedCount, new CountDownLatch(0));
+
+		assertThat(scheduler.resolve(requested, null, 5, TimeUnit.SECONDS)).isTrue();
+		assertThat(requestedCount.get()).isEqualTo(5);
+		assertThat(backgroundCount.get()).isEqualTo(0);
+		releaseBackground.countDown();
+	}
+
+	@Test
+	public void testSerialResourcesAreResolvedOneAtATime() {
+		ResolutionScheduler scheduler = new ResolutionScheduler(3);
+		Object drive = new Object();
+		AtomicInteger active = new AtomicInteger();
+		AtomicInteger maximum = new AtomicInteger();
+		List<DLNAResource> background = new ArrayList<DLNAResource>();
+		List<DLNAResource> requested = new ArrayList<DLNAResource>();
+
+		for (int i = 0; i < 10; i++) {
+			background.add(new ConcurrencyFolder(active, maximum));
+		}
+
+		for (int i = 0; i < 5; i++) {
+			requested.add(new ConcurrencyFolder(active, maximum));
+		}
+
+		scheduler.resolveInBackground(background, drive);
+		assertThat(scheduler.resolve(requested, drive, 5, TimeUnit.SECONDS)).isTrue();
+		assertThat(scheduler.resolve(background, drive, 5, TimeUnit.SECONDS)).isTrue();
+		assertThat(maximum.get()).isEqualTo(1);
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Pattern;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SearchCriteriaTest {
+	private static final String ITEMS = "F.TYPE IN (1, 2, 4) AND ";
+
+	@Test
+	public void testAll() {
+		SearchCriteria criteria = SearchCriteria.parse(" * ");
+		assertThat(criteria.getCondition()).isEqualTo(ITEMS + "(1 = 1)");
+		assertThat(criteria.getParameters()).isEmpty();
+	}
+
+	@Test
+	public void testTitle() {
+		SearchCriteria criteria = SearchCriteria.parse("dc:title contains \"Abbey_Road\"");
+		assertThat(criteria.getCondition()).isEqualTo(ITEMS + "(" +
+			"F.ID IN (SELECT FILEID FROM SEARCH_WORDS WHERE WORD LIKE ?) AND " +
+			"F.ID IN (SELECT FILEID FROM SEARCH_WORDS WHERE WORD LIKE ?))");
+		assertThat(criteria.getParameters()).containsExactly("abbey%", "road%");
+	}
+
+	@Test
+	public void testExactTitle() {
+		SearchCriteria criteria = SearchCriteria.parse("dc:title = \"Abbey Road\"");
+		assertThat(criteria.getCondition()).isEqualTo(ITEMS + "(" +
+			"F.ID IN (SELECT FILEID FROM SEARCH_WORDS WHERE WORD LIKE ?) AND " +
+			"F.ID IN (SELECT FILEID FROM SEARCH_WORDS WHERE WORD LIKE ?) AND " +
+			"(F.ID IN (SELECT FILEID FROM AUDIOTRACKS WHERE SONGNAME = ?) OR F.FILENAME REGEXP ?))");
+		assertThat(criteria.getParameters()).hasSize(4);
+
+		Pattern title = Pattern.compile(criteria.getParameters().get(3));
+		assertThat(title.matcher("/music/Abbey Road.flac").find()).isTrue();
+		assertThat(title.matcher("C:\\music\\Abbey Road.mp3").find()).isTrue();
+		assertThat(title.matcher("/music/Abbey Road Medley.flac").find()).isFalse();
+		assertThat(title.matcher("/music/The Abbey Road.flac").find()).isFalse();
+		assertThat(title.matcher("/music/Abbey Road.live.flac").find()).isFalse();
+	}
+
+	@Test
+	public void testWithin() {
+		File folder = new File(System.getProperty("java.io.tmpdir"));
+		File file = new File(folder, "50%_off.mkv");
+		SearchCriteria criteria = SearchCriteria.parse("upnp:genre = \"a\"").within(Arrays.asList(folder, file));
+		assertThat(criteria.getCondition()).isEqualTo(ITEMS + "(" +
+			"(F.ID IN (SELECT FILEID FROM AUDIOTRACKS WHERE GENRE = ?)) AND " +
+			"(F.FILENAME LIKE ? OR F.FILENAME = ?))");
+		assertThat(criteria.getParameters()).containsExactly(
+			"a",
+			folder.getAbsolutePath().replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + File.separator.replace("\\", "\\\\") + "%",
+			file.getAbsolutePath()
+		);
+
+		assertThat(SearchCriteria.parse("*").within(Collections.<File>emptyList()).getCondition()).isEqualTo(ITEMS + "((1 = 1) AND (1 = 0))");
+	}
+
+	@Test
+	public void testClassAndArtist() {
+		SearchCriteria criteria = SearchCriteria.parse(
+			"(upnp:class derivedfrom \"object.item.audioItem\" or upnp:class=\"object.item.videoItem\") and " +
+			"upnp:artist = \"AC\\\\DC \\\"live\\\"\" and @refID exists false"
+		);
+		assertThat(criteria.getCondition()).isEqualTo(ITEMS + "(" +
+			"(((F.TYPE IN (1)) OR (F.TYPE IN (4))) AND " +
+			"(F.ID IN (SELECT FILEID FROM AUDIOTRACKS WHERE ARTIST = ?))) AND " +
+			"(NOT (1 = 0)))");
+		assertThat(criteria.getParameters()).containsExactly("AC\\DC \"live\"");
+	}
+
+	@Test
+	public void testPrecedence() {
+		SearchCriteria criteria = SearchCriteria.parse("upnp:genre = \"a\" or upnp:album contains \"50%\" and upnp:class = \"object.container\"");
+		assertThat(criteria.getCondition()).isEqualTo(ITEMS + "(" +
+			"(F.ID IN (SELECT FILEID FROM AUDIOTRACKS WHERE GENRE = ?)) OR " +
+			"((F.ID IN (SELECT FILEID FROM AUDIOTRACKS WHERE LOWER(ALBUM) LIKE ?)) AND (1 = 0)))");
+		assertThat(criteria.getParameters()).containsExactly("a", "%50\\%%");
+	}
+
+	@Test
+	public void testUnknownProperty() {
+		assertThat(SearchCriteria.parse("dc:date >= \"2003\"").getCondition()).isEqualTo(ITEMS + "(1 = 0)");
+	}
+
+	@Test
+	public void testInvalid() {
+		for (String criteria : new String[] {
+			"dc:title contains",
+			"dc:title contains love",
+			"(dc:title contains \"love\"",
+			"dc:title contains \"love",
+			"dc:title contains \"love\" \"you\"",
+			"upnp:artist exists maybe"
+		}) {
+			try {
+				SearchCriteria.parse(criteria);
+				throw new AssertionError("No exception for " + criteria);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+}
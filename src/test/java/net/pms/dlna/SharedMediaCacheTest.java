@@ -0,0 +1,58 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SharedMediaCacheTest {
+	@Test
+	public void testMediaIsReusedUntilFileIsModified() {
+		SharedMediaCache cache = new SharedMediaCache();
+		DLNAMediaInfo media = new DLNAMediaInfo();
+		media.setContainer("matroska");
+		cache.put("/media/movie.mkv", 1000, media);
+
+		DLNAMediaInfo copy = cache.get("/media/movie.mkv", 1000);
+		assertThat(copy.getContainer()).isEqualTo("matroska");
+		assertThat(cache.get("/media/movie.mkv", 2000)).isNull();
+		assertThat(cache.get("/media/other.mkv", 1000)).isNull();
+	}
+
+	@Test
+	public void testEveryTreeGetsACopy() {
+		SharedMediaCache cache = new SharedMediaCache();
+		DLNAMediaInfo media = new DLNAMediaInfo();
+		cache.put("/media/movie.mkv", 1000, media);
+
+		DLNAMediaInfo copy = cache.get("/media/movie.mkv", 1000);
+		assertThat(copy).isNotSameAs(media);
+		media.setThumbready(true);
+		copy.setThumbready(false);
+		assertThat(media.isThumbready()).isTrue();
+		assertThat(cache.get("/media/movie.mkv", 1000).isThumbready()).isTrue();
+	}
+
+	@Test
+	public void testParsersAreKeptApart() {
+		assertThat(SharedMediaCache.getKey("/media/movie.mkv", true))
+			.isNotEqualTo(SharedMediaCache.getKey("/media/movie.mkv", false));
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ThumbnailCacheTest {
+	private File directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = File.createTempFile("thumbnails", "");
+		directory.delete();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	@Test
+	public void testThumbnailsAreKeptAcrossInstances() {
+		ThumbnailCache cache = new ThumbnailCache(directory, 1024);
+		assertThat(cache.get("/a.mkv")).isNull();
+		cache.put("/a.mkv", new byte[] {1, 2, 3});
+		assertThat(cache.get("/a.mkv")).isEqualTo(new byte[] {1, 2, 3});
+
+		cache = new ThumbnailCache(directory, 1024);
+		assertThat(cache.get("/a.mkv")).isEqualTo(new byte[] {1, 2, 3});
+		assertThat(cache.getSize()).isEqualTo(3);
+	}
+
+	@Test
+	public void testLeastRecentlyUsedThumbnailsAreDeleted() {
+		ThumbnailCache cache = new ThumbnailCache(directory, 250);
+		cache.put("a", new byte[100]);
+		cache.put("b", new byte[100]);
+		cache.get("a");
+		cache.put("c", new byte[100]);
+
+		assertThat(cache.get("a")).isNotNull();
+		assertThat(cache.get("b")).isNull();
+		assertThat(cache.get("c")).isNotNull();
+		assertThat(cache.getSize()).isEqualTo(200);
+		assertThat(directory.list()).hasSize(2);
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.pms.dlna.virtual.VirtualFolder;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ThumbnailServiceTest {
+	/**
+	 * File that counts how often its thumbnail is generated, which can be
+	 * made to block.
+	 */
+	private static class ThumbnailFile extends VirtualFolder {
+		private final AtomicInteger generateCount;
+		private final CountDownLatch release;
+		private volatile int order;
+
+		ThumbnailFile(DLNAMediaInfo media, AtomicInteger generateCount, CountDownLatch release) {
+			super("test", null);
+			this.generateCount = generateCount;
+			this.release = release;
+			setMedia(media);
+		}
+
+		@Override
+		public boolean isFolder() {
+			return false;
+		}
+
+		@Override
+		public void checkThumbnail() {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+			}
+
+			order = generateCount.incrementAndGet();
+			getMedia().setThumb(new byte[] {1});
+			getMedia().setThumbready(true);
+		}
+	}
+
+	private static DLNAMediaInfo createMedia() {
+		DLNAMediaInfo media = new DLNAMediaInfo();
+		media.setThumbready(false);
+		return media;
+	}
+
+	@Test
+	public void testRequestsForTheSameMediaAreCoalesced() throws InterruptedException {
+		final ThumbnailService service = new ThumbnailService(4, null);
+		final AtomicInteger generateCount = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		DLNAMediaInfo media = createMedia();
+		final List<DLNAResource> resources = new ArrayList<DLNAResource>();
+
+		for (int i = 0; i < 4; i++) {
+			resources.add(new ThumbnailFile(media, generateCount, release));
+		}
+
+		final AtomicInteger readyCount = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>();
+
+		for (final DLNAResource resource : resources) {
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					if (service.generate(resource, 10, TimeUnit.SECONDS)) {
+						readyCount.incrementAndGet();
+					}
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+
+		Thread.sleep(100);
+		release.countDown();
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertThat(readyCount.get()).isEqualTo(4);
+		assertThat(generateCount.get()).isEqualTo(1);
+		assertThat(media.getThumb()).isEqualTo(new byte[] {1});
+	}
+
+	@Test
+	public void testGenerateTimesOut() throws InterruptedException {
+		ThumbnailService service = new ThumbnailService(1, null);
+		AtomicInteger generateCount = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		ThumbnailFile file = new ThumbnailFile(createMedia(), generateCount, release);
+
+		assertThat(service.generate(file, 50, TimeUnit.MILLISECONDS)).isFalse();
+
+		// The thumbnail is still generated, and ready for the next request
+		release.countDown();
+		assertThat(service.generate(file, 10, TimeUnit.SECONDS)).isTrue();
+		assertThat(generateCount.get()).isEqualTo(1);
+	}
+
+	@Test
+	public void testRequestedThumbnailsGoFirst() throws InterruptedException {
+		ThumbnailService service = new ThumbnailService(1, null);
+		AtomicInteger generateCount = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+		List<DLNAResource> background = new ArrayList<DLNAResource>();
+
+		for (int i = 0; i < 5; i++) {
+			background.add(new ThumbnailFile(createMedia(), generateCount, release));
+		}
+
+		service.generateInBackground(background);
+
+		// Released once the requested thumbnail is queued too
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+				}
+
+				release.countDown();
+			}
+		}).start();
+
+		ThumbnailFile requested = new ThumbnailFile(createMedia(), generateCount, release);
+		assertThat(service.generate(requested, 10, TimeUnit.SECONDS)).isTrue();
+
+		// Only the background thumbnail that was being generated went first
+		assertThat(requested.order).isEqualTo(2);
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.pms.io.OutputParams;
+import net.pms.io.ProcessWrapper;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TranscodeSchedulerTest {
+	/**
+	 * Process that runs until it is stopped.
+	 */
+	private static class BlockingProcess extends Thread implements ProcessWrapper {
+		private final CountDownLatch stopped = new CountDownLatch(1);
+
+		@Override
+		public void run() {
+			try {
+				stopped.await();
+			} catch (InterruptedException e) {
+			}
+		}
+
+		@Override
+		public InputStream getInputStream(long seek) {
+			return null;
+		}
+
+		@Override
+		public List<String> getResults() {
+			return null;
+		}
+
+		@Override
+		public boolean isDestroyed() {
+			return false;
+		}
+
+		@Override
+		public void runInNewThread() {
+			start();
+		}
+
+		@Override
+		public void runInSameThread() {
+			run();
+		}
+
+		@Override
+		public void stopProcess() {
+			stopped.countDown();
+		}
+
+		@Override
+		public boolean isReadyToStop() {
+			return false;
+		}
+
+		@Override
+		public void setReadyToStop(boolean nullable) {
+		}
+	}
+
+	private static BlockingProcess start(TranscodeScheduler scheduler, OutputParams params) {
+		scheduler.admit(params, null);
+		BlockingProcess process = new BlockingProcess();
+		process.runInNewThread();
+		scheduler.started(params, process);
+		return process;
+	}
+
+	@Test
+	public void testCoresAreDividedAcrossTranscodes() {
+		TranscodeScheduler scheduler = new TranscodeScheduler(8, 0, 0);
+		OutputParams first = new OutputParams(null);
+		OutputParams second = new OutputParams(null);
+		OutputParams third = new OutputParams(null);
+
+		BlockingProcess process = start(scheduler, first);
+		start(scheduler, second);
+		start(scheduler, third);
+
+		assertThat(first.threads).isEqualTo(8);
+		assertThat(second.threads).isEqualTo(4);
+		assertThat(third.threads).isEqualTo(2);
+		assertThat(first.degraded).isFalse();
+		assertThat(first.getThreads(2)).isEqualTo(2);
+
+		// A transcode that replaces another one does not count it
+		OutputParams seek = new OutputParams(null);
+		scheduler.admit(seek, process);
+		scheduler.started(seek, null);
+		assertThat(seek.threads).isEqualTo(2);
+		assertThat(scheduler.getActiveCount()).isEqualTo(3);
+	}
+
+	@Test
+	public void testCoresOfEndedTranscodesAreGivenToTheNext() throws Exception {
+		TranscodeScheduler scheduler = new TranscodeScheduler(8, 0, 0);
+		BlockingProcess first = start(scheduler, new OutputParams(null));
+		BlockingProcess second = start(scheduler, new OutputParams(null));
+		start(scheduler, new OutputParams(null));
+
+		first.stopProcess();
+		second.stopProcess();
+		first.join();
+		second.join();
+
+		for (int i = 0; i < 50 && scheduler.getActiveCount() > 1; i++) {
+			Thread.sleep(10);
+		}
+
+		assertThat(scheduler.getActiveCount()).isEqualTo(1);
+
+		// The third transcode holds 2 of the 8 cores
+		OutputParams params = new OutputParams(null);
+		start(scheduler, params);
+		assertThat(params.threads).isEqualTo(6);
+	}
+
+	@Test
+	public void testDegradedTranscodeIsCappedEvenWithoutMaximumBitrate() {
+		OutputParams params = new OutputParams(null);
+		assertThat(params.getMaximumBitrate(0, 20)).isEqualTo(0);
+		assertThat(params.getMaximumBitrate(40, 20)).isEqualTo(40);
+
+		params.degraded = true;
+		assertThat(params.getMaximumBitrate(0, 20)).isEqualTo(20);
+		assertThat(params.getMaximumBitrate(40, 20)).isEqualTo(20);
+		assertThat(params.getMaximumBitrate(10, 20)).isEqualTo(10);
+	}
+
+	@Test
+	public void testTranscodeIsDegradedAfterQueueTimeout() {
+		TranscodeScheduler scheduler = new TranscodeScheduler(4, 1, 100);
+		start(scheduler, new OutputParams(null));
+
+		OutputParams params = new OutputParams(null);
+		long start = System.currentTimeMillis();
+		start(scheduler, params);
+
+		assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(100);
+		assertThat(params.degraded).isTrue();
+		assertThat(scheduler.getActiveCount()).isEqualTo(2);
+		assertThat(scheduler.getQueueDepth()).isEqualTo(0);
+	}
+
+	@Test
+	public void testQueuedTranscodeIsAdmittedWhenAnotherEnds() throws Exception {
+		final TranscodeScheduler scheduler = new TranscodeScheduler(4, 1, TimeUnit.SECONDS.toMillis(30));
+		BlockingProcess process = start(scheduler, new OutputParams(null));
+		final OutputParams params = new OutputParams(null);
+		final CountDownLatch admitted = new CountDownLatch(1);
+
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				scheduler.admit(params, null);
+				admitted.countDown();
+			}
+		}).start();
+
+		assertThat(admitted.await(200, TimeUnit.MILLISECONDS)).isFalse();
+		assertThat(scheduler.getQueueDepth()).isEqualTo(1);
+
+		process.stopProcess();
+
+		assertThat(admitted.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(params.degraded).isFalse();
+		assertThat(params.threads).isEqualTo(4);
+	}
+}
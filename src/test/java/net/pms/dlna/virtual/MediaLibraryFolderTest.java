@@ -0,0 +1,46 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna.virtual;
+
+import java.util.Arrays;
+import net.pms.dlna.virtual.MediaLibraryFolder.Query;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class MediaLibraryFolderTest {
+	@Test
+	public void testQuotedPlaceholdersAreBound() {
+		Query query = MediaLibraryFolder.getQuery("SELECT A FROM T WHERE B = '${1}' AND C = ${0}");
+		assertThat(query.sql).isEqualTo("SELECT A FROM T WHERE B = ? AND C = ?");
+		assertThat(query.levels).isEqualTo(Arrays.asList(1, 0));
+	}
+
+	@Test
+	public void testPlaceholdersInsideLiteralsAreConcatenated() {
+		Query query = MediaLibraryFolder.getQuery("SELECT A FROM T WHERE B LIKE '%${0}%' AND C = 'it''s' AND D = 'x'");
+		assertThat(query.sql).isEqualTo("SELECT A FROM T WHERE B LIKE ('%' || ? || '%') AND C = 'it''s' AND D = 'x'");
+		assertThat(query.levels).isEqualTo(Arrays.asList(0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnterminatedLiteralIsRejected() {
+		MediaLibraryFolder.getQuery("SELECT A FROM T WHERE B = '${0}");
+	}
+}
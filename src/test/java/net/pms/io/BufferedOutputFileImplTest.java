@@ -0,0 +1,274 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.pms.PMS;
+import net.pms.configuration.PmsConfiguration;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BufferedOutputFileImplTest {
+	private static final int LENGTH = 4 * 1024 * 1024;
+
+	@BeforeClass
+	public static void setUpClass() throws ConfigurationException {
+		if (PMS.getConfiguration() == null) {
+			PMS.setConfiguration(new PmsConfiguration(false));
+		}
+	}
+
+	private static byte valueAt(long position) {
+		return (byte) (position % 251);
+	}
+
+	/**
+	 * Reads a stream to its end, pausing after the first bytes, and returns
+	 * the number of bytes that had the expected value.
+	 */
+	private static Thread read(final InputStream input, final long pause, final AtomicLong correct) {
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				byte[] b = new byte[32 * 1024];
+				long position = 0;
+				int n;
+
+				try {
+					while ((n = input.read(b, 0, position == 0 ? 10 : b.length)) > -1) {
+						for (int i = 0; i < n; i++) {
+							if (b[i] == valueAt(position + i)) {
+								correct.incrementAndGet();
+							}
+						}
+
+						if (position == 0) {
+							Thread.sleep(pause);
+						}
+
+						position += n;
+					}
+				} catch (IOException e) {
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Writes the expected values to a buffer and closes it, in a daemon
+	 * thread that may be left blocked when a test fails.
+	 */
+	private static Thread write(final BufferedOutputFileImpl output, final long length) {
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				byte[] chunk = new byte[64 * 1024];
+
+				try {
+					for (long position = 0; position < length; position += chunk.length) {
+						for (int i = 0; i < chunk.length; i++) {
+							chunk[i] = valueAt(position + i);
+						}
+
+						output.write(chunk, 0, chunk.length);
+					}
+
+					output.close();
+				} catch (IOException e) {
+				}
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	private static BufferedOutputFileImpl newOutput() {
+		OutputParams params = new OutputParams(PMS.getConfiguration());
+		params.minBufferSize = 0;
+		params.maxBufferSize = 1;
+		params.secondread_minsize = 0;
+		params.hidebuffer = true;
+		return new BufferedOutputFileImpl(params);
+	}
+
+	/**
+	 * Writes a few bytes to a buffer, or closes it, after a delay.
+	 */
+	private static void later(final BufferedOutputFileImpl output, final boolean close) {
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+
+					if (close) {
+						output.close();
+					} else {
+						output.write(new byte[10], 0, 10);
+					}
+				} catch (IOException e) {
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Test
+	public void testWaitForDataReturnsOnceDataIsWritten() throws Exception {
+		BufferedOutputFileImpl output = newOutput();
+		later(output, false);
+		long start = System.currentTimeMillis();
+
+		assertThat(output.waitForData(10000)).isTrue();
+		assertThat(System.currentTimeMillis() - start).isLessThan(5000);
+		assertThat(output.getWriteCount()).isEqualTo(10);
+	}
+
+	@Test
+	public void testWaitForDataReturnsAtTheEndOfTheStream() throws Exception {
+		BufferedOutputFileImpl output = newOutput();
+		later(output, true);
+		long start = System.currentTimeMillis();
+
+		assertThat(output.waitForData(10000)).isFalse();
+		assertThat(System.currentTimeMillis() - start).isLessThan(5000);
+	}
+
+	@Test
+	public void testWaitForDataTimesOut() throws Exception {
+		BufferedOutputFileImpl output = newOutput();
+		long start = System.currentTimeMillis();
+
+		assertThat(output.waitForData(200)).isFalse();
+		assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(190);
+	}
+
+	@Test
+	public void testWriterWaitsForTheSlowestReader() throws Exception {
+		OutputParams params = new OutputParams(PMS.getConfiguration());
+		params.minBufferSize = 0;
+		params.maxBufferSize = 1;
+		params.secondread_minsize = 0;
+		params.hidebuffer = true;
+		BufferedOutputFileImpl output = new BufferedOutputFileImpl(params);
+
+		// The renderer that started the transcode pauses, the one that
+		// joined it reads on
+		AtomicLong slowCorrect = new AtomicLong();
+		AtomicLong fastCorrect = new AtomicLong();
+		Thread slow = read(output.getInputStream(0), 1000, slowCorrect);
+		Thread fast = read(output.getSharedInputStream(0), 0, fastCorrect);
+
+		write(output, LENGTH);
+		slow.join(10000);
+		fast.join(10000);
+
+		assertThat(slowCorrect.get()).isEqualTo(LENGTH);
+		assertThat(fastCorrect.get()).isEqualTo(LENGTH);
+	}
+
+	@Test
+	public void testWriterDoesNotWaitForAnEarlierConnection() throws Exception {
+		OutputParams params = new OutputParams(PMS.getConfiguration());
+		params.minBufferSize = 0;
+		params.maxBufferSize = 1;
+		params.secondread_minsize = 0;
+		params.hidebuffer = true;
+		BufferedOutputFileImpl output = new BufferedOutputFileImpl(params);
+
+		// The renderer opens a second connection and stops reading the
+		// first one without closing it
+		InputStream stale = output.getInputStream(0);
+		write(output, LENGTH);
+		assertThat(stale.read(new byte[10], 0, 10)).isEqualTo(10);
+		AtomicLong correct = new AtomicLong();
+		Thread reader = read(output.getInputStream(0), 0, correct);
+		reader.join(10000);
+
+		assertThat(correct.get()).isEqualTo(LENGTH);
+	}
+
+	@Test
+	public void testMarginFollowsAShrunkenBuffer() throws Exception {
+		OutputParams params = new OutputParams(PMS.getConfiguration());
+		params.minBufferSize = 0;
+		params.maxBufferSize = 60;
+		params.secondread_minsize = 0;
+		params.hidebuffer = true;
+
+		// Direct memory runs out before the buffer has its configured size
+		int segments = 54;
+		BufferSegmentPool pool = new BufferSegmentPool(0, (long) segments * BufferSegmentPool.SEGMENT_SIZE);
+		final BufferedOutputFileImpl output = new BufferedOutputFileImpl(params, pool);
+		final InputStream input = output.getInputStream(0);
+		final long length = 160L * 1024 * 1024;
+		final long pauseAt = 51L * 1024 * 1024;
+		final AtomicLong correct = new AtomicLong();
+
+		// Reads past the large margin limit, then stops for a while
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				byte[] b = new byte[64 * 1024];
+				long position = 0;
+				boolean paused = false;
+				int n;
+
+				try {
+					while ((n = input.read(b, 0, b.length)) > -1) {
+						for (int i = 0; i < n; i++) {
+							if (b[i] == valueAt(position + i)) {
+								correct.incrementAndGet();
+							}
+						}
+
+						position += n;
+
+						if (!paused && position >= pauseAt) {
+							paused = true;
+							Thread.sleep(1000);
+						}
+					}
+				} catch (IOException e) {
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		reader.setDaemon(true);
+		reader.start();
+		write(output, length);
+		reader.join(30000);
+
+		assertThat(correct.get()).isEqualTo(length);
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.io;
+
+import com.sun.jna.Platform;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import net.pms.PMS;
+import net.pms.configuration.PmsConfiguration;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Copies data through real named pipes, which do not exist on Windows.
+ */
+public class PipeIPCProcessTest {
+	/**
+	 * More than fits in a pipe at once, so that the copy has to loop.
+	 */
+	private static final int LENGTH = 1024 * 1024 + 17;
+
+	private File folder;
+
+	@BeforeClass
+	public static void setUpClass() throws ConfigurationException {
+		if (PMS.getConfiguration() == null) {
+			PMS.setConfiguration(new PmsConfiguration(false));
+		}
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		assumeTrue(!Platform.isWindows());
+		folder = File.createTempFile("pms-pipe", "");
+		assertThat(folder.delete()).isTrue();
+		assertThat(folder.mkdir()).isTrue();
+	}
+
+	@After
+	public void tearDown() {
+		FileUtils.deleteQuietly(folder);
+	}
+
+	private static byte[] data() {
+		byte[] data = new byte[LENGTH];
+
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (i % 251);
+		}
+
+		return data;
+	}
+
+	private File fifo(String name) {
+		File file = new File(folder, name);
+		new NativeFifo(file.getAbsolutePath()).runInSameThread();
+		assertThat(file.exists()).isTrue();
+		return file;
+	}
+
+	/**
+	 * Writes data to a pipe and closes it, in a daemon thread that may be
+	 * left blocked when a test fails.
+	 */
+	private static void write(final File fifo, final byte[] data) {
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				OutputStream out = null;
+
+				try {
+					out = new FileOutputStream(fifo);
+					out.write(data);
+				} catch (IOException e) {
+				} finally {
+					IOUtils.closeQuietly(out);
+				}
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Reads a pipe to its end into a stream, in a daemon thread.
+	 */
+	private static Thread read(final File fifo, final ByteArrayOutputStream data) {
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				InputStream in = null;
+
+				try {
+					in = new FileInputStream(fifo);
+					IOUtils.copy(in, data);
+				} catch (IOException e) {
+				} finally {
+					IOUtils.closeQuietly(in);
+				}
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	@Test(timeout = 20000)
+	public void testCopyFromPipeToPipe() throws Exception {
+		File in = fifo("in");
+		File out = fifo("out");
+		byte[] data = data();
+		ByteArrayOutputStream copied = new ByteArrayOutputStream();
+
+		write(in, data);
+		Thread reader = read(out, copied);
+		FileInputStream input = new FileInputStream(in);
+		FileOutputStream output = new FileOutputStream(out);
+
+		try {
+			PipeIPCProcess.copy(input.getChannel(), output.getChannel());
+		} finally {
+			input.close();
+			output.close();
+		}
+
+		reader.join();
+		assertThat(copied.toByteArray()).isEqualTo(data);
+	}
+
+	@Test(timeout = 20000)
+	public void testCopyFromPipeToStream() throws Exception {
+		File in = fifo("in");
+		byte[] data = data();
+		ByteArrayOutputStream copied = new ByteArrayOutputStream();
+
+		write(in, data);
+		FileInputStream input = new FileInputStream(in);
+
+		try {
+			PipeIPCProcess.copy(input.getChannel(), copied);
+		} finally {
+			input.close();
+		}
+
+		assertThat(copied.toByteArray()).isEqualTo(data);
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.io;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SegmentedBufferTest {
+	private static final int SEGMENT = BufferSegmentPool.SEGMENT_SIZE;
+
+	@Test
+	public void testSegmentsAreAllocatedLazily() {
+		BufferSegmentPool pool = new BufferSegmentPool(0);
+		SegmentedBuffer buffer = new SegmentedBuffer(pool, 4 * SEGMENT);
+		assertThat(buffer.getAllocatedSize()).isEqualTo(0);
+
+		buffer.allocate(0);
+		assertThat(buffer.getAllocatedSize()).isEqualTo(SEGMENT);
+
+		buffer.allocate(2 * SEGMENT + 1);
+		assertThat(buffer.getAllocatedSize()).isEqualTo(3 * SEGMENT);
+		assertThat(pool.getUsedSize()).isEqualTo(3 * SEGMENT);
+	}
+
+	@Test
+	public void testWrapAroundAcrossSegments() {
+		SegmentedBuffer buffer = new SegmentedBuffer(new BufferSegmentPool(0), 2 * SEGMENT);
+		buffer.allocate(2 * SEGMENT - 1);
+
+		byte[] data = new byte[1000];
+
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+
+		// Write across the end of the buffer, continuing at the start
+		long position = 2 * SEGMENT - 400;
+		buffer.put(position, data, 0, data.length);
+
+		byte[] result = new byte[data.length];
+		buffer.get(position, result, 0, result.length);
+		assertThat(result).isEqualTo(data);
+		assertThat(buffer.get(2 * SEGMENT)).isEqualTo(data[400]);
+		assertThat(buffer.get(0)).isEqualTo(data[400]);
+	}
+
+	@Test
+	public void testSegmentsAreRecycled() {
+		BufferSegmentPool pool = new BufferSegmentPool(4L * SEGMENT);
+		SegmentedBuffer first = new SegmentedBuffer(pool, 2 * SEGMENT);
+		first.allocate(2 * SEGMENT - 1);
+		first.release();
+		assertThat(pool.getIdleSize()).isEqualTo(2 * SEGMENT);
+
+		SegmentedBuffer second = new SegmentedBuffer(pool, 2 * SEGMENT);
+		second.allocate(2 * SEGMENT - 1);
+		assertThat(pool.getIdleSize()).isEqualTo(0);
+		assertThat(pool.getAllocatedSize()).isEqualTo(2 * SEGMENT);
+	}
+
+	@Test
+	public void testSmallBufferUsesPrivateSegment() {
+		BufferSegmentPool pool = new BufferSegmentPool(0);
+		SegmentedBuffer buffer = new SegmentedBuffer(pool, 1000);
+		buffer.allocate(999);
+		buffer.put(1001, (byte) 42);
+
+		assertThat(buffer.get(1)).isEqualTo((byte) 42);
+		assertThat(pool.getAllocatedSize()).isEqualTo(0);
+	}
+}
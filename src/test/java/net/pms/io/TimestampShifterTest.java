@@ -0,0 +1,208 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TimestampShifterTest {
+	private static final int TIMESEEK = 10;
+	private static final int OFFSET = TIMESEEK * 90000;
+	private static final int PACKETS = 50;
+	private static final int[] CHUNK_SIZES = { 1, 7, 188, 1000, Integer.MAX_VALUE };
+
+	@Test
+	public void testTransportStreamTimestampsAreShifted() {
+		byte[] stream = createTransportStream();
+
+		for (int chunkSize : CHUNK_SIZES) {
+			byte[] result = shiftInChunks(stream, chunkSize, false);
+
+			for (int i = 0; i < PACKETS; i++) {
+				int packet = i * 188;
+
+				if (i % 2 == 0) {
+					assertThat(readTimestamp(result, packet + 17)).isEqualTo(pts(i) + OFFSET);
+					assertThat(readTimestamp(result, packet + 22)).isEqualTo(dts(i) + OFFSET);
+				} else {
+					assertThat(readTimestamp(result, packet + 17)).isEqualTo(pts(i) + OFFSET);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testProgramStreamTimestampsAreShifted() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int[] packs = new int[PACKETS];
+		int[] videos = new int[PACKETS];
+
+		for (int i = 0; i < PACKETS; i++) {
+			packs[i] = out.size();
+			writePackHeader(out, scr(i));
+			videos[i] = out.size();
+			writePes(out, 0xE0, pts(i), dts(i), 700);
+		}
+
+		byte[] stream = out.toByteArray();
+
+		for (int chunkSize : CHUNK_SIZES) {
+			byte[] result = shiftInChunks(stream, chunkSize, true);
+
+			for (int i = 0; i < PACKETS; i++) {
+				assertThat(readSCR(result, packs[i])).isEqualTo(scr(i) + OFFSET);
+				assertThat(readTimestamp(result, videos[i] + 13)).isEqualTo(pts(i) + OFFSET);
+				assertThat(readTimestamp(result, videos[i] + 18)).isEqualTo(dts(i) + OFFSET);
+			}
+		}
+	}
+
+	@Test
+	public void testPayloadIsLeftAlone() {
+		byte[] stream = createTransportStream();
+		byte[] result = shiftInChunks(stream, 100, true);
+
+		for (int i = 0; i < PACKETS; i++) {
+			int payload = i * 188 + 4 + 19;
+			assertThat(Arrays.copyOfRange(result, payload, i * 188 + 188)).isEqualTo(Arrays.copyOfRange(stream, payload, i * 188 + 188));
+		}
+	}
+
+	/**
+	 * Feeds the stream to a shifter in chunks the way
+	 * {@link BufferedOutputFileImpl} does.
+	 */
+	private static byte[] shiftInChunks(byte[] stream, int chunkSize, boolean shiftScr) {
+		TimestampShifter shifter = new TimestampShifter(TIMESEEK, shiftScr, true);
+		byte[] result = stream.clone();
+		long position = 0;
+
+		while (position < result.length) {
+			long end = Math.min(result.length, position + chunkSize);
+			int start = (int) shifter.getWindowStart(position);
+			byte[] window = Arrays.copyOfRange(result, start, (int) end);
+			shifter.shift(window, start, window.length, position, Integer.MAX_VALUE);
+			System.arraycopy(window, 0, result, start, window.length);
+			position = end;
+		}
+
+		return result;
+	}
+
+	private static byte[] createTransportStream() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		for (int i = 0; i < PACKETS; i++) {
+			ByteArrayOutputStream packet = new ByteArrayOutputStream();
+			packet.write(0x47);
+			packet.write(0x40);
+			packet.write(0x11);
+			packet.write(0x10);
+
+			if (i % 2 == 0) {
+				writePes(packet, 0xE0, pts(i), dts(i), 188 - 4 - 19);
+			} else {
+				writePes(packet, 0xC0, pts(i), -1, 188 - 4 - 14);
+			}
+
+			out.write(packet.toByteArray(), 0, 188);
+		}
+
+		return out.toByteArray();
+	}
+
+	private static int pts(int i) {
+		return 6006 + i * 3003;
+	}
+
+	private static int dts(int i) {
+		return pts(i) - 3003;
+	}
+
+	private static long scr(int i) {
+		return 1000 + i * 1200;
+	}
+
+	private static void writePackHeader(ByteArrayOutputStream out, long scr) {
+		out.write(0);
+		out.write(0);
+		out.write(1);
+		out.write(0xBA);
+		out.write((int) (0x44 | ((scr >> 27) & 0x38) | ((scr >> 28) & 0x03)));
+		out.write((int) (scr >> 20) & 0xff);
+		out.write((int) (((scr >> 12) & 0xF8) | 0x04 | ((scr >> 13) & 0x03)));
+		out.write((int) (scr >> 5) & 0xff);
+		out.write((int) (((scr << 3) & 0xF8) | 0x04));
+		out.write(0x01);
+		out.write(0x01);
+		out.write(0x89);
+		out.write(0xC3);
+		out.write(0xF8);
+	}
+
+	private static void writePes(ByteArrayOutputStream out, int streamId, int pts, int dts, int payloadSize) {
+		int headerSize = dts >= 0 ? 10 : 5;
+		int length = 3 + headerSize + payloadSize;
+		out.write(0);
+		out.write(0);
+		out.write(1);
+		out.write(streamId);
+		out.write(length >> 8);
+		out.write(length & 0xff);
+		out.write(0x80);
+		out.write(dts >= 0 ? 0xC0 : 0x80);
+		out.write(headerSize);
+		writeTimestamp(out, dts >= 0 ? 3 : 2, pts);
+
+		if (dts >= 0) {
+			writeTimestamp(out, 1, dts);
+		}
+
+		for (int i = 0; i < payloadSize; i++) {
+			out.write(0xFF);
+		}
+	}
+
+	private static void writeTimestamp(ByteArrayOutputStream out, int prefix, long ts) {
+		out.write((int) ((prefix << 4) | ((ts >> 29) & 0x0E) | 1));
+		out.write((int) (ts >> 22) & 0xff);
+		out.write((int) (((ts >> 14) & 0xFE) | 1));
+		out.write((int) (ts >> 7) & 0xff);
+		out.write((int) (((ts << 1) & 0xFE) | 1));
+	}
+
+	/**
+	 * Reads the lower 30 bits of the timestamp ending at the given index.
+	 */
+	private static int readTimestamp(byte[] data, int index) {
+		return ((((data[index - 3] & 0xff) << 8) + (data[index - 2] & 0xff)) >> 1 << 15)
+			+ ((((data[index - 1] & 0xff) << 8) + (data[index] & 0xff)) >> 1);
+	}
+
+	private static long readSCR(byte[] data, int index) {
+		long scr = (long) ((data[index + 4] & 0x38) >> 3) << 30;
+		scr += (long) (((data[index + 4] & 0x03) << 13) + ((data[index + 5] & 0xff) << 5) + ((data[index + 6] & 0xF8) >> 3)) << 15;
+		scr += ((data[index + 6] & 0x03) << 13) + ((data[index + 7] & 0xff) << 5) + ((data[index + 8] & 0xF8) >> 3);
+		return scr;
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.network;
+
+import java.lang.management.ManagementFactory;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ResponseBufferTest {
+	private static final Logger logger = LoggerFactory.getLogger(ResponseBufferTest.class);
+	private static final int ITEMS = 5000;
+
+	@Test
+	public void testEncoding() throws Exception {
+		ResponseBuffer response = new ResponseBuffer();
+		StringBuilder sb = new StringBuilder("Motörhead – Ace of Spades");
+		response.append("<Result>").append(sb).append(42).append((Object) null);
+		sb.setLength(0);
+		sb.append("日本");
+		response.append(sb);
+
+		String expected = "<Result>Motörhead – Ace of Spades42null日本";
+		assertThat(response.length()).isEqualTo(expected.getBytes("UTF-8").length);
+		assertThat(response.toString()).isEqualTo(expected);
+
+		ChannelBuffer buffer = response.getBuffer();
+		byte[] bytes = new byte[buffer.readableBytes()];
+		buffer.getBytes(buffer.readerIndex(), bytes);
+		assertThat(bytes).isEqualTo(expected.getBytes("UTF-8"));
+	}
+
+	/**
+	 * Compares the memory allocated to answer a Browse of {@link #ITEMS}
+	 * items with a StringBuilder, as responses used to be built, and with a
+	 * {@link ResponseBuffer}.
+	 */
+	@Test
+	public void testAllocatedBytesPerItem() throws Exception {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+		if (!(bean instanceof com.sun.management.ThreadMXBean) || !((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			return;
+		}
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		long id = Thread.currentThread().getId();
+		long builderBytes = Long.MAX_VALUE;
+		long bufferBytes = Long.MAX_VALUE;
+		int builderLength = 0;
+		int bufferLength = 0;
+
+		// The best of a few runs, the first ones include the warm-up
+		for (int run = 0; run < 3; run++) {
+			long start = threads.getThreadAllocatedBytes(id);
+			builderLength = browseWithBuilder();
+			builderBytes = Math.min(builderBytes, threads.getThreadAllocatedBytes(id) - start);
+
+			start = threads.getThreadAllocatedBytes(id);
+			bufferLength = browseWithBuffer();
+			bufferBytes = Math.min(bufferBytes, threads.getThreadAllocatedBytes(id) - start);
+		}
+
+		logger.info("Bytes allocated per item: " + (builderBytes / ITEMS) + " with a StringBuilder, " + (bufferBytes / ITEMS) + " with a ResponseBuffer (" + (bufferLength / ITEMS) + " bytes of DIDL per item)");
+		assertThat(bufferLength).isEqualTo(builderLength);
+		assertThat(bufferBytes).isLessThan(builderBytes / 2);
+	}
+
+	private static int browseWithBuilder() throws Exception {
+		StringBuilder response = new StringBuilder();
+		response.append(HTTPXMLHelper.RESULT_HEADER).append(HTTPXMLHelper.DIDL_HEADER);
+
+		for (int i = 0; i < ITEMS; i++) {
+			StringBuilder sb = new StringBuilder();
+			appendItem(sb, i);
+			response.append(sb.toString());
+		}
+
+		response.append(HTTPXMLHelper.DIDL_FOOTER).append(HTTPXMLHelper.RESULT_FOOTER);
+		byte responseData[] = response.toString().getBytes("UTF-8");
+		return ChannelBuffers.copiedBuffer(responseData).readableBytes();
+	}
+
+	private static int browseWithBuffer() {
+		ResponseBuffer response = new ResponseBuffer();
+		response.append(HTTPXMLHelper.RESULT_HEADER).append(HTTPXMLHelper.DIDL_HEADER);
+		response.reserve(ITEMS * 1024);
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < ITEMS; i++) {
+			sb.setLength(0);
+			appendItem(sb, i);
+			response.append(sb);
+		}
+
+		response.append(HTTPXMLHelper.DIDL_FOOTER).append(HTTPXMLHelper.RESULT_FOOTER);
+		return response.getBuffer().readableBytes();
+	}
+
+	/**
+	 * Appends an item like those of a music folder.
+	 */
+	private static void appendItem(StringBuilder sb, int i) {
+		sb.append("&lt;item id=&quot;0$1$2$").append(i).append("&quot; parentID=&quot;0$1$2&quot; restricted=&quot;true&quot;&gt;");
+		sb.append("&lt;dc:title&gt;Track ").append(i).append(" – Les Élucubrations&lt;/dc:title&gt;");
+		sb.append("&lt;upnp:album&gt;Album&lt;/upnp:album&gt;&lt;upnp:artist&gt;Artist&lt;/upnp:artist&gt;&lt;dc:creator&gt;Artist&lt;/dc:creator&gt;");
+		sb.append("&lt;upnp:genre&gt;Chanson&lt;/upnp:genre&gt;&lt;upnp:originalTrackNumber&gt;").append(i % 20).append("&lt;/upnp:originalTrackNumber&gt;");
+		sb.append("&lt;res xmlns:dlna=&quot;urn:schemas-dlna-org:metadata-1-0/&quot; protocolInfo=&quot;http-get:*:audio/mpeg:DLNA.ORG_PN=MP3;DLNA.ORG_OP=01;DLNA.ORG_CI=0&quot; ");
+		sb.append("size=&quot;7340032&quot; duration=&quot;0:03:45.000&quot; bitrate=&quot;40000&quot; sampleFrequency=&quot;44100&quot; nrAudioChannels=&quot;2&quot;&gt;");
+		sb.append("http://192.168.1.2:5001/get/0$1$2$").append(i).append("/Track%20").append(i).append(".mp3&lt;/res&gt;");
+		sb.append("&lt;upnp:albumArtURI xmlns:dlna=&quot;urn:schemas-dlna-org:metadata-1-0/&quot; dlna:profileID=&quot;JPEG_TN&quot;&gt;");
+		sb.append("http://192.168.1.2:5001/get/0$1$2$").append(i).append("/thumbnail0000Track%20").append(i).append(".mp3&lt;/upnp:albumArtURI&gt;");
+		sb.append("&lt;upnp:class&gt;object.item.audioItem.musicTrack&lt;/upnp:class&gt;&lt;/item&gt;");
+	}
+}
@@ -19,6 +19,10 @@
 package net.pms.util;
 
 import ch.qos.logback.classic.LoggerContext;
+import net.pms.PMS;
+import net.pms.configuration.PmsConfiguration;
+import net.pms.dlna.DLNAMediaInfo;
+import net.pms.dlna.DLNAMediaSubtitle;
 import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Test;
@@ -28,6 +32,8 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
 
 import static org.fest.assertions.Assertions.assertThat;
 
@@ -315,4 +321,53 @@ public class FileUtilTest {
 		assertThat(FileUtil.getFileNameWithoutExtension("a/b/c")).isEqualTo("c");
 		assertThat(FileUtil.getFileNameWithoutExtension("a/b/c/")).isEqualTo("");
 	}
+
+	@Test
+	public void testIsSubtitlesExists() throws Exception {
+		if (PMS.getConfiguration() == null) {
+			PMS.setConfiguration(new PmsConfiguration(false));
+		}
+
+		File dir = new File(System.getProperty("java.io.tmpdir"), "pms-subtitles-" + System.nanoTime());
+		assertThat(dir.mkdir()).isTrue();
+
+		try {
+			File video = new File(dir, "Movie.mkv");
+			FileUtils.touch(video);
+			FileUtils.touch(new File(dir, "Movie.srt"));
+			FileUtils.touch(new File(dir, "movie.fre.srt"));
+			FileUtils.touch(new File(dir, "Movie.eng-forced.ass"));
+			FileUtils.touch(new File(dir, "Movie.nfo"));
+			FileUtils.touch(new File(dir, "Other.srt"));
+			FileUtils.touch(new File(dir, "Movie 2.srt"));
+
+			DLNAMediaInfo media = new DLNAMediaInfo();
+			assertThat(FileUtil.isSubtitlesExists(video, media)).isTrue();
+
+			Set<String> found = new HashSet<String>();
+
+			for (DLNAMediaSubtitle sub : media.getSubtitleTracksList()) {
+				found.add(sub.getExternalFile().getName() + ":" + sub.getLang() + ":" + sub.getFlavor());
+			}
+
+			assertThat(found).containsOnly(
+				"Movie.srt:und:null",
+				"movie.fre.srt:fre:null",
+				"Movie.eng-forced.ass:eng:forced",
+				"Movie 2.srt:und: 2"
+			);
+
+			// Subtitles that are known already are not added again
+			assertThat(FileUtil.isSubtitlesExists(video, media)).isFalse();
+			assertThat(media.getSubtitleTracksList()).hasSize(4);
+
+			// Subtitles that are added later are found once the folder has changed
+			FileUtils.touch(new File(dir, "Movie.ger.srt"));
+			dir.setLastModified(dir.lastModified() + 2000);
+			assertThat(FileUtil.isSubtitlesExists(video, media)).isTrue();
+			assertThat(media.getSubtitleTracksList()).hasSize(5);
+		} finally {
+			FileUtils.deleteDirectory(dir);
+		}
+	}
 }
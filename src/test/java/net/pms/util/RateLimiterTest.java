@@ -0,0 +1,59 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.util;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RateLimiterTest {
+	@Test
+	public void testUnlimitedDoesNotWait() {
+		RateLimiter limiter = new RateLimiter(0);
+		long start = System.currentTimeMillis();
+
+		for (int i = 0; i < 10000; i++) {
+			assertThat(limiter.acquire()).isTrue();
+		}
+
+		assertThat(System.currentTimeMillis() - start).isLessThan(1000);
+	}
+
+	@Test
+	public void testOperationsAreSpacedOut() {
+		RateLimiter limiter = new RateLimiter(50);
+		long start = System.currentTimeMillis();
+
+		// The first operation goes ahead right away, the other ten wait 20 ms each
+		for (int i = 0; i < 11; i++) {
+			assertThat(limiter.acquire()).isTrue();
+		}
+
+		assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(190);
+	}
+
+	@Test
+	public void testNextCallWaitsForPermitsTakenBefore() {
+		RateLimiter limiter = new RateLimiter(100);
+		limiter.acquire(20);
+		long start = System.currentTimeMillis();
+		limiter.acquire();
+		assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(190);
+	}
+}